@@ -1,5 +1,7 @@
 package ch.uzh.ifi.hase.soprafs24.config;
 
+import ch.uzh.ifi.hase.soprafs24.security.ConnectionTicketStore;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +12,7 @@ import org.springframework.boot.web.servlet.MultipartConfigFactory;
 import org.springframework.util.unit.DataSize;
 
 import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.HttpServletRequest;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
@@ -30,7 +33,7 @@ public class WebConfig implements WebMvcConfigurer {
             )
             .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "HEAD", "PATCH")
             .allowedHeaders("*")
-            .exposedHeaders("Authorization", "Content-Type")
+            .exposedHeaders("Authorization", "Content-Type", "X-Next-Cursor", "X-Prev-Cursor", "X-Total-Count")
             .allowCredentials(false) // Set to false since we're using JWT tokens, not cookies
             .maxAge(3600); // Cache preflight requests for 1 hour
   }
@@ -46,9 +49,20 @@ public class WebConfig implements WebMvcConfigurer {
     return factory.createMultipartConfig();
   }
   
+  // WebSocket handshakes and requests carrying a connection ticket are not logged,
+  // their query string authenticates the connection
   @Bean
   public org.springframework.web.filter.CommonsRequestLoggingFilter requestLoggingFilter() {
-    org.springframework.web.filter.CommonsRequestLoggingFilter loggingFilter = new org.springframework.web.filter.CommonsRequestLoggingFilter();
+    org.springframework.web.filter.CommonsRequestLoggingFilter loggingFilter = new org.springframework.web.filter.CommonsRequestLoggingFilter() {
+      @Override
+      protected boolean shouldLog(HttpServletRequest request) {
+        // the raw query string is checked, getParameter would parse form bodies before they are cached
+        String query = request.getQueryString();
+        return super.shouldLog(request)
+            && !request.getRequestURI().startsWith(request.getContextPath() + "/ws/")
+            && (query == null || !query.contains(ConnectionTicketStore.TICKET_PARAMETER + "="));
+      }
+    };
     loggingFilter.setIncludeClientInfo(true);
     loggingFilter.setIncludeQueryString(true);
     loggingFilter.setIncludePayload(true);
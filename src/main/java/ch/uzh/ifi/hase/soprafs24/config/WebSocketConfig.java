@@ -0,0 +1,37 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.controller.ChatWebSocketHandler;
+import ch.uzh.ifi.hase.soprafs24.security.ConnectionTicketStore;
+import ch.uzh.ifi.hase.soprafs24.security.WebSocketAuthInterceptor;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final UserService userService;
+    private final ConnectionTicketStore connectionTicketStore;
+
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler, UserService userService,
+                           ConnectionTicketStore connectionTicketStore) {
+        this.chatWebSocketHandler = chatWebSocketHandler;
+        this.userService = userService;
+        this.connectionTicketStore = connectionTicketStore;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .addInterceptors(new WebSocketAuthInterceptor(userService, connectionTicketStore))
+                .setAllowedOrigins(
+                    "http://localhost:3000", // Local development frontend
+                    "https://sopra-fs25-group-38-client.vercel.app", // Production frontend
+                    "https://sopra-fs25-group-38-client-notsofuns-projects.vercel.app"
+                );
+    }
+}
@@ -2,10 +2,11 @@ package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.rest.dto.BlockDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 import ch.uzh.ifi.hase.soprafs24.service.ReportBlockService;
-import ch.uzh.ifi.hase.soprafs24.service.UserService;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -17,11 +18,9 @@ import java.util.Map;
 public class BlockController {
 
     private final ReportBlockService reportBlockService;
-    private final UserService userService;
 
-    public BlockController(ReportBlockService reportBlockService, UserService userService) {
+    public BlockController(ReportBlockService reportBlockService) {
         this.reportBlockService = reportBlockService;
-        this.userService = userService;
     }
 
     @PostMapping
@@ -39,8 +38,8 @@ public class BlockController {
 
     // retreive block database for admin page
     @GetMapping
-    public List<BlockDTO> getAllBlocks(@RequestHeader("Authorization") String token) {
-        if (!userService.isAdmin(token)) {
+    public List<BlockDTO> getAllBlocks(@AuthenticationPrincipal UserPrincipal principal) {
+        if (principal == null || !principal.isAdmin()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admins can view block data");
         }
         return reportBlockService.getAllBlocks().stream()
@@ -1,12 +1,13 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.ChatChannel;
-import ch.uzh.ifi.hase.soprafs24.entity.Message;
 // dto
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatChannelGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatChannelPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatInboxEntryGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MessageGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MessagePostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ReadReceiptPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusPushDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusGetDTO;
@@ -14,9 +15,11 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusGetDTO;
 import ch.uzh.ifi.hase.soprafs24.service.ChatService;
 // springboot
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 // utils
 import java.util.List;
@@ -25,6 +28,10 @@ import java.util.List;
 @RequestMapping("/chat")
 public class ChatController {
     
+    private static final String PREV_CURSOR_HEADER = "X-Prev-Cursor";
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
+
     private final ChatService chatService;
 
     @Autowired
@@ -56,29 +63,64 @@ public class ChatController {
         return ResponseEntity.ok(channelDTOs);
     }
 
+    // GET /chat/channels/user/{userId}/inbox -> Channels with last message and unread count, most recent first.
+    @GetMapping("/channels/user/{userId}/inbox")
+    public ResponseEntity<List<ChatInboxEntryGetDTO>> getInbox(@PathVariable Long userId) {
+        List<ChatInboxEntryGetDTO> inbox = chatService.getInbox(userId);
+        if (inbox.isEmpty()) {
+            // Returns 204
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(inbox);
+    }
+
+    // POST /chat/read-receipts -> Acknowledge read messages, for one or several channels.
+    // Clients can then ask for the history after their lastReadMessageId only.
+    @PostMapping("/read-receipts")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void acknowledgeRead(@RequestBody ReadReceiptPostDTO receiptPostDTO) {
+        chatService.acknowledgeRead(receiptPostDTO);
+    }
+
     // POST /chat/{channelId}/message -> Send a message in a channel.
     @PostMapping("/{channelId}/message")
     @ResponseStatus(HttpStatus.CREATED)
     public MessageGetDTO sendMessage(@PathVariable Long channelId,
                                      @RequestBody MessagePostDTO messagePostDTO) {
-        Message createdMessage = chatService.sendMessage(channelId, messagePostDTO);
-        return DTOMapper.INSTANCE.convertEntityToMessageGetDTO(createdMessage);
+        return chatService.sendMessage(channelId, messagePostDTO);
     }
 
-    // GET /chat/channels/{channelId} -> Get chat history for a channel.
+    // GET /chat/channels/{channelId}?beforeId=&afterId=&limit= -> Get one page of the chat history, oldest first.
+    // Without cursors the latest messages are returned. X-Prev-Cursor is the beforeId of the next older page,
+    // X-Next-Cursor the afterId to poll for newer messages.
     @GetMapping("/channels/{channelId}")
-    public ResponseEntity<List<MessageGetDTO>> getChatHistory(@PathVariable Long channelId) {
-        List<Message> messages = chatService.getChatHistory(channelId);
-        List<MessageGetDTO> messageDTOs = messages.stream()
+    public ResponseEntity<List<MessageGetDTO>> getChatHistory(@PathVariable Long channelId,
+                                                              @RequestParam(required = false) Long beforeId,
+                                                              @RequestParam(required = false) Long afterId,
+                                                              @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_HISTORY_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        }
+        ChatService.HistoryPage page = chatService.getChatHistory(channelId, beforeId, afterId, limit);
+        List<MessageGetDTO> messageDTOs = page.getMessages().stream()
                 .map(DTOMapper.INSTANCE::convertEntityToMessageGetDTO)
                 .toList();
 
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getPrevCursor() != null) {
+            headers.add(PREV_CURSOR_HEADER, String.valueOf(page.getPrevCursor()));
+        }
+        if (page.getNextCursor() != null) {
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+
         if (messageDTOs.isEmpty()) {
             // 204
-            return ResponseEntity.noContent().build();
+            return ResponseEntity.noContent().headers(headers).build();
         }
         // 200
-        return ResponseEntity.ok(messageDTOs);
+        return ResponseEntity.ok().headers(headers).body(messageDTOs);
     }
 
     // PUT /chat/typing -> Update the typing indicator.
@@ -95,6 +137,12 @@ public class ChatController {
         return ResponseEntity.ok(status);
     }
 
+    // GET /chat/channels/{channelId}/typing -> ids of the users currently typing in a channel.
+    @GetMapping("/channels/{channelId}/typing")
+    public ResponseEntity<List<Long>> getTypingUsers(@PathVariable Long channelId) {
+        return ResponseEntity.ok(chatService.getTypingUserIds(channelId));
+    }
+
     // PUT /chat/channels/{channelId} -> update a channel (group channels)
     @PutMapping("/channels/{channelId}")
     public ChatChannelGetDTO updateChatChannel(
@@ -0,0 +1,134 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.security.WebSocketAuthInterceptor;
+import ch.uzh.ifi.hase.soprafs24.service.ChatBroker;
+import ch.uzh.ifi.hase.soprafs24.service.ChatService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket endpoint (/ws/chat) for real-time chat delivery.
+ *
+ * After connecting, a client sends {"action": "subscribe", "channelId": 1} for
+ * every channel it wants to follow ("unsubscribe" to stop). Events published by
+ * ChatService (new messages, typing) are then pushed as JSON, so clients no
+ * longer need to poll the history or typing endpoints.
+ *
+ * A connection is closed as soon as its token is revoked (logout, a new login,
+ * account deletion), see TokenCache.RevocationListener.
+ */
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler implements TokenCache.RevocationListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+
+    private final ChatBroker chatBroker;
+    private final ChatService chatService;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ChatBroker.Subscriber> subscribersBySession = new ConcurrentHashMap<>();
+    private final Map<String, WebSocketSession> sessionsById = new ConcurrentHashMap<>();
+
+    public ChatWebSocketHandler(ChatBroker chatBroker, ChatService chatService, ObjectMapper objectMapper,
+                                TokenCache tokenCache) {
+        this.chatBroker = chatBroker;
+        this.chatService = chatService;
+        this.objectMapper = objectMapper;
+        tokenCache.addRevocationListener(this);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        UserPrincipal principal = (UserPrincipal) session.getAttributes().get(WebSocketAuthInterceptor.PRINCIPAL_ATTRIBUTE);
+        ChatBroker.Subscriber subscriber = chatBroker.register(session.getId(),
+                principal == null ? null : principal.getId(),
+                payload -> session.sendMessage(new TextMessage(payload)));
+        subscribersBySession.put(session.getId(), subscriber);
+        sessionsById.put(session.getId(), session);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        ChatBroker.Subscriber subscriber = subscribersBySession.get(session.getId());
+        UserPrincipal principal = (UserPrincipal) session.getAttributes().get(WebSocketAuthInterceptor.PRINCIPAL_ATTRIBUTE);
+        if (subscriber == null || principal == null) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+
+        JsonNode command = objectMapper.readTree(message.getPayload());
+        String action = command.path("action").asText();
+        if (!command.path("channelId").canConvertToLong()) {
+            session.close(CloseStatus.BAD_DATA.withReason("channelId is required"));
+            return;
+        }
+        Long channelId = command.path("channelId").asLong();
+
+        switch (action) {
+            case "subscribe" -> {
+                if (!chatService.isParticipant(channelId, principal.getId())) {
+                    log.debug("User {} tried to subscribe to channel {} without being a participant",
+                            principal.getId(), channelId);
+                    return;
+                }
+                chatBroker.subscribe(subscriber, channelId);
+            }
+            case "unsubscribe" -> chatBroker.unsubscribe(subscriber, channelId);
+            default -> session.close(CloseStatus.BAD_DATA.withReason("Unknown action " + action));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        sessionsById.remove(session.getId());
+        ChatBroker.Subscriber subscriber = subscribersBySession.remove(session.getId());
+        if (subscriber != null) {
+            chatBroker.unregister(subscriber);
+        }
+    }
+
+    @Override
+    public void tokenRevoked(String token) {
+        for (WebSocketSession session : sessionsById.values()) {
+            if (token.equals(session.getAttributes().get(WebSocketAuthInterceptor.TOKEN_ATTRIBUTE))) {
+                closeRevoked(session);
+            }
+        }
+    }
+
+    @Override
+    public void userRevoked(Long userId) {
+        for (WebSocketSession session : sessionsById.values()) {
+            UserPrincipal principal = (UserPrincipal) session.getAttributes().get(WebSocketAuthInterceptor.PRINCIPAL_ATTRIBUTE);
+            if (principal != null && principal.getId().equals(userId)) {
+                closeRevoked(session);
+            }
+        }
+    }
+
+    // stops delivery right away; afterConnectionClosed cleans up the rest
+    private void closeRevoked(WebSocketSession session) {
+        sessionsById.remove(session.getId());
+        ChatBroker.Subscriber subscriber = subscribersBySession.remove(session.getId());
+        if (subscriber != null) {
+            chatBroker.unregister(subscriber);
+        }
+        try {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Token revoked"));
+        } catch (IOException e) {
+            log.debug("Could not close revoked session {}", session.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.service.ImageStore;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Serves images from the content-addressed ImageStore.
+ * Since an image never changes under its hash, responses are cacheable forever
+ * and the ETag is the hash itself.
+ */
+@RestController
+public class ImageController {
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final ImageStore imageStore;
+
+    public ImageController(ImageStore imageStore) {
+        this.imageStore = imageStore;
+    }
+
+    @GetMapping("/images/{hash}")
+    public void getImage(@PathVariable String hash,
+                         @RequestParam(required = false) Integer size,
+                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                         HttpServletResponse response) throws IOException {
+        Path path = imageStore.resolve(hash, size);
+        String etag = "\"" + path.getFileName() + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        if (etag.equals(ifNoneMatch)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(imageStore.contentType(path));
+        response.setContentLengthLong(Files.size(path));
+        Files.copy(path, response.getOutputStream());
+    }
+}
@@ -1,4 +1,6 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchBatchPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchBatchResultGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchPostDTO;
 import ch.uzh.ifi.hase.soprafs24.service.MatchService;
@@ -6,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.HashMap;
 import java.util.List;
@@ -17,6 +20,8 @@ import java.util.Map;
 @RequestMapping("/matches")
 public class MatchController {
 
+    private static final int MAX_BATCH_SIZE = 200;
+
     private final MatchService matchService;
 
     @Autowired
@@ -36,13 +41,23 @@ public class MatchController {
         return ResponseEntity.ok().build();
     }
     
+    // POST /matches/batch -> apply a list of likes/dislikes in order, one result per decision
+    @PostMapping("/batch")
+    public ResponseEntity<List<MatchBatchResultGetDTO>> batchSwipe(@RequestBody MatchBatchPostDTO batch) {
+        if (batch.getDecisions() != null && batch.getDecisions().size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "at most " + MAX_BATCH_SIZE + " decisions per batch");
+        }
+        return ResponseEntity.ok(matchService.processBatch(batch));
+    }
+
     @GetMapping("/user/{userId}/interacted")
-    public ResponseEntity<Map<String, List<Long>>> getInteractedUsers(@PathVariable Long userId) {
-        List<Long> likedIds = matchService.getUsersLikedBy(userId);
-        List<Long> matchedIds = matchService.getUsersMatchedWith(userId);
-        List<Long> blockedIds = matchService.getUsersBlockedBy(userId);
+    public ResponseEntity<Map<String, long[]>> getInteractedUsers(@PathVariable Long userId) {
+        long[] likedIds = matchService.getUsersLikedBy(userId);
+        long[] matchedIds = matchService.getUsersMatchedWith(userId);
+        long[] blockedIds = matchService.getUsersBlockedBy(userId);
         
-        Map<String, List<Long>> result = new HashMap<>();
+        Map<String, long[]> result = new HashMap<>();
         result.put("likedIds", likedIds);
         result.put("matchedIds", matchedIds);
         result.put("blockedIds", blockedIds);
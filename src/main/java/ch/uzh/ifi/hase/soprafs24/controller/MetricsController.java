@@ -0,0 +1,47 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
+import ch.uzh.ifi.hase.soprafs24.event.OutboxDispatcher;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Counters of the password hashing pool, the domain event bus and the outbox,
+ * for admins watching the load of the server.
+ */
+@RestController
+public class MetricsController {
+
+    private final PasswordHasher passwordHasher;
+    private final DomainEventBus domainEventBus;
+    private final OutboxDispatcher outboxDispatcher;
+
+    public MetricsController(PasswordHasher passwordHasher, DomainEventBus domainEventBus,
+                             OutboxDispatcher outboxDispatcher) {
+        this.passwordHasher = passwordHasher;
+        this.domainEventBus = domainEventBus;
+        this.outboxDispatcher = outboxDispatcher;
+    }
+
+    @GetMapping("/admin/metrics")
+    public Map<String, Map<String, Long>> getMetrics(@AuthenticationPrincipal UserPrincipal principal) {
+        if (principal == null || !principal.isAdmin()) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admins can view metrics");
+        }
+
+        Map<String, Map<String, Long>> metrics = new LinkedHashMap<>();
+        metrics.put("passwordHashing", passwordHasher.getMetrics());
+        metrics.put("domainEvents", domainEventBus.getMetrics());
+        metrics.put("outbox", outboxDispatcher.getMetrics());
+        return metrics;
+    }
+}
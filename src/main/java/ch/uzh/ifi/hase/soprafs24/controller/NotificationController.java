@@ -3,18 +3,29 @@ package ch.uzh.ifi.hase.soprafs24.controller;
 import ch.uzh.ifi.hase.soprafs24.entity.Notification;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.NotificationGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 import ch.uzh.ifi.hase.soprafs24.service.NotificationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/notifications")
 public class NotificationController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final NotificationService notificationService;
 
     @Autowired
@@ -22,20 +33,35 @@ public class NotificationController {
         this.notificationService = notificationService;
     }
 
+    // GET /notifications/user/{userId}?cursor=&limit= -> one page of notifications, newest first.
+    // X-Next-Cursor is the cursor of the next older page and missing on the last one.
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<NotificationGetDTO>> getNotificationsForUser(@PathVariable Long userId) {
-        List<Notification> notifications = notificationService.getNotificationsForUser(userId);
+    public ResponseEntity<List<NotificationGetDTO>> getNotificationsForUser(@PathVariable Long userId,
+                                                                            @RequestParam(required = false) String cursor,
+                                                                            @RequestParam(defaultValue = "50") int limit,
+                                                                            @AuthenticationPrincipal UserPrincipal principal) {
+        requireSelf(principal, userId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        NotificationService.NotificationPage page = notificationService.getNotificationsForUser(userId, cursor, limit);
         List<NotificationGetDTO> notificationGetDTOs = new ArrayList<>();
 
-        for (Notification notification : notifications) {
+        for (Notification notification : page.getNotifications()) {
             notificationGetDTOs.add(DTOMapper.INSTANCE.convertEntityToNotificationGetDTO(notification));
         }
 
-        return ResponseEntity.ok(notificationGetDTOs);
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            headers.add(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return ResponseEntity.ok().headers(headers).body(notificationGetDTOs);
     }
 
     @GetMapping("/user/{userId}/unread")
-    public ResponseEntity<List<NotificationGetDTO>> getUnreadNotificationsForUser(@PathVariable Long userId) {
+    public ResponseEntity<List<NotificationGetDTO>> getUnreadNotificationsForUser(@PathVariable Long userId,
+                                                                                  @AuthenticationPrincipal UserPrincipal principal) {
+        requireSelf(principal, userId);
         List<Notification> notifications = notificationService.getUnreadNotificationsForUser(userId);
         List<NotificationGetDTO> notificationGetDTOs = new ArrayList<>();
 
@@ -46,6 +72,22 @@ public class NotificationController {
         return ResponseEntity.ok(notificationGetDTOs);
     }
 
+    // badge count without loading the notifications
+    @GetMapping("/user/{userId}/unread/count")
+    public ResponseEntity<Map<String, Long>> getUnreadCount(@PathVariable Long userId,
+                                                            @AuthenticationPrincipal UserPrincipal principal) {
+        requireSelf(principal, userId);
+        return ResponseEntity.ok(Map.of("unreadCount", notificationService.getUnreadCount(userId)));
+    }
+
+    // Server-Sent Events: "notification" for every new notification, "unread-count" when the count changes.
+    // EventSource cannot send the Authorization header, so browsers open it with ?ticket= from POST /users/me/ticket.
+    @GetMapping(value = "/user/{userId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamNotifications(@PathVariable Long userId, @AuthenticationPrincipal UserPrincipal principal) {
+        requireSelf(principal, userId);
+        return notificationService.openStream(userId);
+    }
+
     @PutMapping("/{notificationId}/read")
     public ResponseEntity<NotificationGetDTO> markNotificationAsRead(@PathVariable Long notificationId) {
         Notification notification = notificationService.markNotificationAsRead(notificationId);
@@ -55,7 +97,9 @@ public class NotificationController {
     }
 
     @PutMapping("/user/{userId}/read-all")
-    public ResponseEntity<Void> markAllNotificationsAsRead(@PathVariable Long userId) {
+    public ResponseEntity<Void> markAllNotificationsAsRead(@PathVariable Long userId,
+                                                           @AuthenticationPrincipal UserPrincipal principal) {
+        requireSelf(principal, userId);
         notificationService.markAllNotificationsAsRead(userId);
         return ResponseEntity.ok().build();
     }
@@ -65,4 +109,13 @@ public class NotificationController {
         notificationService.deleteNotification(notificationId);
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    private static void requireSelf(UserPrincipal principal, Long userId) {
+        if (principal == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token.");
+        }
+        if (!principal.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You can only see your own notifications.");
+        }
+    }
+}
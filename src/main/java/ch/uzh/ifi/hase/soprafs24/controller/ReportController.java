@@ -2,12 +2,13 @@ package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Report;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ReportDTO;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 import ch.uzh.ifi.hase.soprafs24.service.ReportBlockService;
-import ch.uzh.ifi.hase.soprafs24.service.UserService;
 
 import java.util.List;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -16,11 +17,9 @@ import org.springframework.web.server.ResponseStatusException;
 public class ReportController {
 
     private final ReportBlockService reportBlockService;
-    private final UserService userService;
 
-    public ReportController(ReportBlockService reportBlockService, UserService userService) {
+    public ReportController(ReportBlockService reportBlockService) {
         this.reportBlockService = reportBlockService;
-        this.userService = userService;
     }
 
     @PostMapping
@@ -33,8 +32,8 @@ public class ReportController {
     }
 
     @GetMapping
-    public List<ReportDTO> getAllReports(@RequestHeader("Authorization") String token) {
-        if (!userService.isAdmin(token)) {
+    public List<ReportDTO> getAllReports(@AuthenticationPrincipal UserPrincipal principal) {
+        if (principal == null || !principal.isAdmin()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admins can view reports");
         }
 
@@ -1,15 +1,17 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
-import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
-import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
-import ch.uzh.ifi.hase.soprafs24.service.CourseService;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSummaryGetDTO;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.util.*;
+import java.util.List;
 
 @CrossOrigin(origins = {
         "http://localhost:3000",
@@ -19,69 +21,45 @@ import java.util.*;
 @RequestMapping("/students")
 public class StudentFilterController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final UserService userService;
-    private final CourseService courseService;
 
-    public StudentFilterController(UserService userService, CourseService courseService) {
+    public StudentFilterController(UserService userService) {
         this.userService = userService;
-        this.courseService = courseService;
     }
 
+    /**
+     * Returns one page of students matching the filters. The filter is evaluated
+     * on the in-memory StudentSearchIndex (course and availability bitsets); only
+     * the users of the requested page are loaded from the database.
+     * The total number of matches is returned in the X-Total-Count header.
+     */
     @GetMapping
-    @ResponseStatus(HttpStatus.OK)
-    public List<UserGetDTO> getFilteredStudents(
+    public ResponseEntity<List<UserSummaryGetDTO>> getFilteredStudents(
             @RequestParam(required = false) List<Long> courseIds,
             @RequestParam(required = false) List<String> availability,
-            @RequestParam(defaultValue = "false") boolean matchAny) {
-
-        List<User> allUsers = userService.getUsers();
-
-        Set<Long> courseMatchedUserIds = resolveCourseMatches(courseIds, matchAny);
-        Set<Long> availabilityMatchedUserIds = resolveAvailabilityMatches(availability);
-
-        boolean hasCourseFilter = courseIds != null && !courseIds.isEmpty();
-        boolean hasAvailabilityFilter = availability != null && !availability.isEmpty();
-
-        return allUsers.stream()
-                .filter(user -> shouldIncludeUser(user, courseMatchedUserIds, availabilityMatchedUserIds, hasCourseFilter, hasAvailabilityFilter))
-                .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO)
-                .toList();
+            @RequestParam(defaultValue = "false") boolean matchAny,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
 
-    }
-
-    private Set<Long> resolveCourseMatches(List<Long> courseIds, boolean matchAny) {
-        if (courseIds == null || courseIds.isEmpty()) {
-            return Collections.emptySet();
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
         }
-        List<Long> matchedIds = matchAny
-                ? courseService.findUserIdsByAnyCourseIds(courseIds)
-                : courseService.findUserIdsEnrolledInAllCourses(courseIds);
-        return new HashSet<>(matchedIds);
-    }
 
-    private Set<Long> resolveAvailabilityMatches(List<String> availability) {
-        if (availability == null || availability.isEmpty()) {
-            return Collections.emptySet();
-        }
-        List<UserAvailability> enums = availability.stream()
+        List<UserAvailability> availabilities = availability == null ? null : availability.stream()
                 .map(UserAvailability::valueOf)
                 .toList();
-        return new HashSet<>(courseService.findUserIdsEnrolledInAllAvailability(enums));
-    }
 
-    private boolean shouldIncludeUser(User user, Set<Long> courseIds, Set<Long> availabilityIds,
-                                      boolean hasCourseFilter, boolean hasAvailabilityFilter) {
-        Long userId = user.getId();
-        if (userId == null || "admin@example.com".equalsIgnoreCase(user.getEmail())) {
-            return false;
-        }
+        Page<Long> ids = userService.getFilteredStudentIds(courseIds, availabilities, matchAny,
+                PageRequest.of(page, size));
 
-        boolean matchesCourse = courseIds.isEmpty() || courseIds.contains(userId);
-        boolean matchesAvailability = availabilityIds.isEmpty() || availabilityIds.contains(userId);
+        List<UserSummaryGetDTO> students = userService.getUserSummariesByIds(ids.getContent());
 
-        return (hasCourseFilter && hasAvailabilityFilter && matchesCourse && matchesAvailability)
-                || (hasCourseFilter && !hasAvailabilityFilter && matchesCourse)
-                || (!hasCourseFilter && hasAvailabilityFilter && matchesAvailability)
-                || (!hasCourseFilter && !hasAvailabilityFilter);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(TOTAL_COUNT_HEADER, String.valueOf(ids.getTotalElements()));
+        return ResponseEntity.ok().headers(headers).body(students);
     }
 }
@@ -5,43 +5,93 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserLoginDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSummaryGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.security.ConnectionTicketStore;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.service.DiscoveryIndex;
+import ch.uzh.ifi.hase.soprafs24.service.SocialGraph;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.repository.CourseRepository;
 
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.ArrayList;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 @CrossOrigin(origins = {"http://localhost:3000", "https://sopra-fs25-group-38-client.vercel.app","https://sopra-fs25-group-38-client-notsofuns-projects.vercel.app"})
 @RestController
 public class UserController {
 
   private static final String BEARER_PREFIX = "Bearer ";
+  private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+  private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+  private static final int MAX_DISCOVERY_PAGE_SIZE = 100;
+  private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
 
   private final UserService userService;
   private final CourseRepository courseRepository;
+  private final ConnectionTicketStore connectionTicketStore;
 
-  public UserController(UserService userService, CourseRepository courseRepository) {
+  public UserController(UserService userService, CourseRepository courseRepository,
+                        ConnectionTicketStore connectionTicketStore) {
     this.userService = userService;
     this.courseRepository = courseRepository;
+    this.connectionTicketStore = connectionTicketStore;
   }
 
   @GetMapping("/users")
   @ResponseStatus(HttpStatus.OK)
-  public List<UserGetDTO> getAllUsers() {
-    List<User> users = userService.getUsers();
-    List<UserGetDTO> userGetDTOs = new ArrayList<>();
-    for (User user : users) {
-      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+  public List<UserSummaryGetDTO> getAllUsers() {
+    return userService.getUserSummaries();
+  }
+
+  // Serves the stored picture as an image; URLs carry the picture version, so they can be cached forever.
+  // Pictures already moved to the ImageStore are redirected to /images/{hash}.
+  @GetMapping("/users/{userId}/profile-picture")
+  public ResponseEntity<byte[]> getProfilePicture(@PathVariable Long userId,
+                                                  @RequestParam(required = false) Integer v) {
+    String hash = userService.getProfilePictureHash(userId);
+    if (hash != null) {
+      return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/images/" + hash)).build();
+    }
+    String picture = userService.getProfilePicture(userId);
+
+    MediaType contentType = MediaType.IMAGE_JPEG;
+    String base64 = picture;
+    // pictures are usually stored as data URLs, e.g. "data:image/png;base64,...."
+    if (picture.startsWith("data:") && picture.contains(",")) {
+      String meta = picture.substring("data:".length(), picture.indexOf(','));
+      base64 = picture.substring(picture.indexOf(',') + 1);
+      String mimeType = meta.split(";")[0];
+      if (!mimeType.isBlank()) {
+        contentType = MediaType.parseMediaType(mimeType);
+      }
+    }
+
+    byte[] image;
+    try {
+      image = Base64.getMimeDecoder().decode(base64);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Stored profile picture is not valid base64");
     }
-    return userGetDTOs;
+
+    String cacheControl = v != null ? IMMUTABLE_CACHE_CONTROL : CacheControl.noCache().getHeaderValue();
+    return ResponseEntity.ok()
+        .contentType(contentType)
+        .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+        .body(image);
   }
 
   @GetMapping("/users/{userId}")
@@ -89,8 +139,8 @@ public class UserController {
   }
 
   @GetMapping("users/{userId}/accepted-matches")
-  public ResponseEntity<Set<Long>> getAcceptedMatches(@PathVariable Long userId) {
-    Set<Long> partnerIds = userService.getAcceptedMatchPartnerIds(userId);
+  public ResponseEntity<long[]> getAcceptedMatches(@PathVariable Long userId) {
+    long[] partnerIds = userService.getAcceptedMatchPartnerIds(userId);
     return ResponseEntity.ok(partnerIds);
   }
 
@@ -112,43 +162,37 @@ public class UserController {
     return ResponseEntity.status(HttpStatus.CREATED).headers(headers).body(userGetDTO);
   }
 
+  // the caller is the UserPrincipal put into the SecurityContext by TokenAuthenticationFilter
   @GetMapping("/users/me")
-  public ResponseEntity<UserGetDTO> getCurrentUser(
-      @RequestHeader(value = "Authorization", required = true) String token) {
-    try {
-      if (token == null || token.isBlank()) {
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
-      }
-
-      String authToken = token;
-      if (token.startsWith(BEARER_PREFIX)) {
-        authToken = token.substring(BEARER_PREFIX.length());
-      }
-
-      User currentUser = userService.getUserByToken(authToken);
-
-      if (currentUser == null) {
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
-      }
+  public ResponseEntity<UserGetDTO> getCurrentUser(@AuthenticationPrincipal UserPrincipal principal) {
+    requireAuthenticated(principal);
+    User currentUser = userService.getUserById(principal.getId());
+    return ResponseEntity.ok(DTOMapper.INSTANCE.convertEntityToUserGetDTO(currentUser));
+  }
 
-      UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(currentUser);
-      return ResponseEntity.ok(userGetDTO);
-    } catch (Exception e) {
-      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-    }
+  // Exchanges the bearer token for a short-lived, single-use ticket for a WebSocket handshake
+  // or a notification stream, so the token itself is never put into a URL
+  @PostMapping("/users/me/ticket")
+  public ResponseEntity<Map<String, String>> createConnectionTicket(@AuthenticationPrincipal UserPrincipal principal) {
+    requireAuthenticated(principal);
+    // TokenAuthenticationFilter keeps the token as credentials
+    String token = (String) SecurityContextHolder.getContext().getAuthentication().getCredentials();
+    return ResponseEntity.ok(Map.of("ticket", connectionTicketStore.issue(token)));
   }
 
   @DeleteMapping("/users/me")
-  public ResponseEntity<Void> deleteMyAccount(@RequestHeader("Authorization") String token) {
-    userService.deleteUserByToken(token);
+  public ResponseEntity<Void> deleteMyAccount(@AuthenticationPrincipal UserPrincipal principal) {
+    requireAuthenticated(principal);
+    userService.deleteUserById(principal.getId());
     return ResponseEntity.noContent().build();
   }
 
   @DeleteMapping("/delete/{userId}")
   public ResponseEntity<Void> deleteUserByAdmin(
-    @PathVariable Long userId, @RequestHeader("Authorization") String token) {
+    @PathVariable Long userId, @AuthenticationPrincipal UserPrincipal principal) {
 
-    if (!userService.isAdmin(token)) {
+    requireAuthenticated(principal);
+    if (!principal.isAdmin()) {
       return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
     }
 
@@ -156,11 +200,72 @@ public class UserController {
     return ResponseEntity.noContent().build();
   }
 
+  // The cursor for the next page is returned in the X-Next-Cursor header (absent on the last page)
   @GetMapping("/users/discoverable/{userId}")
-  public List<UserGetDTO> getDiscoverableUsers(@PathVariable Long userId) {
-    List<User> discoverable = userService.getDiscoverableUsers(userId);
-    return discoverable.stream()
-        .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO)
-        .toList();
+  public ResponseEntity<List<UserSummaryGetDTO>> getDiscoverableUsers(
+      @PathVariable Long userId,
+      @RequestParam(required = false) Long cursor,
+      @RequestParam(defaultValue = "20") int limit) {
+    if (limit < 1 || limit > MAX_DISCOVERY_PAGE_SIZE) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "limit must be between 1 and " + MAX_DISCOVERY_PAGE_SIZE);
+    }
+
+    DiscoveryIndex.CandidatePage page = userService.getDiscoverableUserIds(userId, cursor, limit);
+    List<UserSummaryGetDTO> discoverable = userService.getUserSummariesByIds(page.getUserIds());
+
+    HttpHeaders headers = new HttpHeaders();
+    if (page.getNextCursor() != null) {
+      headers.add(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+    }
+    return ResponseEntity.ok().headers(headers).body(discoverable);
+  }
+
+  // "Who liked me": users whose like is still unanswered, ordered by id.
+  // X-Next-Cursor is absent on the last page, X-Total-Count counts all pages.
+  // Only the user themselves may see who liked them.
+  @GetMapping("/users/{userId}/likes/pending")
+  public ResponseEntity<List<UserSummaryGetDTO>> getPendingLikes(
+      @PathVariable Long userId,
+      @RequestParam(required = false) Long cursor,
+      @RequestParam(defaultValue = "20") int limit,
+      @AuthenticationPrincipal UserPrincipal principal) {
+    requireSelf(principal, userId);
+    if (limit < 1 || limit > MAX_DISCOVERY_PAGE_SIZE) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "limit must be between 1 and " + MAX_DISCOVERY_PAGE_SIZE);
+    }
+
+    SocialGraph.PendingLikesPage page = userService.getPendingLikes(userId, cursor, limit);
+    List<Long> likerIds = Arrays.stream(page.getUserIds()).boxed().toList();
+    List<UserSummaryGetDTO> likers = userService.getUserSummariesByIds(likerIds);
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(TOTAL_COUNT_HEADER, String.valueOf(page.getTotalCount()));
+    if (page.getNextCursor() != null) {
+      headers.add(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+    }
+    return ResponseEntity.ok().headers(headers).body(likers);
+  }
+
+  @GetMapping("/users/{userId}/likes/pending/count")
+  public ResponseEntity<Map<String, Integer>> countPendingLikes(@PathVariable Long userId,
+                                                                @AuthenticationPrincipal UserPrincipal principal) {
+    requireSelf(principal, userId);
+    return ResponseEntity.ok(Map.of("count", userService.countPendingLikes(userId)));
+  }
+
+  // the /users/** endpoints are not protected by SecurityConfig, so a missing principal means no valid token
+  private static void requireAuthenticated(UserPrincipal principal) {
+    if (principal == null) {
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token.");
+    }
+  }
+
+  private static void requireSelf(UserPrincipal principal, Long userId) {
+    requireAuthenticated(principal);
+    if (!principal.getId().equals(userId)) {
+      throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You can only see your own likes.");
+    }
   }
 }
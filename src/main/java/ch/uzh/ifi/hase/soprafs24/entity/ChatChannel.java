@@ -8,7 +8,10 @@ import java.util.ArrayList;
 import java.util.List; 
 
 @Entity
-@Table(name = "channel")
+@Table(name = "channel", uniqueConstraints = {
+    // at most one individual channel per user pair
+    @UniqueConstraint(name = "uk_channel_pair_key", columnNames = "pair_key")
+})
 public class ChatChannel implements Serializable{
 
     private static final long serialVersionUID = 10L;
@@ -25,13 +28,24 @@ public class ChatChannel implements Serializable{
 
     private String channelProfileImage;
 
+    // "minUserId:maxUserId" for individual channels, null for group channels
+    @Column(name = "pair_key")
+    private String pairKey;
+
     @OneToMany(mappedBy = "channel", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<ChatParticipant> participants = new ArrayList<>();
 
 
     private LocalDateTime createdAt;
+    // time of the last activity, bumped with every message (see ChatChannelRepository.recordLastMessage)
     private LocalDateTime updatedAt;
 
+    // copy of the latest message, so that the inbox does not need to query the history
+    private Long lastMessageId;
+    private Long lastMessageSenderId;
+    private String lastMessageContent;
+    private LocalDateTime lastMessageAt;
+
     public ChatChannel() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
@@ -69,6 +83,12 @@ public class ChatChannel implements Serializable{
     public void setChannelProfileImage(String channelProfileImage) {
         this.channelProfileImage = channelProfileImage;
     }
+    public String getPairKey() {
+        return pairKey;
+    }
+    public void setPairKey(String pairKey) {
+        this.pairKey = pairKey;
+    }
     public List<ChatParticipant> getParticipants() {
         return participants;
     }
@@ -88,6 +108,24 @@ public class ChatChannel implements Serializable{
         this.updatedAt = updatedAt;
     }
 
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+    public Long getLastMessageSenderId() {
+        return lastMessageSenderId;
+    }
+    public String getLastMessageContent() {
+        return lastMessageContent;
+    }
+    public LocalDateTime getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    // normalized key of an individual channel between two users, independent of their order
+    public static String pairKey(Long userId1, Long userId2) {
+        return Math.min(userId1, userId2) + ":" + Math.max(userId1, userId2);
+    }
+
     // method to add a participant.
     public void addParticipant(ChatParticipant participant) {
         participants.add(participant);
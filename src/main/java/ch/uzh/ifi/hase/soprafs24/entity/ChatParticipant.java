@@ -5,7 +5,10 @@ import java.io.Serializable;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "chat_participants")
+@Table(name = "chat_participants", indexes = {
+    // channels of a user, e.g. for the inbox
+    @Index(name = "idx_chat_participants_user_channel", columnList = "user_id, channel_id")
+})
 public class ChatParticipant implements Serializable {
 
     private static final long serialVersionUID = 9L;
@@ -25,6 +28,9 @@ public class ChatParticipant implements Serializable {
     // "admin" or "member"
     private String role;
 
+    // id of the newest message this participant has read, null if none
+    private Long lastReadMessageId;
+
     public ChatParticipant() {
     }
 
@@ -64,5 +70,13 @@ public class ChatParticipant implements Serializable {
     public void setRole(String role) {
         this.role = role;
     }
+
+    public Long getLastReadMessageId() {
+        return lastReadMessageId;
+    }
+
+    public void setLastReadMessageId(Long lastReadMessageId) {
+        this.lastReadMessageId = lastReadMessageId;
+    }
 }
 
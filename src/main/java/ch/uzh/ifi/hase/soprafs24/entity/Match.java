@@ -6,7 +6,10 @@ import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Match;
 
 @Entity
-@Table(name = "MATCH")
+@Table(name = "MATCH", uniqueConstraints = {
+    // one row per unordered user pair, regardless of who liked first
+    @UniqueConstraint(name = "uk_match_user_pair", columnNames = {"user_low_id", "user_high_id"})
+})
 public class Match implements Serializable{ 
 
     private static final long serialVersionUID = 2L;
@@ -21,6 +24,13 @@ public class Match implements Serializable{
     @Column(nullable = false)
     private Long userId2;
 
+    // (userLowId, userHighId) is the normalized pair (min, max) of userId1 and userId2
+    @Column(name = "user_low_id", nullable = false)
+    private Long userLowId;
+
+    @Column(name = "user_high_id", nullable = false)
+    private Long userHighId;
+
     @Column(nullable = false)
     private MatchStatus status;
 
@@ -58,6 +68,21 @@ public class Match implements Serializable{
         this.userId2 = userId2;
     }
 
+    public Long getUserLowId() {
+        return userLowId;
+    }
+
+    public Long getUserHighId() {
+        return userHighId;
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void updatePairKey() {
+        this.userLowId = Math.min(userId1, userId2);
+        this.userHighId = Math.max(userId1, userId2);
+    }
+
     // status
     public MatchStatus getStatus() {
         return this.status;
@@ -6,13 +6,19 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    // keyset pagination of the chat history
+    @Index(name = "idx_messages_channel_id", columnList = "channel_id, id")
+})
 public class Message implements Serializable{
 
     private static final long serialVersionUID = 8L;
 
+    // sequence ids (pooled, allocated in blocks) instead of IDENTITY, so that inserts can be JDBC-batched;
+    // MessageWriter allocates and commits them under one lock, so they become visible in id order
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_seq")
+    @SequenceGenerator(name = "message_seq", sequenceName = "message_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -5,7 +5,12 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "NOTIFICATION")
+@Table(name = "NOTIFICATION", indexes = {
+    // keyset pagination of a user's notifications, newest first
+    @Index(name = "idx_notification_user_created", columnList = "user_id, creation_date, id"),
+    // retention job: read notifications by age
+    @Index(name = "idx_notification_read_created", columnList = "read, creation_date")
+})
 public class Notification implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -8,6 +8,7 @@ import javax.persistence.*; // package provides annotations (such as @Entity, @T
 import java.io.Serializable; // to allow the object to be converted into a byte stream (a requirement for many JPA providers).
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -27,7 +28,9 @@ import java.util.List;
 // Table(name = "USER"): Specifies the table name in the database.
 // implements Serializable: Ensures that instances of User can be serialized, which is often required for entities in Java.
 @Entity
-@Table(name = "USER")
+@Table(name = "USER", indexes = {
+    @Index(name = "idx_user_availability", columnList = "availability")
+})
 public class User implements Serializable {
 
   // This is a unique identifier for the Serializable class, ensuring that a loaded class corresponds exactly to a serialized object.
@@ -71,6 +74,14 @@ public class User implements Serializable {
   @Column(nullable = true, columnDefinition = "CLOB") 
   private String profilePicture;
 
+  // bumped on every picture change, so picture URLs can be cached forever
+  @Column(nullable = true)
+  private Integer profilePictureVersion;
+
+  // SHA-256 of the picture in the ImageStore; profilePicture is only kept for pictures stored before
+  @Column(nullable = true, length = 64)
+  private String profilePictureHash;
+
   @Lob
   @Column(nullable = true)
   private String bio;
@@ -194,9 +205,24 @@ public class User implements Serializable {
   }
 
   public void setProfilePicture(String profilePicture) {
+    if (!Objects.equals(this.profilePicture, profilePicture)) {
+      profilePictureVersion = profilePictureVersion == null ? 1 : profilePictureVersion + 1;
+    }
     this.profilePicture = profilePicture;
   }
 
+  public Integer getProfilePictureVersion() {
+    return profilePictureVersion;
+  }
+
+  public String getProfilePictureHash() {
+    return profilePictureHash;
+  }
+
+  public void setProfilePictureHash(String profilePictureHash) {
+    this.profilePictureHash = profilePictureHash;
+  }
+
   // bio
   public String getBio() {
     return bio;
@@ -6,7 +6,10 @@ import javax.persistence.*;
 import java.io.Serializable;
 
 @Entity
-@Table(name = "user_course")
+@Table(name = "user_course", indexes = {
+    // covers the course filter of /students without touching the base table
+    @Index(name = "idx_user_course_course_user", columnList = "course_id, user_id")
+})
 public class UserCourse implements Serializable {
 
     private static final long serialVersionUID = 6L;
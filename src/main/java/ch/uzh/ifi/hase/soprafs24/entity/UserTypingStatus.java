@@ -2,6 +2,8 @@ package ch.uzh.ifi.hase.soprafs24.entity;
 
 import javax.persistence.*;
 
+// Typing indicators are kept in memory by TypingIndicatorStore and are no longer
+// written here; the table is only kept so that old rows are removed with the user.
 @Entity
 @Table(name = "userc_typing_status")
 public class UserTypingStatus {
@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A user blocked another user, either directly or by reporting them.
+ */
+public final class BlockEvent {
+
+    private final Long blockerId;
+    private final Long blockedUserId;
+
+    @JsonCreator
+    public BlockEvent(@JsonProperty("blockerId") Long blockerId,
+                      @JsonProperty("blockedUserId") Long blockedUserId) {
+        this.blockerId = blockerId;
+        this.blockedUserId = blockedUserId;
+    }
+
+    public Long getBlockerId() {
+        return blockerId;
+    }
+
+    public Long getBlockedUserId() {
+        return blockedUserId;
+    }
+}
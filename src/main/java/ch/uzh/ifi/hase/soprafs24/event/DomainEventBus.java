@@ -0,0 +1,159 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.entity.OutboxEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-process bus for domain events such as LikeEvent, MatchAcceptedEvent and
+ * BlockEvent, so that their side effects do not run in the request that caused them.
+ *
+ * publish() does not call any handler. It writes one OutboxEvent row per
+ * subscribed handler, in the transaction of the change that caused the event,
+ * so an event exists exactly if its change was committed and survives a
+ * restart. OutboxDispatcher later hands every row to handle(), in a transaction
+ * that also deletes the row. Handlers are registered under a name that is
+ * stored with the row, so a failed handler is retried without running the
+ * other handlers of the same event again.
+ */
+@Component
+public class DomainEventBus {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Handler> handlersByName = new ConcurrentHashMap<>();
+    private final Map<Class<?>, List<Handler>> handlersByType = new ConcurrentHashMap<>();
+    private final List<Runnable> publishListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Counters> countersByType = new ConcurrentHashMap<>();
+
+    public DomainEventBus(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    private static final class Handler {
+        private final String name;
+        private final Class<?> type;
+        private final Consumer<Object> consumer;
+
+        private Handler(String name, Class<?> type, Consumer<Object> consumer) {
+            this.name = name;
+            this.type = type;
+            this.consumer = consumer;
+        }
+    }
+
+    private static final class Counters {
+        private final AtomicLong published = new AtomicLong();
+        private final AtomicLong handled = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+    }
+
+    /**
+     * Registers a handler for events of exactly this type. The name identifies the
+     * handler in stored events and must not change while events for it are pending.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> void subscribe(Class<E> type, String name, Consumer<? super E> consumer) {
+        Handler handler = new Handler(name, type, (Consumer<Object>) consumer);
+        if (handlersByName.putIfAbsent(name, handler) != null) {
+            throw new IllegalStateException("Duplicate event handler " + name);
+        }
+        handlersByType.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    // called after events were committed, e.g. to wake up the dispatcher
+    public void onPublished(Runnable listener) {
+        publishListeners.add(listener);
+    }
+
+    // stores the event for every handler of its type; part of the current transaction, if any
+    public void publish(Object event) {
+        counters(event.getClass().getSimpleName()).published.incrementAndGet();
+        List<Handler> handlers = handlersByType.get(event.getClass());
+        if (handlers == null || handlers.isEmpty()) {
+            return;
+        }
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + event.getClass().getSimpleName(), e);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> rows = new ArrayList<>(handlers.size());
+        for (Handler handler : handlers) {
+            rows.add(new OutboxEvent(event.getClass().getName(), handler.name, payload, now));
+        }
+        outboxEventRepository.saveAll(rows);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publishListeners.forEach(Runnable::run);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publishListeners.forEach(Runnable::run);
+            }
+        });
+    }
+
+    /**
+     * Runs the stored event's handler on the calling thread.
+     *
+     * @throws IllegalStateException if the handler is unknown or the payload cannot be read
+     */
+    public void handle(OutboxEvent stored) {
+        Handler handler = handlersByName.get(stored.getHandler());
+        if (handler == null) {
+            throw new IllegalStateException("No event handler " + stored.getHandler());
+        }
+        Counters counters = counters(handler.type.getSimpleName());
+        Object event;
+        try {
+            event = objectMapper.readValue(stored.getPayload(), handler.type);
+        } catch (JsonProcessingException e) {
+            counters.failed.incrementAndGet();
+            throw new IllegalStateException("Could not read " + stored.getEventType() + " " + stored.getId(), e);
+        }
+        try {
+            handler.consumer.accept(event);
+        } catch (RuntimeException e) {
+            counters.failed.incrementAndGet();
+            throw e;
+        }
+        counters.handled.incrementAndGet();
+    }
+
+    private Counters counters(String type) {
+        return countersByType.computeIfAbsent(type, t -> new Counters());
+    }
+
+    /**
+     * Snapshot of the counters, e.g. {"LikeEvent.published": 12, "LikeEvent.handled": 11, ...}.
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new TreeMap<>();
+        countersByType.forEach((type, counters) -> {
+            metrics.put(type + ".published", counters.published.get());
+            metrics.put(type + ".handled", counters.handled.get());
+            metrics.put(type + ".failed", counters.failed.get());
+        });
+        return metrics;
+    }
+}
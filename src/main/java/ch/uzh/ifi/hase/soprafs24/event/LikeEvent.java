@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A user liked another user for the first time.
+ */
+public final class LikeEvent {
+
+    private final Long likingUserId;
+    private final Long targetUserId;
+
+    @JsonCreator
+    public LikeEvent(@JsonProperty("likingUserId") Long likingUserId,
+                     @JsonProperty("targetUserId") Long targetUserId) {
+        this.likingUserId = likingUserId;
+        this.targetUserId = targetUserId;
+    }
+
+    public Long getLikingUserId() {
+        return likingUserId;
+    }
+
+    public Long getTargetUserId() {
+        return targetUserId;
+    }
+}
@@ -0,0 +1,35 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Two users liked each other and their match became ACCEPTED.
+ */
+public final class MatchAcceptedEvent {
+
+    private final Long matchId;
+    private final Long userId1;
+    private final Long userId2;
+
+    @JsonCreator
+    public MatchAcceptedEvent(@JsonProperty("matchId") Long matchId,
+                              @JsonProperty("userId1") Long userId1,
+                              @JsonProperty("userId2") Long userId2) {
+        this.matchId = matchId;
+        this.userId1 = userId1;
+        this.userId2 = userId2;
+    }
+
+    public Long getMatchId() {
+        return matchId;
+    }
+
+    public Long getUserId1() {
+        return userId1;
+    }
+
+    public Long getUserId2() {
+        return userId2;
+    }
+}
@@ -0,0 +1,237 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.entity.OutboxEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the outbox written by DomainEventBus.
+ *
+ * A single poller picks up to outbox.batch-size due events and hands them to
+ * outbox.parallelism workers. Each event is handled in its own transaction
+ * that also deletes it, so its side effects are committed exactly once. A
+ * failed event is retried with exponential backoff starting at
+ * outbox.retry.base-delay-ms; after outbox.max-attempts it is kept, but no
+ * longer retried. Once the application is ready, the poller runs every
+ * outbox.poll-interval-ms and right after events were committed.
+ *
+ * Events are not handled in the order they were published. Handlers that
+ * touch the same data have to serialise themselves, see SocialEventHandlers.
+ */
+@Component
+public class OutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final DomainEventBus eventBus;
+    private final TransactionTemplate transactionTemplate;
+    private final long pollIntervalMillis;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService poller;
+    private final ExecutorService workers;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong gaveUp = new AtomicLong();
+
+    public OutboxDispatcher(OutboxEventRepository outboxEventRepository,
+                            DomainEventBus eventBus,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${outbox.poll-interval-ms:500}") long pollIntervalMillis,
+                            @Value("${outbox.batch-size:100}") int batchSize,
+                            @Value("${outbox.parallelism:4}") int parallelism,
+                            @Value("${outbox.max-attempts:10}") int maxAttempts,
+                            @Value("${outbox.retry.base-delay-ms:1000}") long baseDelayMillis,
+                            @Value("${outbox.retry.max-delay-ms:300000}") long maxDelayMillis) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.eventBus = eventBus;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "outbox-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // polling starts once the application is ready, so no handler runs against a half initialised context;
+    // the first drain picks up what was left in the outbox before the restart
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        eventBus.onPublished(this::wakeUp);
+        poller.scheduleWithFixedDelay(this::wakeUp, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // schedules a drain unless one is already waiting to run
+    public void wakeUp() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                poller.execute(this::drainSafely);
+            } catch (RuntimeException e) {
+                // shutting down
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Handles all events that are due now, batch by batch.
+     *
+     * @return the number of events handled successfully
+     */
+    public int drain() throws InterruptedException {
+        int handled = 0;
+        while (true) {
+            List<Long> ids = outboxEventRepository.findDueIds(LocalDateTime.now(), PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                return handled;
+            }
+            List<Callable<Boolean>> tasks = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                tasks.add(() -> dispatch(id));
+            }
+            int succeeded = 0;
+            for (Future<Boolean> result : workers.invokeAll(tasks)) {
+                try {
+                    if (Boolean.TRUE.equals(result.get())) {
+                        succeeded++;
+                    }
+                } catch (Exception e) {
+                    log.warn("Outbox worker failed", e);
+                }
+            }
+            handled += succeeded;
+            if (ids.size() < batchSize || succeeded == 0) {
+                // nothing more is due, or everything due is failing and waits for its backoff
+                return handled;
+            }
+        }
+    }
+
+    // handles one event and deletes it in the same transaction; on failure schedules the next attempt
+    private boolean dispatch(Long id) {
+        try {
+            Boolean done = transactionTemplate.execute(status -> outboxEventRepository.findById(id)
+                .map(event -> {
+                    eventBus.handle(event);
+                    outboxEventRepository.delete(event);
+                    return true;
+                })
+                .orElse(false));
+            if (Boolean.TRUE.equals(done)) {
+                dispatched.incrementAndGet();
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            recordFailure(id, e);
+            return false;
+        }
+    }
+
+    private void recordFailure(Long id, RuntimeException failure) {
+        transactionTemplate.executeWithoutResult(status -> outboxEventRepository.findById(id).ifPresent(event -> {
+            int attempts = event.getAttempts() + 1;
+            event.setAttempts(attempts);
+            String message = String.valueOf(failure.getMessage());
+            event.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+            if (attempts >= maxAttempts) {
+                event.setNextAttemptAt(null);
+                gaveUp.incrementAndGet();
+                log.error("Giving up on {} {} for {} after {} attempts", event.getEventType(), event.getId(),
+                    event.getHandler(), attempts, failure);
+            } else {
+                event.setNextAttemptAt(LocalDateTime.now().plus(Duration.ofMillis(backoffMillis(attempts))));
+                retried.incrementAndGet();
+                log.warn("Handling {} {} for {} failed, attempt {}", event.getEventType(), event.getId(),
+                    event.getHandler(), attempts, failure);
+            }
+            outboxEventRepository.save(event);
+        }));
+    }
+
+    // base * 2^(attempts - 1), capped at the maximum delay
+    long backoffMillis(int attempts) {
+        long delay = baseDelayMillis << Math.min(attempts - 1, 30);
+        return delay <= 0 ? maxDelayMillis : Math.min(delay, maxDelayMillis);
+    }
+
+    private void drainSafely() {
+        drainScheduled.set(false);
+        try {
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Draining the outbox failed", e);
+        }
+    }
+
+    /**
+     * Counters and the outbox lag: pending events, events that gave up, and the age of
+     * the oldest pending event in milliseconds (0 if there is none).
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("dispatched", dispatched.get());
+        metrics.put("retried", retried.get());
+        metrics.put("gaveUp", gaveUp.get());
+        metrics.put("pending", outboxEventRepository.countByNextAttemptAtIsNotNull());
+        metrics.put("dead", outboxEventRepository.countByNextAttemptAtIsNull());
+        LocalDateTime oldest = outboxEventRepository.findOldestPendingCreatedAt();
+        metrics.put("lagMillis", oldest == null ? 0L : Math.max(0L, Duration.between(oldest, LocalDateTime.now()).toMillis()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // undispatched events stay in the outbox and are handled after the restart
+        poller.shutdown();
+        poller.awaitTermination(10, TimeUnit.SECONDS);
+        workers.shutdownNow();
+    }
+}
@@ -1,14 +1,33 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.ChatChannel;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository("chatChannelRepository")
 public interface ChatChannelRepository extends JpaRepository<ChatChannel, Long> {
     // Find all channels that include a participant with the given user id.
     List<ChatChannel> findByParticipantsUserId(Long userId);
-}
\ No newline at end of file
+
+    boolean existsByIdAndParticipantsUserId(Long channelId, Long userId);
+
+    // individual channel of a user pair, see ChatChannel.pairKey
+    Optional<ChatChannel> findByPairKey(String pairKey);
+
+    // sets the denormalized latest message and bumps the activity time, unless a newer message is already recorded
+    @Modifying
+    @Query("UPDATE ChatChannel c SET c.lastMessageId = :messageId, c.lastMessageSenderId = :senderId,"
+        + " c.lastMessageContent = :content, c.lastMessageAt = :sentAt, c.updatedAt = :sentAt"
+        + " WHERE c.id = :channelId AND (c.lastMessageId IS NULL OR c.lastMessageId < :messageId)")
+    int recordLastMessage(@Param("channelId") Long channelId, @Param("messageId") Long messageId,
+                          @Param("senderId") Long senderId, @Param("content") String content,
+                          @Param("sentAt") LocalDateTime sentAt);
+}
@@ -0,0 +1,35 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.ChatParticipant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository("chatParticipantRepository")
+public interface ChatParticipantRepository extends JpaRepository<ChatParticipant, Long> {
+
+    // inbox rows of [channel, lastReadMessageId] of a user, most recent activity first
+    @Query("SELECT c, p.lastReadMessageId FROM ChatParticipant p JOIN p.channel c WHERE p.user.id = :userId"
+        + " ORDER BY c.updatedAt DESC, c.id DESC")
+    List<Object[]> findInboxRows(@Param("userId") Long userId);
+
+    // rows of [channelId, userId, name, role, profilePictureHash, hasProfilePicture, profilePictureVersion],
+    // reads the user columns needed for a participant summary without loading the picture itself
+    @Query("SELECT p.channel.id, u.id, u.name, p.role, u.profilePictureHash,"
+        + " CASE WHEN u.profilePicture IS NULL THEN false ELSE true END, u.profilePictureVersion"
+        + " FROM ChatParticipant p JOIN p.user u WHERE p.channel.id IN :channelIds ORDER BY p.id")
+    List<Object[]> findParticipantSummaries(@Param("channelIds") Collection<Long> channelIds);
+
+    // moves the read pointer forward only, so late or reordered receipts never move it back
+    @Modifying
+    @Query("UPDATE ChatParticipant p SET p.lastReadMessageId = :messageId"
+        + " WHERE p.channel.id = :channelId AND p.user.id = :userId"
+        + " AND (p.lastReadMessageId IS NULL OR p.lastReadMessageId < :messageId)")
+    int advanceReadPointer(@Param("channelId") Long channelId, @Param("userId") Long userId,
+                           @Param("messageId") Long messageId);
+}
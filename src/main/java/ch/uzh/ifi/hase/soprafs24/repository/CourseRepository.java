@@ -13,7 +13,7 @@ import java.util.Optional;
 @Repository
 public interface CourseRepository extends JpaRepository<Course, Long> {
     @Query(value = """
-        SELECT "USER_ID"
+        SELECT DISTINCT "USER_ID"
         FROM "USER_COURSE"
         WHERE "COURSE_ID" IN (:courseIds)
     """, nativeQuery = true)
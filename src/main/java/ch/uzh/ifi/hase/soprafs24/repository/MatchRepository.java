@@ -1,10 +1,15 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Match;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,13 +21,30 @@ public interface MatchRepository extends JpaRepository<Match, Long> {
     @Query("SELECT m FROM Match m WHERE (m.userId1 = :userId OR m.userId2 = :userId) AND m.status = 'ACCEPTED'")
     List<Match> findAcceptedMatchesByUserId(@Param("userId") Long userId);
     
-    @Query("SELECT m FROM Match m WHERE (m.userId1 = :userId AND m.userId2 = :targetUserId) " + "OR (m.userId1 = :targetUserId AND m.userId2 = :userId)")
-    Optional<Match> findMatchByUsers(@Param("userId") Long userId, @Param("targetUserId") Long targetUserId);
+    // looks up the pair in either order through the unique (userLowId, userHighId) index
+    default Optional<Match> findMatchByUsers(Long userId, Long targetUserId) {
+        return findByUserLowIdAndUserHighId(Math.min(userId, targetUserId), Math.max(userId, targetUserId));
+    }
+
+    Optional<Match> findByUserLowIdAndUserHighId(Long userLowId, Long userHighId);
+
+    // same lookup, but locks the row until the end of the transaction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM Match m WHERE m.userLowId = :userLowId AND m.userHighId = :userHighId")
+    Optional<Match> findPairForUpdate(@Param("userLowId") Long userLowId, @Param("userHighId") Long userHighId);
+
+    // the existing pairs of one user with each of the other users, without locking them
+    @Query("SELECT m FROM Match m WHERE (m.userLowId = :userId AND m.userHighId IN :otherUserIds)"
+        + " OR (m.userHighId = :userId AND m.userLowId IN :otherUserIds)")
+    List<Match> findPairs(@Param("userId") Long userId, @Param("otherUserIds") Collection<Long> otherUserIds);
 
     // Find all matches where the given user is either userId1 or userId2
     @Query("SELECT m FROM Match m WHERE m.userId1 = :userId OR m.userId2 = :userId")
     List<Match> findAllByUserIdEither(@Param("userId") Long userId);
 
+    // Find all matches in one of the given states
+    List<Match> findAllByStatusIn(List<MatchStatus> statuses);
+
     // Delete all matches where the given user is either userId1 or userId2
     void deleteAllByUserId1OrUserId2(Long userId1, Long userId2);
 }
@@ -1,8 +1,8 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Message;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -10,9 +10,23 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 @Repository("messageRepository")
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    Page<Message> findByChannelId(Long channelId, Pageable pageable);
+    // newest first; use Long.MAX_VALUE as beforeId for the latest messages
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.channel.id = :channelId AND m.id < :beforeId ORDER BY m.id DESC")
+    Slice<Message> findHistoryBefore(@Param("channelId") Long channelId, @Param("beforeId") Long beforeId, Pageable pageable);
+
+    // oldest first
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.channel.id = :channelId AND m.id > :afterId ORDER BY m.id ASC")
+    Slice<Message> findHistoryAfter(@Param("channelId") Long channelId, @Param("afterId") Long afterId, Pageable pageable);
+
+    // rows of [channelId, count] of the messages of others after the user's read pointer, per channel
+    @Query("SELECT m.channel.id, COUNT(m) FROM Message m, ChatParticipant p"
+        + " WHERE p.user.id = :userId AND m.channel = p.channel AND m.sender.id <> :userId"
+        + " AND m.id > COALESCE(p.lastReadMessageId, 0) GROUP BY m.channel.id")
+    List<Object[]> countUnreadByChannel(@Param("userId") Long userId);
 
     void deleteAllBySenderId(Long senderId);
 
@@ -1,17 +1,46 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Notification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
     
-    List<Notification> findByUserIdOrderByCreationDateDesc(Long userId);
-    
     List<Notification> findByUserIdAndReadFalseOrderByCreationDateDesc(Long userId);
+
+    long countByUserIdAndReadFalse(Long userId);
+
+    // first page of a user's notifications, newest first
+    Slice<Notification> findByUserIdOrderByCreationDateDescIdDesc(Long userId, Pageable pageable);
+
+    // the page after (beforeDate, beforeId), both taken from the last notification of the previous page
+    @Query("SELECT n FROM Notification n WHERE n.userId = :userId"
+        + " AND (n.creationDate < :beforeDate OR (n.creationDate = :beforeDate AND n.id < :beforeId))"
+        + " ORDER BY n.creationDate DESC, n.id DESC")
+    Slice<Notification> findPageBefore(@Param("userId") Long userId, @Param("beforeDate") LocalDateTime beforeDate,
+                                       @Param("beforeId") Long beforeId, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Notification n SET n.read = true WHERE n.userId = :userId AND n.read = false")
+    int markAllReadByUserId(@Param("userId") Long userId);
+
+    // ids of read notifications older than the cutoff, oldest first, for batched deletes
+    @Query("SELECT n.id FROM Notification n WHERE n.read = true AND n.creationDate < :cutoff ORDER BY n.creationDate")
+    List<Long> findReadIdsCreatedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Notification n WHERE n.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
     
     void deleteByUserId(Long userId);
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // ids of events due at the given time, in the order they were written
+    @Query("SELECT e.id FROM OutboxEvent e WHERE e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt, e.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    long countByNextAttemptAtIsNotNull();
+
+    // events that gave up and need a look
+    long countByNextAttemptAtIsNull();
+
+    @Query("SELECT MIN(e.createdAt) FROM OutboxEvent e WHERE e.nextAttemptAt IS NOT NULL")
+    LocalDateTime findOldestPendingCreatedAt();
+}
@@ -2,9 +2,23 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.UserCourse;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface UserCourseRepository extends JpaRepository<UserCourse, Long> {
     void deleteAllByUserId(Long userId); // optional helper method
+
+    // rows of [userId, courseId, knowledgeLevel], used to build the discovery index
+    @Query("SELECT uc.user.id, uc.course.id, uc.knowledgeLevel FROM UserCourse uc")
+    List<Object[]> findAllCourseLevels();
+
+    // rows of [userId, courseId, courseName, knowledgeLevel] for the user summaries
+    @Query("SELECT uc.user.id, uc.course.id, uc.course.courseName, uc.knowledgeLevel FROM UserCourse uc"
+            + " WHERE uc.user.id IN :userIds ORDER BY uc.id")
+    List<Object[]> findCourseRowsByUserIds(@Param("userIds") Collection<Long> userIds);
 }
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
@@ -26,8 +27,35 @@ public interface UserRepository extends JpaRepository<User, Long> {
   @EntityGraph(attributePaths = {"userCourses", "userCourses.course"})
   Optional<User> findWithCoursesById(Long id);
 
-  @Query("SELECT u FROM User u WHERE u.id NOT IN :excludedIds AND u.id <> :userId")
-  List<User> findDiscoverableUsers(@Param("userId") Long userId, @Param("excludedIds") List<Long> excludedIds);
+  String SUMMARY_SELECT = "SELECT u.id AS id, u.name AS name, u.email AS email, u.status AS status,"
+      + " u.availability AS availability, u.studyLevel AS studyLevel, u.studyGoals AS studyGoals,"
+      + " u.bio AS bio, u.knowledgeLevel AS knowledgeLevel,"
+      + " CASE WHEN u.profilePicture IS NULL THEN false ELSE true END AS hasProfilePicture,"
+      + " u.profilePictureVersion AS profilePictureVersion, u.profilePictureHash AS profilePictureHash FROM User u";
+
+  @Query(SUMMARY_SELECT + " ORDER BY u.id")
+  List<UserSummary> findAllSummaries();
+
+  @Query(SUMMARY_SELECT + " WHERE u.id IN :ids")
+  List<UserSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+  // reads only the picture column, for the picture endpoint
+  @Query("SELECT u.profilePicture FROM User u WHERE u.id = :id")
+  String findProfilePictureById(@Param("id") Long id);
+
+  @Query("SELECT u.profilePictureHash FROM User u WHERE u.id = :id")
+  String findProfilePictureHashById(@Param("id") Long id);
+
+  // rows of [id, availability, email], used to build the student search index
+  @Query("SELECT u.id, u.availability, u.email FROM User u")
+  List<Object[]> findStudentSearchRows();
+
+  @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+  List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+  // rows of [id, availability, studyLevel], used to build the discovery index
+  @Query("SELECT u.id, u.availability, u.studyLevel FROM User u ORDER BY u.id")
+  List<Object[]> findDiscoveryProfiles();
 
 }
 
@@ -0,0 +1,37 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ProfileKnowledgeLevel;
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+
+/**
+ * Projection of a user for list endpoints.
+ * Leaves out the legacy profile picture (a CLOB) so listing users never reads it;
+ * only whether it exists, its version and the ImageStore hash are selected.
+ */
+public interface UserSummary {
+
+    Long getId();
+
+    String getName();
+
+    String getEmail();
+
+    UserStatus getStatus();
+
+    UserAvailability getAvailability();
+
+    String getStudyLevel();
+
+    String getStudyGoals();
+
+    String getBio();
+
+    ProfileKnowledgeLevel getKnowledgeLevel();
+
+    boolean getHasProfilePicture();
+
+    Integer getProfilePictureVersion();
+
+    String getProfilePictureHash();
+}
@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+// used to return one channel of a user's inbox: the channel, its latest message and the unread count
+
+import java.util.List;
+
+public class ChatInboxEntryGetDTO {
+    private Long channelId;
+    private String channelName;
+    private String channelType; // 'individual' or 'group'
+    private String channelProfileImage;
+    private String lastActivityAt;
+    private Long lastMessageId; // null if the channel has no messages yet
+    private Long lastMessageSenderId;
+    private String lastMessageContext;
+    private String lastMessageTimestamp;
+    private Long lastReadMessageId;
+    private long unreadCount;
+    private List<ChatParticipantGetDTO> participants;
+
+    // getter and setter
+
+    public Long getChannelId() {
+        return channelId;
+    }
+    public void setChannelId(Long channelId) {
+        this.channelId = channelId;
+    }
+    public String getChannelName() {
+        return channelName;
+    }
+    public void setChannelName(String channelName) {
+        this.channelName = channelName;
+    }
+    public String getChannelType() {
+        return channelType;
+    }
+    public void setChannelType(String channelType) {
+        this.channelType = channelType;
+    }
+    public String getChannelProfileImage() {
+        return channelProfileImage;
+    }
+    public void setChannelProfileImage(String channelProfileImage) {
+        this.channelProfileImage = channelProfileImage;
+    }
+    public String getLastActivityAt() {
+        return lastActivityAt;
+    }
+    public void setLastActivityAt(String lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+    public void setLastMessageId(Long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+    public Long getLastMessageSenderId() {
+        return lastMessageSenderId;
+    }
+    public void setLastMessageSenderId(Long lastMessageSenderId) {
+        this.lastMessageSenderId = lastMessageSenderId;
+    }
+    public String getLastMessageContext() {
+        return lastMessageContext;
+    }
+    public void setLastMessageContext(String lastMessageContext) {
+        this.lastMessageContext = lastMessageContext;
+    }
+    public String getLastMessageTimestamp() {
+        return lastMessageTimestamp;
+    }
+    public void setLastMessageTimestamp(String lastMessageTimestamp) {
+        this.lastMessageTimestamp = lastMessageTimestamp;
+    }
+    public Long getLastReadMessageId() {
+        return lastReadMessageId;
+    }
+    public void setLastReadMessageId(Long lastReadMessageId) {
+        this.lastReadMessageId = lastReadMessageId;
+    }
+    public long getUnreadCount() {
+        return unreadCount;
+    }
+    public void setUnreadCount(long unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+    public List<ChatParticipantGetDTO> getParticipants() {
+        return participants;
+    }
+    public void setParticipants(List<ChatParticipantGetDTO> participants) {
+        this.participants = participants;
+    }
+}
@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.util.List;
+
+/**
+ * A batch of swipes of one user, applied in the given order.
+ */
+public class MatchBatchPostDTO {
+    private Long userId;                  // ID of the user performing the swipes
+    private List<SwipeDecisionDTO> decisions;
+
+    public MatchBatchPostDTO() {}
+
+    public MatchBatchPostDTO(Long userId, List<SwipeDecisionDTO> decisions) {
+        this.userId = userId;
+        this.decisions = decisions;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public List<SwipeDecisionDTO> getDecisions() {
+        return decisions;
+    }
+
+    public void setDecisions(List<SwipeDecisionDTO> decisions) {
+        this.decisions = decisions;
+    }
+
+    public static class SwipeDecisionDTO {
+        private Long targetUserId; // ID of the user being liked/disliked
+        private boolean liked;     // true for a like, false for a dislike
+
+        public SwipeDecisionDTO() {}
+
+        public SwipeDecisionDTO(Long targetUserId, boolean liked) {
+            this.targetUserId = targetUserId;
+            this.liked = liked;
+        }
+
+        public Long getTargetUserId() {
+            return targetUserId;
+        }
+
+        public void setTargetUserId(Long targetUserId) {
+            this.targetUserId = targetUserId;
+        }
+
+        public boolean isLiked() {
+            return liked;
+        }
+
+        public void setLiked(boolean liked) {
+            this.liked = liked;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+
+/**
+ * Outcome of one swipe of a batch. If the swipe could not be applied, applied
+ * is false and error says why; the other swipes of the batch are not affected.
+ */
+public class MatchBatchResultGetDTO {
+    private Long targetUserId;
+    private boolean liked;
+    private boolean applied;
+    private boolean newMatch;   // true if this like made the pair a mutual match
+    private Long matchId;
+    private MatchStatus status; // status of the pair after this swipe
+    private String error;
+
+    public MatchBatchResultGetDTO() {}
+
+    public Long getTargetUserId() {
+        return targetUserId;
+    }
+
+    public void setTargetUserId(Long targetUserId) {
+        this.targetUserId = targetUserId;
+    }
+
+    public boolean isLiked() {
+        return liked;
+    }
+
+    public void setLiked(boolean liked) {
+        this.liked = liked;
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public void setApplied(boolean applied) {
+        this.applied = applied;
+    }
+
+    public boolean isNewMatch() {
+        return newMatch;
+    }
+
+    public void setNewMatch(boolean newMatch) {
+        this.newMatch = newMatch;
+    }
+
+    public Long getMatchId() {
+        return matchId;
+    }
+
+    public void setMatchId(Long matchId) {
+        this.matchId = matchId;
+    }
+
+    public MatchStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(MatchStatus status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
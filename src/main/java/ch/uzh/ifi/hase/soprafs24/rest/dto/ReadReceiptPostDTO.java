@@ -0,0 +1,52 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+// used when the frontend acknowledges read messages, possibly for several channels at once
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReadReceiptPostDTO {
+    private Long userId;
+    private List<Receipt> receipts = new ArrayList<>();
+
+    // the newest message the user has read in a channel
+    public static class Receipt {
+        private Long channelId;
+        private Long messageId;
+
+        public Receipt() {}
+
+        public Receipt(Long channelId, Long messageId) {
+            this.channelId = channelId;
+            this.messageId = messageId;
+        }
+
+        public Long getChannelId() {
+            return channelId;
+        }
+        public void setChannelId(Long channelId) {
+            this.channelId = channelId;
+        }
+        public Long getMessageId() {
+            return messageId;
+        }
+        public void setMessageId(Long messageId) {
+            this.messageId = messageId;
+        }
+    }
+
+    // getter and setter
+
+    public Long getUserId() {
+        return userId;
+    }
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+    public List<Receipt> getReceipts() {
+        return receipts;
+    }
+    public void setReceipts(List<Receipt> receipts) {
+        this.receipts = receipts;
+    }
+}
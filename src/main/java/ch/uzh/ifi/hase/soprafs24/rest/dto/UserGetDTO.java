@@ -21,6 +21,7 @@ public class UserGetDTO {
   private List<String> studyGoals;
   private String bio;
   private String profilePicture;
+  private String profilePictureUrl;
   private ProfileKnowledgeLevel knowledgeLevel;
 
   private List<UserCourseDTO> userCourses;
@@ -138,6 +139,14 @@ public class UserGetDTO {
     this.bio = bio;
   }
 
+  public String getProfilePictureUrl() {
+    return profilePictureUrl;
+  }
+
+  public void setProfilePictureUrl(String profilePictureUrl) {
+    this.profilePictureUrl = profilePictureUrl;
+  }
+
   public String getProfilePicture() {
     return profilePicture;
   }
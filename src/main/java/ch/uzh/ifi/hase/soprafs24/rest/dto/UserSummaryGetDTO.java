@@ -0,0 +1,111 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ProfileKnowledgeLevel;
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+
+import java.util.List;
+
+// Compact user representation for list endpoints; the picture is referenced by URL instead of embedded
+public class UserSummaryGetDTO {
+
+  private Long id;
+  private String name;
+  private String email;
+  private UserStatus status;
+  private UserAvailability availability;
+  private String studyLevel;
+  private List<String> studyGoals;
+  private String bio;
+  private ProfileKnowledgeLevel knowledgeLevel;
+  private String profilePictureUrl;
+  private List<UserGetDTO.UserCourseDTO> userCourses;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public void setEmail(String email) {
+    this.email = email;
+  }
+
+  public UserStatus getStatus() {
+    return status;
+  }
+
+  public void setStatus(UserStatus status) {
+    this.status = status;
+  }
+
+  public UserAvailability getAvailability() {
+    return availability;
+  }
+
+  public void setAvailability(UserAvailability availability) {
+    this.availability = availability;
+  }
+
+  public String getStudyLevel() {
+    return studyLevel;
+  }
+
+  public void setStudyLevel(String studyLevel) {
+    this.studyLevel = studyLevel;
+  }
+
+  public List<String> getStudyGoals() {
+    return studyGoals;
+  }
+
+  public void setStudyGoals(List<String> studyGoals) {
+    this.studyGoals = studyGoals;
+  }
+
+  public String getBio() {
+    return bio;
+  }
+
+  public void setBio(String bio) {
+    this.bio = bio;
+  }
+
+  public ProfileKnowledgeLevel getKnowledgeLevel() {
+    return knowledgeLevel;
+  }
+
+  public void setKnowledgeLevel(ProfileKnowledgeLevel knowledgeLevel) {
+    this.knowledgeLevel = knowledgeLevel;
+  }
+
+  public String getProfilePictureUrl() {
+    return profilePictureUrl;
+  }
+
+  public void setProfilePictureUrl(String profilePictureUrl) {
+    this.profilePictureUrl = profilePictureUrl;
+  }
+
+  public List<UserGetDTO.UserCourseDTO> getUserCourses() {
+    return userCourses;
+  }
+
+  public void setUserCourses(List<UserGetDTO.UserCourseDTO> userCourses) {
+    this.userCourses = userCourses;
+  }
+}
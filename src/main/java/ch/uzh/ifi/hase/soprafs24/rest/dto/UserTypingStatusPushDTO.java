@@ -5,6 +5,7 @@ package ch.uzh.ifi.hase.soprafs24.rest.dto;
 public class UserTypingStatusPushDTO {
     private Long userId;
     private boolean typing;
+    private Long channelId; // optional, the channel the user is typing in
 
     public UserTypingStatusPushDTO() {}
 
@@ -29,4 +30,12 @@ public class UserTypingStatusPushDTO {
     public void setTyping(boolean typing) {
         this.typing = typing;
     }
+
+    public Long getChannelId() {
+        return channelId;
+    }
+
+    public void setChannelId(Long channelId) {
+        this.channelId = channelId;
+    }
 }
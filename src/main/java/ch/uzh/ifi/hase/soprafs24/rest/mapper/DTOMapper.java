@@ -2,10 +2,12 @@ package ch.uzh.ifi.hase.soprafs24.rest.mapper;
 
 import ch.uzh.ifi.hase.soprafs24.entity.*;
 import ch.uzh.ifi.hase.soprafs24.repository.CourseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.*;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,8 +23,49 @@ public interface DTOMapper {
 
     @Mapping(target = "userCourses", expression = "java(convertUserCourses(user.getUserCourses()))")
     @Mapping(target = "studyGoals", expression = "java(splitStudyGoals(user.getStudyGoals()))")
+    @Mapping(target = "profilePictureUrl", expression = "java(profileImageUrl(user, null))")
     UserGetDTO convertEntityToUserGetDTO(User user);
 
+    default UserSummaryGetDTO convertUserSummaryToDTO(UserSummary summary, List<UserGetDTO.UserCourseDTO> userCourses) {
+        UserSummaryGetDTO dto = new UserSummaryGetDTO();
+        dto.setId(summary.getId());
+        dto.setName(summary.getName());
+        dto.setEmail(summary.getEmail());
+        dto.setStatus(summary.getStatus());
+        dto.setAvailability(summary.getAvailability());
+        dto.setStudyLevel(summary.getStudyLevel());
+        dto.setStudyGoals(splitStudyGoals(summary.getStudyGoals()));
+        dto.setBio(summary.getBio());
+        dto.setKnowledgeLevel(summary.getKnowledgeLevel());
+        dto.setProfilePictureUrl(profileImageUrl(summary.getId(), summary.getProfilePictureHash(),
+            summary.getHasProfilePicture(), summary.getProfilePictureVersion(), null));
+        dto.setUserCourses(userCourses);
+        return dto;
+    }
+
+    default String profilePictureUrl(Long userId, Integer version) {
+        return "/users/" + userId + "/profile-picture?v=" + (version == null ? 0 : version);
+    }
+
+    default String imageUrl(String hash, Integer size) {
+        return "/images/" + hash + (size == null ? "" : "?size=" + size);
+    }
+
+    // URL of the picture of a user, or null if there is none
+    @Named("profileImageUrl")
+    default String profileImageUrl(User user, Integer size) {
+        if (user == null) return null;
+        return profileImageUrl(user.getId(), user.getProfilePictureHash(), user.getProfilePicture() != null,
+            user.getProfilePictureVersion(), size);
+    }
+
+    // same as above, from the picture columns only
+    default String profileImageUrl(Long userId, String hash, boolean hasPicture, Integer version, Integer size) {
+        if (hash != null) return imageUrl(hash, size);
+        if (hasPicture) return profilePictureUrl(userId, version);
+        return null;
+    }
+
     // --- COURSE MAPPING ---
 
     @Mapping(source = "id", target = "id")
@@ -102,6 +145,7 @@ public interface DTOMapper {
     @Mapping(target = "createdAt", expression = "java(java.time.LocalDateTime.now())")
     @Mapping(target = "updatedAt", expression = "java(java.time.LocalDateTime.now())")
     @Mapping(target = "participants", ignore = true)
+    @Mapping(target = "pairKey", ignore = true)
     ChatChannel convertChatChannelPostDTOtoEntity(ChatChannelPostDTO chatChannelPostDTO);
 
     @Mapping(source = "id", target = "channelId")
@@ -125,17 +169,48 @@ public interface DTOMapper {
     @Mapping(source = "sender.id", target = "senderId")
     @Mapping(source = "content", target = "context")
     @Mapping(target = "timestamp", expression = "java(message.getTimestamp().toString())")
-    @Mapping(source = "sender.profilePicture", target = "senderProfileImage")
+    @Mapping(target = "senderProfileImage", expression = "java(profileImageUrl(message.getSender(), 64))")
     MessageGetDTO convertEntityToMessageGetDTO(Message message);
 
+    // for a message that was stored without loading its sender
+    default MessageGetDTO convertToMessageGetDTO(Long messageId, Long channelId, Long senderId, String content,
+                                                 LocalDateTime timestamp, String senderProfileImage) {
+        MessageGetDTO dto = new MessageGetDTO();
+        dto.setMessageId(messageId);
+        dto.setChannelId(channelId);
+        dto.setSenderId(senderId);
+        dto.setContext(content);
+        dto.setTimestamp(timestamp.toString());
+        dto.setSenderProfileImage(senderProfileImage);
+        return dto;
+    }
+
     @Mapping(source = "user.id", target = "userId")
     @Mapping(source = "user.name", target = "userName")
-    @Mapping(source = "user.profilePicture", target = "userProfileImage")
+    @Mapping(target = "userProfileImage", expression = "java(profileImageUrl(chatParticipant.getUser(), 64))")
     @Mapping(source = "role", target = "role")
     ChatParticipantGetDTO convertEntityToChatParticipantGetDTO(ChatParticipant chatParticipant);
 
     List<ChatParticipantGetDTO> convertEntityToChatParticipantGetDTOList(List<ChatParticipant> chatParticipants);
 
+    default ChatInboxEntryGetDTO convertChannelToInboxEntry(ChatChannel channel, Long lastReadMessageId,
+                                                            long unreadCount, List<ChatParticipantGetDTO> participants) {
+        ChatInboxEntryGetDTO dto = new ChatInboxEntryGetDTO();
+        dto.setChannelId(channel.getId());
+        dto.setChannelName(channel.getName());
+        dto.setChannelType(channel.getType());
+        dto.setChannelProfileImage(channel.getChannelProfileImage());
+        dto.setLastActivityAt(channel.getUpdatedAt() == null ? null : channel.getUpdatedAt().toString());
+        dto.setLastMessageId(channel.getLastMessageId());
+        dto.setLastMessageSenderId(channel.getLastMessageSenderId());
+        dto.setLastMessageContext(channel.getLastMessageContent());
+        dto.setLastMessageTimestamp(channel.getLastMessageAt() == null ? null : channel.getLastMessageAt().toString());
+        dto.setLastReadMessageId(lastReadMessageId);
+        dto.setUnreadCount(unreadCount);
+        dto.setParticipants(participants);
+        return dto;
+    }
+
     // --- MATCH MAPPINGS ---
 
     @Mapping(source = "userId", target = "userId1")
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived, single-use tickets for connections that cannot send an
+ * Authorization header (WebSocket handshakes, EventSource streams).
+ *
+ * A client exchanges its bearer token for a ticket and passes the ticket in the
+ * query string instead of the token, so the token itself never appears in URLs
+ * or request logs. A ticket is valid for auth.connection-ticket.ttl-seconds and
+ * can be redeemed once; it only stands for the token, which is checked again
+ * when the ticket is redeemed.
+ */
+@Component
+public class ConnectionTicketStore {
+
+    public static final String TICKET_PARAMETER = "ticket";
+
+    private final long ttlNanos;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    public ConnectionTicketStore(@Value("${auth.connection-ticket.ttl-seconds:30}") long ttlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public String issue(String token) {
+        long now = System.nanoTime();
+        // tickets that were never redeemed are dropped here, there are only few within one ttl
+        tickets.values().removeIf(ticket -> now - ticket.createdAt >= ttlNanos);
+
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String ticket = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tickets.put(ticket, new Ticket(token, now));
+        return ticket;
+    }
+
+    /**
+     * @return the token the ticket was issued for, or null if it is unknown, expired or already used
+     */
+    public String redeem(String ticket) {
+        if (ticket == null) {
+            return null;
+        }
+        Ticket entry = tickets.remove(ticket);
+        if (entry == null || System.nanoTime() - entry.createdAt >= ttlNanos) {
+            return null;
+        }
+        return entry.token;
+    }
+
+    private static final class Ticket {
+        private final String token;
+        private final long createdAt;
+
+        private Ticket(String token, long createdAt) {
+            this.token = token;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt hashing and verification of passwords on a dedicated, bounded pool.
+ *
+ * Hashing is CPU-bound and slow by design, so it does not run on the request
+ * threads: at most security.password-hashing.threads hashes run at a time and at
+ * most security.password-hashing.queue-capacity wait. When the queue is full, or
+ * a hash is not done within security.password-hashing.timeout-ms, the request
+ * fails fast with 503 instead of making every other endpoint wait.
+ *
+ * The work factor is security.bcrypt.strength. needsRehash() tells whether a
+ * stored hash was made with a different strength, so it can be replaced at the
+ * next successful login.
+ */
+@Component
+public class PasswordHasher {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+    private static final String BUSY_MESSAGE = "The server is busy, please try again in a moment.";
+
+    private final BCryptPasswordEncoder encoder;
+    private final int strength;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public PasswordHasher(@Value("${security.bcrypt.strength:10}") int strength,
+                          @Value("${security.password-hashing.threads:0}") int threads,
+                          @Value("${security.password-hashing.queue-capacity:64}") int queueCapacity,
+                          @Value("${security.password-hashing.timeout-ms:5000}") long timeoutMillis) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.timeoutMillis = timeoutMillis;
+        // by default one thread less than there are cores, so hashing never takes all of them
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                Thread thread = new Thread(runnable, "password-hashing");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String hash(String rawPassword) {
+        return run(() -> encoder.encode(rawPassword));
+    }
+
+    public boolean matches(String rawPassword, String hashedPassword) {
+        if (rawPassword == null || hashedPassword == null) {
+            return false;
+        }
+        return run(() -> encoder.matches(rawPassword, hashedPassword));
+    }
+
+    // true if the hash is not a BCrypt hash of the configured strength
+    public boolean needsRehash(String hashedPassword) {
+        if (hashedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(hashedPassword);
+        return !matcher.find() || Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    record(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY_MESSAGE);
+        }
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            timedOut.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY_MESSAGE);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY_MESSAGE);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private void record(long nanos) {
+        completed.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        if (nanos > TimeUnit.SECONDS.toNanos(1)) {
+            log.warn("Password hash took {} ms at strength {}", TimeUnit.NANOSECONDS.toMillis(nanos), strength);
+        }
+    }
+
+    /**
+     * Hash counters: completed hashes and checks, their mean and maximum duration
+     * in microseconds, requests rejected because the queue was full or timed out,
+     * and the current queue depth.
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        long count = completed.get();
+        metrics.put("completed", count);
+        metrics.put("meanMicros", count == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / count));
+        metrics.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        metrics.put("rejected", rejected.get());
+        metrics.put("timedOut", timedOut.get());
+        metrics.put("queued", (long) executor.getQueue().size());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
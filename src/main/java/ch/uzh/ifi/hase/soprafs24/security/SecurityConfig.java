@@ -1,10 +1,13 @@
 package ch.uzh.ifi.hase.soprafs24.security;
 
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -16,10 +19,14 @@ import java.util.Collections;
 public class SecurityConfig {
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, UserService userService,
+                                           ConnectionTicketStore connectionTicketStore) throws Exception {
         http
             // Use this CORS configuration
             .cors().and()
+            // Resolve the Authorization header (or a connection ticket) once per request into a UserPrincipal
+            .addFilterBefore(new TokenAuthenticationFilter(userService, connectionTicketStore),
+                UsernamePasswordAuthenticationFilter.class)
             // Disable CSRF for RESTful API
             .csrf().disable()
             // Use stateless session (no session cookies)
@@ -28,7 +35,9 @@ public class SecurityConfig {
             .and()
             .authorizeRequests()
                 // Public endpoints - no authentication needed
-                .antMatchers("/users/register", "/login", "/courses", "/chat/**", "/users/me", "/users/**").permitAll()
+                .antMatchers("/users/register", "/login", "/courses", "/chat/**", "/users/me", "/users/**", "/images/**").permitAll()
+                // WebSocket handshakes authenticate with a ticket query parameter (WebSocketAuthInterceptor)
+                .antMatchers("/ws/**").permitAll()
                 // Allow H2 console access
                 .antMatchers("/h2-console/**").permitAll()
                 // OPTIONS requests are always permitted for CORS preflight
@@ -60,7 +69,7 @@ public class SecurityConfig {
         configuration.setAllowedHeaders(Collections.singletonList("*"));
         
         // Expose Authorization header to frontend
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Next-Cursor", "X-Prev-Cursor", "X-Total-Count"));
         
         // Don't allow credentials (cookies) since we use token auth
         configuration.setAllowCredentials(false);
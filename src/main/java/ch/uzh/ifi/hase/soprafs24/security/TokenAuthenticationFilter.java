@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the "Authorization" header once per request.
+ *
+ * A browser EventSource cannot send that header, so a GET request without it may
+ * instead pass a single-use ticket from ConnectionTicketStore as "ticket" query
+ * parameter; the ticket is redeemed for the token it was issued for.
+ *
+ * If the token belongs to a user, the request is authenticated with a
+ * UserPrincipal so that controllers and services can read the caller from the
+ * SecurityContext instead of looking the token up again. Requests without a
+ * valid token simply continue unauthenticated; access rules stay in SecurityConfig.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final UserService userService;
+    private final ConnectionTicketStore connectionTicketStore;
+
+    public TokenAuthenticationFilter(UserService userService, ConnectionTicketStore connectionTicketStore) {
+        this.userService = userService;
+        this.connectionTicketStore = connectionTicketStore;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String token = resolveToken(request);
+
+        if (token != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserPrincipal principal = userService.resolvePrincipal(token);
+
+            if (principal != null) {
+                List<GrantedAuthority> authorities = new ArrayList<>();
+                authorities.add(new SimpleGrantedAuthority("ROLE_USER"));
+                if (principal.isAdmin()) {
+                    authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+                }
+                // the token is kept as credentials so services can check it belongs to this principal
+                UsernamePasswordAuthenticationToken authentication =
+                        new UsernamePasswordAuthenticationToken(principal, token, authorities);
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private String resolveToken(HttpServletRequest request) {
+        String header = request.getHeader(AUTHORIZATION_HEADER);
+        if (header != null && !header.isBlank()) {
+            return header.startsWith(BEARER_PREFIX) ? header.substring(BEARER_PREFIX.length()) : header;
+        }
+        if ("GET".equals(request.getMethod())) {
+            return connectionTicketStore.redeem(request.getParameter(ConnectionTicketStore.TICKET_PARAMETER));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory cache mapping an authentication token to its UserPrincipal.
+ *
+ * Entries expire after a fixed time-to-live and the least recently used entry is
+ * dropped once the cache is full. Anything that changes or revokes a token
+ * (login, logout, account deletion) must evict it here; RevocationListeners
+ * are told about every such eviction, e.g. to close WebSocket connections
+ * that were authenticated with the token.
+ */
+@Component
+public class TokenCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+    private final List<RevocationListener> listeners = new CopyOnWriteArrayList<>();
+
+    public TokenCache(@Value("${auth.token-cache.max-size:10000}") int maxSize,
+                      @Value("${auth.token-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        // access-order so that removeEldestEntry evicts the least recently used token
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > TokenCache.this.maxSize;
+            }
+        };
+    }
+
+    // called after evict and evictUser, outside the cache lock; not for expired or least recently used entries
+    public interface RevocationListener {
+        void tokenRevoked(String token);
+
+        void userRevoked(Long userId);
+    }
+
+    public void addRevocationListener(RevocationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the cached principal for this token, or null if absent or expired
+     */
+    public synchronized UserPrincipal get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.createdAt >= ttlNanos) {
+            entries.remove(token);
+            return null;
+        }
+        return entry.principal;
+    }
+
+    public synchronized void put(String token, UserPrincipal principal) {
+        if (token == null || principal == null || maxSize <= 0) {
+            return;
+        }
+        entries.put(token, new Entry(principal, System.nanoTime()));
+    }
+
+    public void evict(String token) {
+        if (token == null) {
+            return;
+        }
+        synchronized (this) {
+            entries.remove(token);
+        }
+        for (RevocationListener listener : listeners) {
+            listener.tokenRevoked(token);
+        }
+    }
+
+    // drops every token belonging to the given user, e.g. after the account was deleted
+    public void evictUser(Long userId) {
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (Objects.equals(it.next().principal.getId(), userId)) {
+                    it.remove();
+                }
+            }
+        }
+        for (RevocationListener listener : listeners) {
+            listener.userRevoked(userId);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final UserPrincipal principal;
+        private final long createdAt;
+
+        private Entry(UserPrincipal principal, long createdAt) {
+            this.principal = principal;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+
+import java.io.Serializable;
+
+/**
+ * Lightweight view of an authenticated user.
+ * Holds only what the authentication checks need, so a token lookup does not
+ * have to load the full User entity (courses, profile picture, ...).
+ */
+public final class UserPrincipal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+    private final String email;
+    private final boolean admin;
+    private final UserStatus status;
+
+    public UserPrincipal(Long id, String email, boolean admin, UserStatus status) {
+        this.id = id;
+        this.email = email;
+        this.admin = admin;
+        this.status = status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public UserStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Authenticates the WebSocket handshake.
+ *
+ * Browsers cannot set an Authorization header on a WebSocket, so the client
+ * first exchanges its token for a single-use ticket (POST /users/me/ticket) and
+ * passes it as "ticket" query parameter; the token itself never appears in the
+ * URL. The ticket is redeemed for the token, which is resolved as usual. The
+ * resolved UserPrincipal and the token are stored in the session attributes;
+ * handshakes without a valid ticket are rejected with 401.
+ */
+public class WebSocketAuthInterceptor implements HandshakeInterceptor {
+
+    public static final String PRINCIPAL_ATTRIBUTE = "principal";
+    public static final String TOKEN_ATTRIBUTE = "token";
+
+    private final UserService userService;
+    private final ConnectionTicketStore connectionTicketStore;
+
+    public WebSocketAuthInterceptor(UserService userService, ConnectionTicketStore connectionTicketStore) {
+        this.userService = userService;
+        this.connectionTicketStore = connectionTicketStore;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String ticket = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams().getFirst(ConnectionTicketStore.TICKET_PARAMETER);
+        String token = connectionTicketStore.redeem(ticket);
+        UserPrincipal principal = token == null || token.isBlank() ? null : userService.resolvePrincipal(token);
+
+        if (principal == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+        attributes.put(PRINCIPAL_ATTRIBUTE, principal);
+        attributes.put(TOKEN_ATTRIBUTE, token);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        // nothing to do
+    }
+}
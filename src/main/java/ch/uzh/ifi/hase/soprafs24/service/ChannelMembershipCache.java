@@ -0,0 +1,153 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the members of chat channels, so that sending a message
+ * does not have to load the channel, the sender and the participant list.
+ *
+ * A channel is loaded with one query on first use. The member ids are kept as
+ * a sorted long[] and looked up with a binary search; the avatar URL of every
+ * member is kept alongside, as it is part of every pushed message.
+ * ChatService invalidates a channel whenever it changes its members and all
+ * channels of a user whose profile changed. Invalidation inside a transaction
+ * is repeated after completion, and a load that overlaps an invalidation is
+ * not cached, so the state from before a change is never kept.
+ */
+@Component
+public class ChannelMembershipCache {
+
+    private final ChatParticipantRepository chatParticipantRepository;
+    private final int maxChannels;
+    private final Map<Long, Members> membersByChannel = new ConcurrentHashMap<>();
+    // bumped by every invalidation, a load that overlapped one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    public ChannelMembershipCache(ChatParticipantRepository chatParticipantRepository,
+                                  @Value("${chat.membership-cache.max-channels:10000}") int maxChannels) {
+        this.chatParticipantRepository = chatParticipantRepository;
+        this.maxChannels = maxChannels;
+    }
+
+    // members of one channel, userIds sorted ascending and avatarUrls in the same order
+    static final class Members {
+        private final long[] userIds;
+        private final String[] avatarUrls;
+
+        Members(long[] userIds, String[] avatarUrls) {
+            this.userIds = userIds;
+            this.avatarUrls = avatarUrls;
+        }
+
+        int indexOf(long userId) {
+            return Arrays.binarySearch(userIds, userId);
+        }
+    }
+
+    public boolean isMember(Long channelId, Long userId) {
+        if (channelId == null || userId == null) {
+            return false;
+        }
+        return members(channelId).indexOf(userId) >= 0;
+    }
+
+    /**
+     * @return the avatar URL of a member as shown next to their messages, or null
+     */
+    public String getAvatarUrl(Long channelId, Long userId) {
+        Members members = members(channelId);
+        int index = members.indexOf(userId);
+        return index < 0 ? null : members.avatarUrls[index];
+    }
+
+    public void invalidate(Long channelId) {
+        if (channelId == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        membersByChannel.remove(channelId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                    membersByChannel.remove(channelId);
+                }
+            });
+        }
+    }
+
+    // drops every cached channel the user is a member of; the whole scan runs again after
+    // the transaction, a channel loaded before the commit would otherwise keep the old data
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        removeChannelsOf(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    removeChannelsOf(userId);
+                }
+            });
+        }
+    }
+
+    private void removeChannelsOf(Long userId) {
+        generation.incrementAndGet();
+        membersByChannel.forEach((channelId, members) -> {
+            if (members.indexOf(userId) >= 0) {
+                membersByChannel.remove(channelId, members);
+            }
+        });
+    }
+
+    private Members members(Long channelId) {
+        Members members = membersByChannel.get(channelId);
+        if (members != null) {
+            return members;
+        }
+        long loadedAt = generation.get();
+        members = load(channelId);
+        // a channel without members is either unknown or about to be deleted, do not keep it
+        if (members.userIds.length > 0 && generation.get() == loadedAt) {
+            if (membersByChannel.size() >= maxChannels) {
+                membersByChannel.clear();
+            }
+            membersByChannel.put(channelId, members);
+            // re-checked after the put, an invalidation may have run in between
+            if (generation.get() != loadedAt) {
+                membersByChannel.remove(channelId, members);
+            }
+        }
+        return members;
+    }
+
+    private Members load(Long channelId) {
+        // rows of [channelId, userId, name, role, hash, hasPicture, version]
+        List<Object[]> rows = new ArrayList<>(chatParticipantRepository.findParticipantSummaries(List.of(channelId)));
+        rows.sort((a, b) -> Long.compare((Long) a[1], (Long) b[1]));
+        long[] userIds = new long[rows.size()];
+        String[] avatarUrls = new String[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            userIds[i] = (Long) row[1];
+            avatarUrls[i] = DTOMapper.INSTANCE.profileImageUrl(
+                (Long) row[1], (String) row[4], (Boolean) row[5], (Integer) row[6], 64);
+        }
+        return new Members(userIds, avatarUrls);
+    }
+}
@@ -0,0 +1,202 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process fan-out broker for real-time chat events.
+ *
+ * Connections register a Subscriber and subscribe it to chat channels. An event
+ * published to a channel is serialized once and put into the queue of every
+ * subscriber of that channel. Queues are bounded: a subscriber that does not
+ * keep up loses its oldest undelivered events instead of blocking the
+ * publisher or growing without limit. Each queue is drained by at most one
+ * delivery thread at a time, so a Sink is never called concurrently.
+ *
+ * Membership is only checked by the caller when subscribing, so publish checks
+ * it again against ChannelMembershipCache: a subscriber whose user has left
+ * the channel (or was removed by a block or an account deletion) is
+ * unsubscribed instead of receiving the event.
+ */
+@Component
+public class ChatBroker {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatBroker.class);
+
+    private final ObjectMapper objectMapper;
+    private final ChannelMembershipCache channelMembershipCache;
+    private final int queueCapacity;
+    private final ExecutorService deliveryExecutor;
+    private final Map<Long, Set<Subscriber>> subscribersByChannel = new ConcurrentHashMap<>();
+
+    public ChatBroker(ObjectMapper objectMapper,
+                      ChannelMembershipCache channelMembershipCache,
+                      @Value("${chat.broker.queue-capacity:256}") int queueCapacity,
+                      @Value("${chat.broker.delivery-threads:4}") int deliveryThreads) {
+        this.objectMapper = objectMapper;
+        this.channelMembershipCache = channelMembershipCache;
+        this.queueCapacity = queueCapacity;
+        this.deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "chat-broker-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // receives serialized events; called by one thread at a time per subscriber
+    public interface Sink {
+        void send(String payload) throws IOException;
+    }
+
+    public static final class Subscriber {
+        private final String id;
+        private final Long userId;
+        private final Sink sink;
+        private final BlockingQueue<String> queue;
+        private final Set<Long> channelIds = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicLong dropped = new AtomicLong();
+
+        private Subscriber(String id, Long userId, Sink sink, int capacity) {
+            this.id = id;
+            this.userId = userId;
+            this.sink = sink;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public Set<Long> getChannelIds() {
+            return Set.copyOf(channelIds);
+        }
+
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+    }
+
+    // the user the connection is authenticated as; their membership is checked on every publish
+    public Subscriber register(String id, Long userId, Sink sink) {
+        return new Subscriber(id, userId, sink, queueCapacity);
+    }
+
+    public void subscribe(Subscriber subscriber, Long channelId) {
+        subscribersByChannel.computeIfAbsent(channelId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriber.channelIds.add(channelId);
+    }
+
+    public void unsubscribe(Subscriber subscriber, Long channelId) {
+        subscriber.channelIds.remove(channelId);
+        subscribersByChannel.computeIfPresent(channelId, (id, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    // removes the subscriber from all its channels, e.g. when the connection closed
+    public void unregister(Subscriber subscriber) {
+        for (Long channelId : subscriber.getChannelIds()) {
+            unsubscribe(subscriber, channelId);
+        }
+        subscriber.queue.clear();
+    }
+
+    public int getSubscriberCount(Long channelId) {
+        Set<Subscriber> subscribers = subscribersByChannel.get(channelId);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    /**
+     * Publishes an event to every subscriber of the channel.
+     * The event is delivered as {"type": type, "channelId": channelId, "payload": payload}.
+     */
+    public void publish(Long channelId, String type, Object payload) {
+        Set<Subscriber> subscribers = subscribersByChannel.get(channelId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", type);
+        event.put("channelId", channelId);
+        event.put("payload", payload);
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize {} event for channel {}", type, channelId, e);
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (!channelMembershipCache.isMember(channelId, subscriber.userId)) {
+                log.debug("User {} is no longer a member of channel {}, unsubscribing {}",
+                        subscriber.userId, channelId, subscriber.id);
+                unsubscribe(subscriber, channelId);
+                continue;
+            }
+            enqueue(subscriber, json);
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, String json) {
+        while (!subscriber.queue.offer(json)) {
+            // full: drop the oldest event, the newest state matters most in a chat
+            if (subscriber.queue.poll() != null) {
+                subscriber.dropped.incrementAndGet();
+            }
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            deliveryExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            String json;
+            while ((json = subscriber.queue.poll()) != null) {
+                subscriber.sink.send(json);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Delivery to subscriber {} failed, unsubscribing it", subscriber.id, e);
+            unregister(subscriber);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // an event may have arrived after the last poll but before the flag was reset
+        if (!subscriber.queue.isEmpty()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdownNow();
+    }
+}
@@ -1,18 +1,23 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.ChatChannel;
 import ch.uzh.ifi.hase.soprafs24.entity.ChatParticipant;
 import ch.uzh.ifi.hase.soprafs24.entity.Message;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.entity.UserTypingStatus;
 // repository
 import ch.uzh.ifi.hase.soprafs24.repository.ChatChannelRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.MessageRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserTypingStatusRepository;
 // dto
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MessageGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MessagePostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatChannelPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatInboxEntryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatParticipantGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ReadReceiptPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusPushDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusGetDTO;
@@ -25,8 +30,12 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.transaction.annotation.Transactional;
 // utility
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.Set;
 import java.util.Iterator;
@@ -36,25 +45,49 @@ import java.util.Optional;
 public class ChatService {
 
     private final ChatChannelRepository chatChannelRepository;
+    private final ChatParticipantRepository chatParticipantRepository;
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final UserTypingStatusRepository userTypingStatusRepository;
+    private final ChatBroker chatBroker;
+    private final TypingIndicatorStore typingIndicatorStore;
+    private final UserPresenceCache userPresenceCache;
+    private final ReadReceiptBuffer readReceiptBuffer;
+    private final MessageWriter messageWriter;
+    private final ChannelMembershipCache channelMembershipCache;
     
     private static final String USER_NOT_FOUND_MSG = "User with id %d not found";
     private static final String CHANNEL_NOT_FOUND_MSG = "ChatChannel with id %d not found";
     private static final String ROLE_ADMIN  = "admin";
     private static final String ROLE_MEMBER = "member";
     private static final String TYPE_INDIVIDUAL = "individual";
+    private static final String EVENT_MESSAGE = "message";
+    private static final String EVENT_TYPING = "typing";
+    private static final int MAX_MESSAGE_LENGTH = 255; // length of messages.content
 
     @Autowired
     public ChatService(ChatChannelRepository chatChannelRepository,
+                       ChatParticipantRepository chatParticipantRepository,
                        MessageRepository messageRepository,
                        UserRepository userRepository,
-                       UserTypingStatusRepository userTypingStatusRepository) {
+                       UserTypingStatusRepository userTypingStatusRepository,
+                       ChatBroker chatBroker,
+                       TypingIndicatorStore typingIndicatorStore,
+                       UserPresenceCache userPresenceCache,
+                       ReadReceiptBuffer readReceiptBuffer,
+                       MessageWriter messageWriter,
+                       ChannelMembershipCache channelMembershipCache) {
         this.chatChannelRepository = chatChannelRepository;
+        this.chatParticipantRepository = chatParticipantRepository;
         this.messageRepository = messageRepository;
         this.userRepository = userRepository;
         this.userTypingStatusRepository = userTypingStatusRepository;
+        this.chatBroker = chatBroker;
+        this.typingIndicatorStore = typingIndicatorStore;
+        this.userPresenceCache = userPresenceCache;
+        this.readReceiptBuffer = readReceiptBuffer;
+        this.messageWriter = messageWriter;
+        this.channelMembershipCache = channelMembershipCache;
     }
 
     public ChatChannel createChatChannel(ChatChannelPostDTO chatChannelPostDTO) {
@@ -87,33 +120,26 @@ public class ChatService {
             User user2 = userRepository.findById(participantIds.get(1))
                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(USER_NOT_FOUND_MSG, participantIds.get(1))));
 
+            String pairKey = ChatChannel.pairKey(user1.getId(), user2.getId());
+            Optional<ChatChannel> existing = chatChannelRepository.findByPairKey(pairKey);
+            if (existing.isPresent()) {
+                return existing.get();
+            }
             chatChannel.setName(user1.getName() + "&" + user2.getName());
+            chatChannel.setPairKey(pairKey);
         }
 
         chatChannel = chatChannelRepository.save(chatChannel);
         chatChannelRepository.flush();
+        channelMembershipCache.invalidate(chatChannel.getId());
         return chatChannel;
     }
 
     public ChatChannel createIndividualChatChannelAfterMatch(User user1, User user2) {
-        
-        List<ChatChannel> user1Channels =
-            chatChannelRepository.findByParticipantsUserId(user1.getId());
-        
-        for (ChatChannel existing : user1Channels) {
-            if (TYPE_INDIVIDUAL.equalsIgnoreCase(existing.getType())) {
-                
-                Set<Long> ids = existing.getParticipants().stream()
-                    .map(cp -> cp.getUser().getId())
-                    .collect(Collectors.toSet());
-                
-                
-                if (ids.size() == 2 &&
-                    ids.contains(user1.getId()) &&
-                    ids.contains(user2.getId())) {
-                    return existing;
-                }
-            }
+        String pairKey = ChatChannel.pairKey(user1.getId(), user2.getId());
+        Optional<ChatChannel> existing = chatChannelRepository.findByPairKey(pairKey);
+        if (existing.isPresent()) {
+            return existing.get();
         }
 
         // if there is no channel between the two users, build a new channel for them
@@ -121,6 +147,7 @@ public class ChatService {
         channel.setType(TYPE_INDIVIDUAL);
         channel.setName(user1.getName() + "&" + user2.getName());
         channel.setChannelProfileImage(null);
+        channel.setPairKey(pairKey);
         channel.setCreatedAt(LocalDateTime.now());
         channel.setUpdatedAt(LocalDateTime.now());
 
@@ -129,6 +156,7 @@ public class ChatService {
 
         ChatChannel saved = chatChannelRepository.save(channel);
         chatChannelRepository.flush();
+        channelMembershipCache.invalidate(saved.getId());
         return saved;
     }
 
@@ -139,88 +167,229 @@ public class ChatService {
         return chatChannelRepository.findByParticipantsUserId(userId);
     }
 
-    // Send a message in a channel
-    public Message sendMessage(Long channelId, MessagePostDTO messagePostDTO) {
-        ChatChannel chatChannel = chatChannelRepository.findById(channelId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(CHANNEL_NOT_FOUND_MSG, channelId)));
-        User sender = userRepository.findById(messagePostDTO.getSenderId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(USER_NOT_FOUND_MSG, messagePostDTO.getSenderId())));
+    /**
+     * The inbox of a user: every channel with its latest message, the number of
+     * unread messages and the participants, most recently active channel first.
+     * Needs three queries regardless of the number of channels.
+     */
+    public List<ChatInboxEntryGetDTO> getInbox(Long userId) {
+        // unread counts are computed from the stored read pointers, so write the user's own receipts first
+        readReceiptBuffer.flushUser(userId);
+        List<Object[]> rows = chatParticipantRepository.findInboxRows(userId);
+        if (rows.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> channelIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            channelIds.add(((ChatChannel) row[0]).getId());
+        }
 
-        boolean isParticipant = chatChannel.getParticipants().stream()
-                .anyMatch(participant -> participant.getUser().getId().equals(sender.getId()));
-        if (!isParticipant) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User is not a participant of this chat channel");
+        Map<Long, Long> unreadByChannel = new HashMap<>();
+        for (Object[] row : messageRepository.countUnreadByChannel(userId)) {
+            unreadByChannel.put((Long) row[0], (Long) row[1]);
         }
-        Message message = DTOMapper.INSTANCE.convertMessagePostDTOtoEntity(messagePostDTO);
-        message.setChannel(chatChannel);
-        message.setSender(sender);
-        message.setTimestamp(LocalDateTime.now());
-        message = messageRepository.save(message);
-        messageRepository.flush();
 
+        Map<Long, List<ChatParticipantGetDTO>> participantsByChannel = new HashMap<>();
+        for (Object[] row : chatParticipantRepository.findParticipantSummaries(channelIds)) {
+            ChatParticipantGetDTO participant = new ChatParticipantGetDTO();
+            participant.setUserId((Long) row[1]);
+            participant.setUserName((String) row[2]);
+            participant.setRole((String) row[3]);
+            participant.setUserProfileImage(DTOMapper.INSTANCE.profileImageUrl(
+                (Long) row[1], (String) row[4], (Boolean) row[5], (Integer) row[6], 64));
+            participantsByChannel.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(participant);
+        }
+
+        List<ChatInboxEntryGetDTO> inbox = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ChatChannel channel = (ChatChannel) row[0];
+            inbox.add(DTOMapper.INSTANCE.convertChannelToInboxEntry(channel, (Long) row[1],
+                unreadByChannel.getOrDefault(channel.getId(), 0L),
+                participantsByChannel.getOrDefault(channel.getId(), new ArrayList<>())));
+        }
+        return inbox;
+    }
+
+    /**
+     * Accepts read receipts, e.g. everything a client displayed since its last call.
+     * They are buffered and written in batches, see ReadReceiptBuffer.
+     */
+    public void acknowledgeRead(ReadReceiptPostDTO receiptPostDTO) {
+        if (receiptPostDTO.getUserId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId is required");
+        }
+        if (receiptPostDTO.getReceipts() == null) {
+            return;
+        }
+        for (ReadReceiptPostDTO.Receipt receipt : receiptPostDTO.getReceipts()) {
+            if (receipt.getChannelId() == null || receipt.getMessageId() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every receipt needs a channelId and a messageId");
+            }
+        }
+        for (ReadReceiptPostDTO.Receipt receipt : receiptPostDTO.getReceipts()) {
+            readReceiptBuffer.acknowledge(receiptPostDTO.getUserId(), receipt.getChannelId(), receipt.getMessageId());
+        }
+    }
+
+    /**
+     * Send a message in a channel; MessageWriter stores it, possibly in one batch with other messages.
+     * Membership and the sender's avatar come from ChannelMembershipCache, so on the usual path
+     * nothing but the insert reaches the database.
+     */
+    public MessageGetDTO sendMessage(Long channelId, MessagePostDTO messagePostDTO) {
+        String content = messagePostDTO.getContext();
+        // checked up front, a message failing in the database would fail its whole batch
+        if (content == null || content.length() > MAX_MESSAGE_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "A message must have between 0 and " + MAX_MESSAGE_LENGTH + " characters");
+        }
+        Long senderId = messagePostDTO.getSenderId();
+        if (!channelMembershipCache.isMember(channelId, senderId)) {
+            // only a rejected message looks up what exactly is wrong
+            if (!chatChannelRepository.existsById(channelId)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(CHANNEL_NOT_FOUND_MSG, channelId));
+            }
+            if (senderId == null || !userRepository.existsById(senderId)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(USER_NOT_FOUND_MSG, senderId));
+            }
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User is not a participant of this chat channel");
+        }
+        LocalDateTime timestamp = LocalDateTime.now();
+        // returns once the message is committed; also updates the inbox preview and the sender's read pointer
+        Long messageId = messageWriter.write(channelId, senderId, content, timestamp);
+        MessageGetDTO message = DTOMapper.INSTANCE.convertToMessageGetDTO(messageId, channelId, senderId, content,
+            timestamp, channelMembershipCache.getAvatarUrl(channelId, senderId));
+
+        // push to connected members right away instead of waiting for their next poll
+        chatBroker.publish(channelId, EVENT_MESSAGE, message);
         return message;
     }
 
-    // Get chat history of a channel given the channel Id
-    public List<Message> getChatHistory(Long channelId) {
-        ChatChannel chatChannel = chatChannelRepository.findById(channelId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(CHANNEL_NOT_FOUND_MSG, channelId)));
-        
-        Pageable pageable = PageRequest.of(0, Integer.MAX_VALUE, Sort.by("id").ascending());
-        return messageRepository.findByChannelId(chatChannel.getId(), pageable).getContent();
+    public boolean isParticipant(Long channelId, Long userId) {
+        return channelMembershipCache.isMember(channelId, userId);
     }
 
-    // update typing indicator
-    @Transactional
-    public UserTypingStatusGetDTO updateTypingStatus(UserTypingStatusPushDTO pushDTO) {
-        
-        User user = userRepository.findById(pushDTO.getUserId())
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(USER_NOT_FOUND_MSG, pushDTO.getUserId())));
+    // the avatar shown in the user's channels is cached, see ChannelMembershipCache
+    public void onProfileUpdated(Long userId) {
+        channelMembershipCache.invalidateUser(userId);
+    }
 
-        
-        UserTypingStatus typingStatus = userTypingStatusRepository.findByUserId(pushDTO.getUserId())
-            .orElse(new UserTypingStatus(user, pushDTO.isTyping()));
-        
-        typingStatus.setTyping(pushDTO.isTyping());
-        userTypingStatusRepository.save(typingStatus);
-        userTypingStatusRepository.flush();
+    /**
+     * One page of the chat history, oldest message first.
+     * prevCursor is the beforeId of the next older page (null if there is none),
+     * nextCursor the afterId to ask for newer messages with.
+     */
+    public static final class HistoryPage {
+        private final List<Message> messages;
+        private final Long prevCursor;
+        private final Long nextCursor;
+
+        public HistoryPage(List<Message> messages, Long prevCursor, Long nextCursor) {
+            this.messages = messages;
+            this.prevCursor = prevCursor;
+            this.nextCursor = nextCursor;
+        }
 
-        
-        return new UserTypingStatusGetDTO(user.getId(), typingStatus.isTyping(), user.getStatus());
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        public Long getPrevCursor() {
+            return prevCursor;
+        }
+
+        public Long getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Get one page of the chat history of a channel, using the message id as keyset.
+     * Without cursors the latest messages are returned.
+     *
+     * @param beforeId only messages older than this id, or null
+     * @param afterId only messages newer than this id, or null
+     * @param limit maximum number of messages
+     */
+    public HistoryPage getChatHistory(Long channelId, Long beforeId, Long afterId, int limit) {
+        if (beforeId != null && afterId != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either beforeId or afterId, not both");
+        }
+        if (!chatChannelRepository.existsById(channelId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(CHANNEL_NOT_FOUND_MSG, channelId));
+        }
+        Pageable pageable = PageRequest.of(0, limit);
+
+        if (afterId != null) {
+            Slice<Message> slice = messageRepository.findHistoryAfter(channelId, afterId, pageable);
+            List<Message> messages = slice.getContent();
+            if (messages.isEmpty()) {
+                return new HistoryPage(messages, null, afterId);
+            }
+            return new HistoryPage(messages, messages.get(0).getId(), messages.get(messages.size() - 1).getId());
+        }
+
+        Slice<Message> slice = messageRepository.findHistoryBefore(channelId,
+                beforeId == null ? Long.MAX_VALUE : beforeId, pageable);
+        List<Message> messages = new ArrayList<>(slice.getContent());
+        Collections.reverse(messages);
+        if (messages.isEmpty()) {
+            return new HistoryPage(messages, null, null);
+        }
+        Long prevCursor = slice.hasNext() ? messages.get(0).getId() : null;
+        return new HistoryPage(messages, prevCursor, messages.get(messages.size() - 1).getId());
+    }
+
+    // update typing indicator; kept in memory only, see TypingIndicatorStore.
+    // Updates for a channel are pushed to its members, so only a member may send them.
+    public UserTypingStatusGetDTO updateTypingStatus(UserTypingStatusPushDTO pushDTO) {
+        if (pushDTO.getChannelId() != null
+                && !channelMembershipCache.isMember(pushDTO.getChannelId(), pushDTO.getUserId())) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User is not a participant of this chat channel");
+        }
+        UserStatus status = getUserStatus(pushDTO.getUserId());
+
+        boolean changed = typingIndicatorStore.update(pushDTO.getChannelId(), pushDTO.getUserId(), pushDTO.isTyping());
+        UserTypingStatusGetDTO result = new UserTypingStatusGetDTO(pushDTO.getUserId(), pushDTO.isTyping(), status);
+        // refreshes of an ongoing typing burst are not pushed again
+        if (changed && pushDTO.getChannelId() != null) {
+            chatBroker.publish(pushDTO.getChannelId(), EVENT_TYPING, result);
+        }
+        return result;
     }
 
     // get the typing status & online status of a user
     public UserTypingStatusGetDTO getTypingStatus(Long userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new ResponseStatusException(
-                HttpStatus.NOT_FOUND, String.format(USER_NOT_FOUND_MSG, userId)));
-    
-        boolean typing = userTypingStatusRepository.findByUserId(userId)
-                           .map(UserTypingStatus::isTyping)
-                           .orElse(false);        // default
-    
-        return new UserTypingStatusGetDTO(user.getId(), typing, user.getStatus());
+        UserStatus status = getUserStatus(userId);
+        return new UserTypingStatusGetDTO(userId, typingIndicatorStore.isTyping(userId), status);
+    }
+
+    // users whose typing indicator in the channel has not expired yet
+    public List<Long> getTypingUserIds(Long channelId) {
+        return typingIndicatorStore.getTypingUserIds(channelId);
+    }
+
+    // online status from the presence cache; only a user not seen yet is loaded from the database
+    private UserStatus getUserStatus(Long userId) {
+        UserStatus status = userPresenceCache.get(userId);
+        if (status == null) {
+            User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(USER_NOT_FOUND_MSG, userId)));
+            status = user.getStatus();
+            userPresenceCache.put(userId, status);
+        }
+        return status;
     }
 
 
     // delete individual channel after block
     public void deleteIndividualChannelBetweenUsers(Long blockerId, Long blockedUserId) {
-        
-        List<ChatChannel> channels = chatChannelRepository.findByParticipantsUserId(blockerId);
-        
-        
-        for (ChatChannel channel : channels) {
-            if (TYPE_INDIVIDUAL.equalsIgnoreCase(channel.getType())) {
-                boolean containsBlockedUser = channel.getParticipants().stream()
-                    .anyMatch(participant -> participant.getUser().getId().equals(blockedUserId));
-                
-                    if (containsBlockedUser) {
-                        messageRepository.deleteByChannelId(channel.getId());
-                        
-                        chatChannelRepository.delete(channel);
-                    }
-            }
-        }
+        chatChannelRepository.findByPairKey(ChatChannel.pairKey(blockerId, blockedUserId))
+            .ifPresent(channel -> {
+                messageRepository.deleteByChannelId(channel.getId());
+                chatChannelRepository.delete(channel);
+                channelMembershipCache.invalidate(channel.getId());
+            });
         chatChannelRepository.flush();
     }
 
@@ -284,18 +453,23 @@ public class ChatService {
         
         ChatChannel saved = chatChannelRepository.save(channel);
         chatChannelRepository.flush();
+        channelMembershipCache.invalidate(channelId);
         return saved;
     }
 
     // used after deletion of an account
     @Transactional
     public void removeAllUserChats(Long userId) {
+        // typing state is no longer persisted, but rows written by older versions may still exist
         userTypingStatusRepository.deleteByUserId(userId);
+        typingIndicatorStore.removeUser(userId);
+        userPresenceCache.evict(userId);
         messageRepository.deleteAllBySenderId(userId);
         List<ChatChannel> channels =
             chatChannelRepository.findByParticipantsUserId(userId);  
 
         for (ChatChannel channel : channels) {
+            channelMembershipCache.invalidate(channel.getId());
             if (TYPE_INDIVIDUAL.equalsIgnoreCase(channel.getType())) {
                 messageRepository.deleteByChannelId(channel.getId());
                 chatChannelRepository.delete(channel);
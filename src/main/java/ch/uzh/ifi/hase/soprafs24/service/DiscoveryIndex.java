@@ -0,0 +1,475 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.ProfileKnowledgeLevel;
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
+import ch.uzh.ifi.hase.soprafs24.entity.Block;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.entity.UserCourse;
+import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserCourseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory candidate index and ranking for the discovery (swipe) deck.
+ *
+ * Every user gets a dense slot number. Active users are kept in one BitSet and
+ * each user has a BitSet of slots excluded from their deck (blocks in either
+ * direction, accepted and rejected matches). The profile data used for ranking
+ * (courses with knowledge level, availability, study level) is stored per slot
+ * in primitive arrays, so a deck is scored without touching the database.
+ *
+ * Candidates are ranked by score (descending) and slot (ascending). Both are
+ * packed into one long key, which is also the keyset cursor of the next page.
+ *
+ * The index is built once at startup and afterwards kept up to date by the
+ * write paths (registration, profile update, deletion, block/report, like/dislike).
+ * Their changes are applied once the surrounding transaction has committed.
+ */
+@Component
+public class DiscoveryIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(DiscoveryIndex.class);
+
+    // score weights
+    static final int SHARED_COURSE_SCORE = 10;
+    static final int KNOWLEDGE_GAP_SCORE = 4;
+    static final int SAME_AVAILABILITY_SCORE = 6;
+    static final int SAME_STUDY_LEVEL_SCORE = 3;
+
+    // below this many slots the deck is scored on the calling thread
+    private static final int PARALLEL_THRESHOLD = 8192;
+    private static final int CHUNK_SIZE = 4096;
+    private static final int[] NO_COURSES = new int[0];
+    private static final byte[] NO_LEVELS = new byte[0];
+
+    private final UserRepository userRepository;
+    private final UserCourseRepository userCourseRepository;
+    private final BlockRepository blockRepository;
+    private final MatchRepository matchRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> slotByUserId = new HashMap<>();
+    private final Map<Long, Integer> courseKeyById = new HashMap<>();
+    private final Map<String, Integer> studyLevelKeys = new HashMap<>();
+    private final BitSet active = new BitSet();
+    private long[] userIdBySlot = new long[1024];
+    private BitSet[] exclusionsBySlot = new BitSet[1024];
+    // per slot: sorted course keys and the knowledge level (ordinal) for each of them
+    private int[][] coursesBySlot = new int[1024][];
+    private byte[][] levelsBySlot = new byte[1024][];
+    // per slot: availability ordinal and study level key, -1 when unknown
+    private byte[] availabilityBySlot = new byte[1024];
+    private int[] studyLevelBySlot = new int[1024];
+    private int slotCount = 0;
+    private volatile boolean loaded = false;
+
+    public DiscoveryIndex(UserRepository userRepository,
+                          UserCourseRepository userCourseRepository,
+                          BlockRepository blockRepository,
+                          MatchRepository matchRepository) {
+        this.userRepository = userRepository;
+        this.userCourseRepository = userCourseRepository;
+        this.blockRepository = blockRepository;
+        this.matchRepository = matchRepository;
+    }
+
+    /**
+     * One page of candidate user ids, best match first.
+     * nextCursor is null once the deck is exhausted.
+     */
+    public static final class CandidatePage {
+        private final List<Long> userIds;
+        private final Long nextCursor;
+
+        public CandidatePage(List<Long> userIds, Long nextCursor) {
+            this.userIds = userIds;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Long> getUserIds() {
+            return userIds;
+        }
+
+        public Long getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Returns the {@code limit} best ranked candidates for the given user that
+     * come after the cursor.
+     *
+     * @param userId the user the deck is built for
+     * @param cursor opaque position returned by a previous page, or null for the first page
+     * @param limit  maximum number of candidates to return
+     */
+    public CandidatePage getCandidates(Long userId, Long cursor, int limit) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Integer ownSlot = slotByUserId.get(userId);
+            int self = ownSlot == null ? -1 : ownSlot;
+            long upperBound = cursor == null ? Long.MAX_VALUE : cursor;
+            // one extra candidate tells whether there is a next page
+            int k = limit + 1;
+
+            TopKHeap top;
+            if (slotCount < PARALLEL_THRESHOLD) {
+                top = scoreRange(self, upperBound, k, 0, slotCount);
+            } else {
+                int chunks = (slotCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                top = IntStream.range(0, chunks).parallel()
+                        .mapToObj(chunk -> scoreRange(self, upperBound, k,
+                                chunk * CHUNK_SIZE, Math.min(slotCount, (chunk + 1) * CHUNK_SIZE)))
+                        .reduce(new TopKHeap(k), (a, b) -> {
+                            TopKHeap merged = new TopKHeap(k);
+                            merged.addAll(a);
+                            merged.addAll(b);
+                            return merged;
+                        });
+            }
+
+            long[] keys = top.toSortedDescending();
+            int pageSize = Math.min(limit, keys.length);
+            List<Long> result = new ArrayList<>(pageSize);
+            for (int i = 0; i < pageSize; i++) {
+                result.add(userIdBySlot[slotOf(keys[i])]);
+            }
+            Long nextCursor = keys.length > limit ? keys[pageSize - 1] : null;
+            return new CandidatePage(result, nextCursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // called after a user was registered (including the selected courses)
+    public void addUser(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        long userId = user.getId();
+        ProfileSnapshot profile = new ProfileSnapshot(user);
+        afterCommit(() -> {
+            int slot = slotFor(userId);
+            active.set(slot);
+            applyProfile(slot, profile);
+        });
+    }
+
+    // called after the availability, study level or courses of a user changed
+    public void updateProfile(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        long userId = user.getId();
+        ProfileSnapshot profile = new ProfileSnapshot(user);
+        afterCommit(() -> {
+            Integer slot = slotByUserId.get(userId);
+            if (slot != null) {
+                applyProfile(slot, profile);
+            }
+        });
+    }
+
+    // called after a user was deleted; the slot stays reserved but is never returned again
+    public void removeUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            Integer slot = slotByUserId.get(userId);
+            if (slot != null) {
+                active.clear(slot);
+                exclusionsBySlot[slot] = null;
+                coursesBySlot[slot] = null;
+                levelsBySlot[slot] = null;
+            }
+        });
+    }
+
+    /**
+     * Hides two users from each other's deck, e.g. after a block, a rejection
+     * or an accepted match.
+     */
+    public void excludePair(Long userId1, Long userId2) {
+        if (userId1 == null || userId2 == null) {
+            return;
+        }
+        afterCommit(() -> applyExclusion(slotFor(userId1), slotFor(userId2)));
+    }
+
+    // build the index at startup so that no write happening before the first read is missed
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            for (Object[] row : userRepository.findDiscoveryProfiles()) {
+                int slot = slotFor((Long) row[0]);
+                active.set(slot);
+                availabilityBySlot[slot] = availabilityKey((UserAvailability) row[1]);
+                studyLevelBySlot[slot] = studyLevelKey((String) row[2]);
+            }
+            loadCourses();
+            for (Block block : blockRepository.findAll()) {
+                applyExclusion(slotFor(block.getBlockerId()), slotFor(block.getBlockedUserId()));
+            }
+            for (Match match : matchRepository.findAllByStatusIn(List.of(MatchStatus.ACCEPTED, MatchStatus.REJECTED))) {
+                applyExclusion(slotFor(match.getUserId1()), slotFor(match.getUserId2()));
+            }
+            loaded = true;
+            log.info("Discovery index built with {} users", active.cardinality());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // must be called while holding the write lock
+    private void loadCourses() {
+        Map<Integer, List<Object[]>> rowsBySlot = new HashMap<>();
+        for (Object[] row : userCourseRepository.findAllCourseLevels()) {
+            Integer slot = slotByUserId.get((Long) row[0]);
+            if (slot != null) {
+                rowsBySlot.computeIfAbsent(slot, s -> new ArrayList<>()).add(row);
+            }
+        }
+        rowsBySlot.forEach((slot, rows) -> {
+            long[] packed = new long[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                packed[i] = pack(courseKey((Long) row[1]), (ProfileKnowledgeLevel) row[2]);
+            }
+            storeCourses(slot, packed);
+        });
+    }
+
+    // scores the active slots in [from, to) and keeps the k best keys below upperBound
+    private TopKHeap scoreRange(int self, long upperBound, int k, int from, int to) {
+        TopKHeap top = new TopKHeap(k);
+        BitSet excluded = self >= 0 ? exclusionsBySlot[self] : null;
+        int[] ownCourses = self >= 0 ? coursesBySlot[self] : NO_COURSES;
+        byte[] ownLevels = self >= 0 ? levelsBySlot[self] : NO_LEVELS;
+        int ownAvailability = self >= 0 ? availabilityBySlot[self] : -1;
+        int ownStudyLevel = self >= 0 ? studyLevelBySlot[self] : -1;
+
+        for (int slot = active.nextSetBit(from); slot >= 0 && slot < to; slot = active.nextSetBit(slot + 1)) {
+            if (slot == self || (excluded != null && excluded.get(slot))) {
+                continue;
+            }
+            int score = courseScore(ownCourses, ownLevels, coursesBySlot[slot], levelsBySlot[slot]);
+            if (ownAvailability >= 0 && ownAvailability == availabilityBySlot[slot]) {
+                score += SAME_AVAILABILITY_SCORE;
+            }
+            if (ownStudyLevel >= 0 && ownStudyLevel == studyLevelBySlot[slot]) {
+                score += SAME_STUDY_LEVEL_SCORE;
+            }
+            long key = key(score, slot);
+            if (key < upperBound) {
+                top.offer(key);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Every shared course counts, and more so when the knowledge levels differ,
+     * since a stronger student can help a weaker one. Both arrays are sorted,
+     * so the overlap is a single merge walk.
+     */
+    static int courseScore(int[] courses1, byte[] levels1, int[] courses2, byte[] levels2) {
+        if (courses1 == null || courses2 == null) {
+            return 0;
+        }
+        int score = 0;
+        int i = 0;
+        int j = 0;
+        while (i < courses1.length && j < courses2.length) {
+            if (courses1[i] < courses2[j]) {
+                i++;
+            } else if (courses1[i] > courses2[j]) {
+                j++;
+            } else {
+                score += SHARED_COURSE_SCORE + KNOWLEDGE_GAP_SCORE * Math.abs(levels1[i] - levels2[j]);
+                i++;
+                j++;
+            }
+        }
+        return score;
+    }
+
+    // higher score first, lower slot first on ties
+    static long key(int score, int slot) {
+        return ((long) score << 32) | (Integer.MAX_VALUE - slot);
+    }
+
+    private static int slotOf(long key) {
+        return Integer.MAX_VALUE - (int) key;
+    }
+
+    // must be called while holding the write lock
+    private void applyProfile(int slot, ProfileSnapshot profile) {
+        availabilityBySlot[slot] = availabilityKey(profile.availability);
+        studyLevelBySlot[slot] = studyLevelKey(profile.studyLevel);
+
+        if (profile.courseIds.length == 0) {
+            coursesBySlot[slot] = null;
+            levelsBySlot[slot] = null;
+            return;
+        }
+        long[] packed = new long[profile.courseIds.length];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = pack(courseKey(profile.courseIds[i]), profile.levels[i]);
+        }
+        storeCourses(slot, packed);
+    }
+
+    // course key in the upper half, knowledge level in the lower half, so sorting orders by course
+    private static long pack(int courseKey, ProfileKnowledgeLevel level) {
+        return ((long) courseKey << 32) | (level == null ? 0 : level.ordinal());
+    }
+
+    private void storeCourses(int slot, long[] packed) {
+        Arrays.sort(packed);
+        int[] courses = new int[packed.length];
+        byte[] levels = new byte[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            courses[i] = (int) (packed[i] >>> 32);
+            levels[i] = (byte) packed[i];
+        }
+        coursesBySlot[slot] = courses;
+        levelsBySlot[slot] = levels;
+    }
+
+    private int courseKey(Long courseId) {
+        return courseKeyById.computeIfAbsent(courseId, id -> courseKeyById.size());
+    }
+
+    private int studyLevelKey(String studyLevel) {
+        if (studyLevel == null) {
+            return -1;
+        }
+        return studyLevelKeys.computeIfAbsent(studyLevel.trim().toLowerCase(), level -> studyLevelKeys.size());
+    }
+
+    private static byte availabilityKey(UserAvailability availability) {
+        return availability == null ? -1 : (byte) availability.ordinal();
+    }
+
+    // applied once the surrounding transaction committed, so a rollback never reaches the index;
+    // writes that happen before the index is loaded are part of what it loads
+    private void afterCommit(Runnable change) {
+        Runnable locked = () -> {
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    change.run();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            locked.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                locked.run();
+            }
+        });
+    }
+
+    // the profile fields used for ranking, copied while the entity is still attached
+    private static final class ProfileSnapshot {
+        private final UserAvailability availability;
+        private final String studyLevel;
+        private final long[] courseIds;
+        private final ProfileKnowledgeLevel[] levels;
+
+        private ProfileSnapshot(User user) {
+            this.availability = user.getAvailability();
+            this.studyLevel = user.getStudyLevel();
+            List<UserCourse> userCourses = user.getUserCourses() == null ? List.of() : user.getUserCourses();
+            long[] ids = new long[userCourses.size()];
+            ProfileKnowledgeLevel[] knowledgeLevels = new ProfileKnowledgeLevel[userCourses.size()];
+            int count = 0;
+            for (UserCourse userCourse : userCourses) {
+                if (userCourse.getCourse() != null && userCourse.getCourse().getId() != null) {
+                    ids[count] = userCourse.getCourse().getId();
+                    knowledgeLevels[count++] = userCourse.getKnowledgeLevel();
+                }
+            }
+            this.courseIds = Arrays.copyOf(ids, count);
+            this.levels = Arrays.copyOf(knowledgeLevels, count);
+        }
+    }
+
+    // must be called while holding the write lock
+    private int slotFor(Long userId) {
+        Integer slot = slotByUserId.get(userId);
+        if (slot != null) {
+            return slot;
+        }
+        if (slotCount == userIdBySlot.length) {
+            int newLength = userIdBySlot.length * 2;
+            userIdBySlot = Arrays.copyOf(userIdBySlot, newLength);
+            exclusionsBySlot = Arrays.copyOf(exclusionsBySlot, newLength);
+            coursesBySlot = Arrays.copyOf(coursesBySlot, newLength);
+            levelsBySlot = Arrays.copyOf(levelsBySlot, newLength);
+            availabilityBySlot = Arrays.copyOf(availabilityBySlot, newLength);
+            studyLevelBySlot = Arrays.copyOf(studyLevelBySlot, newLength);
+        }
+        int newSlot = slotCount++;
+        userIdBySlot[newSlot] = userId;
+        availabilityBySlot[newSlot] = -1;
+        studyLevelBySlot[newSlot] = -1;
+        slotByUserId.put(userId, newSlot);
+        return newSlot;
+    }
+
+    // must be called while holding the write lock
+    private void applyExclusion(int slot1, int slot2) {
+        exclusionsFor(slot1).set(slot2);
+        exclusionsFor(slot2).set(slot1);
+    }
+
+    private BitSet exclusionsFor(int slot) {
+        BitSet excluded = exclusionsBySlot[slot];
+        if (excluded == null) {
+            excluded = new BitSet();
+            exclusionsBySlot[slot] = excluded;
+        }
+        return excluded;
+    }
+}
@@ -0,0 +1,268 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for uploaded images (profile pictures).
+ *
+ * Every image is saved once on local disk under the SHA-256 of its bytes, so
+ * identical uploads share one file and a stored file never changes. Next to the
+ * original, square-bounded thumbnails are generated for the sizes in THUMBNAIL_SIZES.
+ * Entities only keep the hash; the files are served by ImageController.
+ *
+ * Uploads come from unauthenticated registrations, so only images that decode are
+ * stored, and both the encoded size (MAX_IMAGE_BYTES) and the declared dimensions
+ * (MAX_IMAGE_SIDE) are checked before any pixels are decoded.
+ */
+@Service
+public class ImageStore {
+
+    public static final List<Integer> THUMBNAIL_SIZES = List.of(64, 256);
+    static final int MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+    static final int MAX_IMAGE_SIDE = 4096;
+
+    private static final Logger log = LoggerFactory.getLogger(ImageStore.class);
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+
+    // no default on purpose: the files outlive the process, so they must not end up in a temp directory
+    public ImageStore(@Value("${images.storage-dir}") String storageDir) {
+        if (storageDir == null || storageDir.isBlank()) {
+            throw new IllegalStateException("images.storage-dir must be set");
+        }
+        this.root = Paths.get(storageDir).toAbsolutePath();
+    }
+
+    /**
+     * Stores an image given as base64, optionally wrapped in a data URL
+     * ("data:image/png;base64,....").
+     *
+     * @return the hash the image is stored under
+     * @throws ResponseStatusException if the data is not valid base64 or not an accepted image
+     */
+    public String storeBase64(String encoded) {
+        String base64 = encoded;
+        if (encoded.startsWith("data:") && encoded.contains(",")) {
+            base64 = encoded.substring(encoded.indexOf(',') + 1);
+        }
+        // checked before decoding, 4 base64 characters carry 3 bytes
+        if (base64.length() / 4L * 3 > MAX_IMAGE_BYTES) {
+            throw tooLarge();
+        }
+        try {
+            return store(Base64.getMimeDecoder().decode(base64));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image is not valid base64");
+        }
+    }
+
+    /**
+     * Stores the image bytes and their thumbnails, unless an image with the same
+     * content already exists.
+     *
+     * @return the hash the image is stored under
+     * @throws ResponseStatusException 400 if the data is too large or not a decodable image
+     */
+    public String store(byte[] data) {
+        if (data.length > MAX_IMAGE_BYTES) {
+            throw tooLarge();
+        }
+        String hash = sha256(data);
+        Path original = pathFor(hash, null);
+        if (Files.exists(original)) {
+            return hash;
+        }
+        BufferedImage image = decode(data);
+        try {
+            Files.createDirectories(original.getParent());
+            writeAtomically(original, data);
+            writeThumbnails(hash, image);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store image " + hash, e);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the file of an image or one of its thumbnails. A missing thumbnail
+     * (e.g. an image stored before thumbnails existed) falls back to the original.
+     *
+     * @param size thumbnail size, or null for the original
+     * @throws ResponseStatusException 400 for a malformed hash or unsupported size, 404 if unknown
+     */
+    public Path resolve(String hash, Integer size) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid image id");
+        }
+        if (size != null && !THUMBNAIL_SIZES.contains(size)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Supported sizes are " + THUMBNAIL_SIZES);
+        }
+        Path path = pathFor(hash, size);
+        if (size != null && !Files.exists(path)) {
+            path = pathFor(hash, null);
+        }
+        if (!Files.exists(path)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found");
+        }
+        return path;
+    }
+
+    /**
+     * Detects the content type from the first bytes of the file.
+     * The file is memory-mapped, so only the header pages are actually read.
+     */
+    public String contentType(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = Math.min(channel.size(), 12);
+            byte[] header = new byte[(int) length];
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, length).get(header);
+            return sniffContentType(header);
+        }
+    }
+
+    static String sniffContentType(byte[] header) {
+        if (startsWith(header, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        }
+        if (startsWith(header, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (header.length >= 12 && startsWith(header, 'R', 'I', 'F', 'F')
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean startsWith(byte[] data, int... prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((data[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // files are spread over 256 directories by the first two hex digits
+    private Path pathFor(String hash, Integer size) {
+        String name = size == null ? hash : hash + "_" + size;
+        return root.resolve(hash.substring(0, 2)).resolve(name);
+    }
+
+    // reads the declared dimensions from the header and only decodes the pixels if they are within bounds
+    static BufferedImage decode(byte[] data) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width <= 0 || height <= 0 || width > MAX_IMAGE_SIDE || height > MAX_IMAGE_SIDE) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Images may be at most " + MAX_IMAGE_SIDE + "x" + MAX_IMAGE_SIDE + " pixels");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (ResponseStatusException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Rejected an image that could not be decoded", e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image could not be decoded");
+        }
+    }
+
+    private static ResponseStatusException tooLarge() {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST,
+            "Images may be at most " + MAX_IMAGE_BYTES / (1024 * 1024) + " MB");
+    }
+
+    private void writeThumbnails(String hash, BufferedImage image) throws IOException {
+        for (int size : THUMBNAIL_SIZES) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(scaleToFit(image, size), "png", out);
+            writeAtomically(pathFor(hash, size), out.toByteArray());
+        }
+    }
+
+    private static BufferedImage scaleToFit(BufferedImage image, int size) {
+        double scale = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    // write to a temporary file first so a reader never sees a half written image;
+    // the data is forced to disk before the rename, the callers drop their own copy afterwards
+    private static void writeAtomically(Path target, byte[] data) throws IOException {
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
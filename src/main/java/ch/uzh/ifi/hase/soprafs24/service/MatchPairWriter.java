@@ -0,0 +1,66 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts the initial Match row of a user pair in its own transaction.
+ *
+ * Kept separate from MatchService so the insert runs through the transactional
+ * proxy: if two requests for the same pair race, the loser fails on the unique
+ * pair index without rolling back the caller's transaction, and the caller then
+ * simply locks the row the winner inserted.
+ */
+@Component
+public class MatchPairWriter {
+
+    private final MatchRepository matchRepository;
+
+    public MatchPairWriter(MatchRepository matchRepository) {
+        this.matchRepository = matchRepository;
+    }
+
+    /**
+     * Inserts a PENDING match without any likes, with the acting user as user1.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException if the pair already exists
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void insertPair(Long actingUserId, Long targetUserId) {
+        matchRepository.saveAndFlush(newPair(actingUserId, targetUserId));
+    }
+
+    /**
+     * Inserts PENDING matches between the acting user and all target users,
+     * flushed as JDBC batches. If any of the pairs already exists nothing is
+     * inserted, and the caller falls back to insertPair for each of them.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException if one of the pairs already exists
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void insertPairs(Long actingUserId, List<Long> targetUserIds) {
+        List<Match> matches = new ArrayList<>(targetUserIds.size());
+        for (Long targetUserId : targetUserIds) {
+            matches.add(newPair(actingUserId, targetUserId));
+        }
+        matchRepository.saveAll(matches);
+        matchRepository.flush();
+    }
+
+    private static Match newPair(Long actingUserId, Long targetUserId) {
+        Match match = new Match();
+        match.setUserId1(actingUserId);
+        match.setUserId2(targetUserId);
+        match.setStatus(MatchStatus.PENDING);
+        match.setLikedByUser1(false);
+        match.setLikedByUser2(false);
+        return match;
+    }
+}
@@ -2,47 +2,58 @@ package ch.uzh.ifi.hase.soprafs24.service;
 
 
 import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
-import ch.uzh.ifi.hase.soprafs24.entity.Block;
 import ch.uzh.ifi.hase.soprafs24.entity.Match;
-import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
+import ch.uzh.ifi.hase.soprafs24.event.LikeEvent;
+import ch.uzh.ifi.hase.soprafs24.event.MatchAcceptedEvent;
 import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
-import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchBatchPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchBatchResultGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
 public class MatchService {
 
+    private static final String REJECTED_MESSAGE = "This match has been rejected due to a block.";
+
     private final MatchRepository matchRepository;
-    private final UserRepository userRepository;
-    private final BlockRepository blockRepository;
-    private final ChatService chatService;
-    private final NotificationService notificationService;
+    private final DiscoveryIndex discoveryIndex;
+    private final MatchPairWriter matchPairWriter;
+    private final DomainEventBus eventBus;
+    private final SocialGraph socialGraph;
     private final DTOMapper dtoMapper = DTOMapper.INSTANCE;
 
     @Autowired
     public MatchService(MatchRepository matchRepository,
-                        UserRepository userRepository,
-                        BlockRepository blockRepository,
-                        ChatService chatService,
-                        NotificationService notificationService) {
+                        DiscoveryIndex discoveryIndex,
+                        MatchPairWriter matchPairWriter,
+                        DomainEventBus eventBus,
+                        SocialGraph socialGraph) {
         this.matchRepository = matchRepository;
-        this.userRepository = userRepository;
-        this.blockRepository = blockRepository;
-        this.chatService = chatService;
-        this.notificationService = notificationService;
+        this.discoveryIndex = discoveryIndex;
+        this.matchPairWriter = matchPairWriter;
+        this.eventBus = eventBus;
+        this.socialGraph = socialGraph;
     }
     /**
      * Processes a "like" action.
@@ -56,140 +67,224 @@ public class MatchService {
     
 
     public MatchGetDTO processLike(MatchPostDTO matchPostDTO) {
-        // Try to find an existing match record regardless of order.
-        //optional to handle no result from query  
-        Optional<Match> existingMatch = findMatchByUsers(
-                matchPostDTO.getUserId(), matchPostDTO.getTargetUserId());
-
-        Match match;
-        boolean wasAlreadyLikedByTargetUser = false;
-        
-        if (existingMatch.isPresent()) {
-            match = existingMatch.get();
-             // Check if the match has been rejected. This is used for blocking.
-            if (match.getStatus() == MatchStatus.REJECTED) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "This match has been rejected due to a block.");
+        // Locks the pair's row, creating it first if the two users never interacted.
+        // For a new row the acting user becomes user1, i.e. user1 is the person that liked first.
+        Match match = lockOrCreatePair(matchPostDTO.getUserId(), matchPostDTO.getTargetUserId());
+
+        // Check if the match has been rejected. This is used for blocking.
+        if (match.getStatus() == MatchStatus.REJECTED) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, REJECTED_MESSAGE);
+        }
+        applyLike(match, matchPostDTO.getUserId(), matchPostDTO.getTargetUserId());
+
+        Match savedMatch = matchRepository.save(match);
+        return dtoMapper.convertEntityToMatchGetDTO(savedMatch);
+    }
+
+    //process dislike action 
+    public void processDislike(MatchPostDTO matchPostDTO) {
+        Match match = lockOrCreatePair(matchPostDTO.getUserId(), matchPostDTO.getTargetUserId());
+        applyDislike(match, matchPostDTO.getUserId(), matchPostDTO.getTargetUserId());
+        matchRepository.save(match);
+    }
+
+    /**
+     * Applies the swipes of one user in the given order, all in this transaction.
+     * Pairs that do not exist yet are inserted together first, then all pairs are
+     * locked one by one in pair order. A swipe that cannot be applied (a like on a pair rejected due
+     * to a block, or an invalid target) is reported in its result and does not
+     * affect the other swipes.
+     *
+     * @return one result per decision, in the order of the decisions
+     */
+    public List<MatchBatchResultGetDTO> processBatch(MatchBatchPostDTO batch) {
+        Long userId = batch.getUserId();
+        if (userId == null || batch.getDecisions() == null || batch.getDecisions().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId and at least one decision are required.");
+        }
+
+        Set<Long> targetUserIds = new LinkedHashSet<>();
+        for (MatchBatchPostDTO.SwipeDecisionDTO decision : batch.getDecisions()) {
+            if (decision != null && decision.getTargetUserId() != null && !decision.getTargetUserId().equals(userId)) {
+                targetUserIds.add(decision.getTargetUserId());
             }
-            
-            boolean previouslyLikedBySameUser = false;
-            if (Objects.equals(match.getUserId1(), matchPostDTO.getUserId())) {
-                wasAlreadyLikedByTargetUser = match.isLikedByUser2();
-                previouslyLikedBySameUser = match.isLikedByUser1();
-                match.setLikedByUser1(true);
-            } else {
-                wasAlreadyLikedByTargetUser = match.isLikedByUser1();
-                previouslyLikedBySameUser = match.isLikedByUser2();
-                match.setLikedByUser2(true);
+        }
+        Set<Long> missing = new LinkedHashSet<>(targetUserIds);
+        if (!targetUserIds.isEmpty()) {
+            for (Match match : matchRepository.findPairs(userId, targetUserIds)) {
+                missing.remove(otherUserId(match, userId));
             }
-            
-            // Only send a like notification if this user hasn't previously liked the target user
-            if (!previouslyLikedBySameUser) {
-                notificationService.createLikeNotification(matchPostDTO.getTargetUserId(), matchPostDTO.getUserId());
+        }
+        if (!missing.isEmpty()) {
+            insertPairs(userId, new ArrayList<>(missing));
+        }
+        Map<Long, Match> pairs = lockPairs(userId, targetUserIds);
+
+        List<MatchBatchResultGetDTO> results = new ArrayList<>(batch.getDecisions().size());
+        for (MatchBatchPostDTO.SwipeDecisionDTO decision : batch.getDecisions()) {
+            results.add(applyDecision(userId, decision, pairs));
+        }
+        matchRepository.saveAll(pairs.values());
+        return results;
+    }
+
+    private MatchBatchResultGetDTO applyDecision(Long userId, MatchBatchPostDTO.SwipeDecisionDTO decision,
+                                                 Map<Long, Match> pairs) {
+        MatchBatchResultGetDTO result = new MatchBatchResultGetDTO();
+        if (decision == null || decision.getTargetUserId() == null || decision.getTargetUserId().equals(userId)) {
+            result.setError("Invalid target user.");
+            return result;
+        }
+        Long targetUserId = decision.getTargetUserId();
+        result.setTargetUserId(targetUserId);
+        result.setLiked(decision.isLiked());
+
+        Match match = pairs.get(targetUserId);
+        if (match == null) {
+            result.setError("Match between users " + userId + " and " + targetUserId + " could not be created.");
+            return result;
+        }
+        result.setMatchId(match.getId());
+        if (decision.isLiked()) {
+            if (match.getStatus() == MatchStatus.REJECTED) {
+                result.setStatus(match.getStatus());
+                result.setError(REJECTED_MESSAGE);
+                return result;
             }
+            result.setNewMatch(applyLike(match, userId, targetUserId));
         } else {
-            // No existing match: create a new one.
-            match = dtoMapper.convertMatchPostDTOtoEntity(matchPostDTO);
-            // Set the corresponding like flag (assuming the acting user is user1 in new records)
-            // i.e. for a new match user1 is the person that first like the other person
-            match.setLikedByUser1(true);
-            match.setLikedByUser2(false);
-            // Set an initial status (e.g., PENDING).
-            match.setStatus(MatchStatus.PENDING);
-            
-            notificationService.createLikeNotification(matchPostDTO.getTargetUserId(), matchPostDTO.getUserId());
+            applyDislike(match, userId, targetUserId);
         }
+        result.setApplied(true);
+        result.setStatus(match.getStatus());
+        return result;
+    }
 
-        // Check if both users have liked each other and update status to ACCEPTED.
-        if (match.isLikedByUser1() && match.isLikedByUser2()) {
-            match.setStatus(MatchStatus.ACCEPTED);
-
-            // Create an individual chat channel for this accepted match.
-            User user1 = userRepository.findById(match.getUserId1())
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
-                        "User with id " + match.getUserId1() + " not found."));
-            User user2 = userRepository.findById(match.getUserId2())
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
-                        "User with id " + match.getUserId2() + " not found."));
+    // the locked pairs of the user with each of the target users, by target user id
+    // Locks the pairs one at a time, ordered by (userLowId, userHighId). Every transaction locking
+    // several pairs does so in this order and holds no other pair lock before, so two batches sharing
+    // pairs cannot deadlock. A single query with ORDER BY would not guarantee the row locking order.
+    private Map<Long, Match> lockPairs(Long userId, Collection<Long> targetUserIds) {
+        List<Long> ordered = new ArrayList<>(targetUserIds);
+        ordered.sort(Comparator.<Long>comparingLong(targetUserId -> Math.min(userId, targetUserId))
+            .thenComparingLong(targetUserId -> Math.max(userId, targetUserId)));
 
-            // Call ChatService's method to create a channel.
-            chatService.createIndividualChatChannelAfterMatch(user1, user2);
-            notificationService.createMatchNotification(match.getUserId1(), match.getUserId2(), match.getId());
+        Map<Long, Match> pairs = new HashMap<>();
+        for (Long targetUserId : ordered) {
+            matchRepository.findPairForUpdate(Math.min(userId, targetUserId), Math.max(userId, targetUserId))
+                .ifPresent(match -> pairs.put(targetUserId, match));
         }
+        return pairs;
+    }
 
-        Match savedMatch = matchRepository.save(match);
-        return dtoMapper.convertEntityToMatchGetDTO(savedMatch);
+    private static Long otherUserId(Match match, Long userId) {
+        return Objects.equals(match.getUserId1(), userId) ? match.getUserId2() : match.getUserId1();
     }
 
-    //process dislike action 
-    public void processDislike(MatchPostDTO matchPostDTO) {
-        // Try to find an existing match between the two users.
-        Optional<Match> existingMatchOptional = findMatchByUsers(
-                matchPostDTO.getUserId(), matchPostDTO.getTargetUserId());
-    
-        if (existingMatchOptional.isPresent()) {
-            Match match = existingMatchOptional.get();
-    
-            if (Objects.equals(match.getUserId1(), matchPostDTO.getUserId())) {
-                match.setLikedByUser1(false);
-            } else if (Objects.equals(match.getUserId2(), matchPostDTO.getUserId())) {
-                match.setLikedByUser2(false);
+    // inserts all missing pairs in one batch; if another request inserted one of them, pair by pair
+    private void insertPairs(Long userId, List<Long> targetUserIds) {
+        try {
+            matchPairWriter.insertPairs(userId, targetUserIds);
+        } catch (DataIntegrityViolationException e) {
+            for (Long targetUserId : targetUserIds) {
+                try {
+                    matchPairWriter.insertPair(userId, targetUserId);
+                } catch (DataIntegrityViolationException duplicate) {
+                    // inserted by the other request, locked below
+                }
             }
-            //set status to REJECTED
-            match.setStatus(MatchStatus.REJECTED);
-            matchRepository.save(match);
+        }
+    }
+
+    /**
+     * Sets the like of the user on the locked pair and turns the pair into an
+     * accepted match once both users liked each other.
+     *
+     * @return true if this like made the pair a match
+     */
+    private boolean applyLike(Match match, Long userId, Long targetUserId) {
+        boolean previouslyLikedBySameUser;
+        if (Objects.equals(match.getUserId1(), userId)) {
+            previouslyLikedBySameUser = match.isLikedByUser1();
+            match.setLikedByUser1(true);
         } else {
-            // If no match exists, create one with rejected status
-            Match newMatch = new Match();
-            newMatch.setUserId1(matchPostDTO.getUserId());
-            newMatch.setUserId2(matchPostDTO.getTargetUserId());
-            newMatch.setStatus(MatchStatus.REJECTED);
-            newMatch.setLikedByUser1(false);
-            newMatch.setLikedByUser2(false);
-            matchRepository.save(newMatch);
+            previouslyLikedBySameUser = match.isLikedByUser2();
+            match.setLikedByUser2(true);
+        }
+
+        // Only send a like notification if this user hasn't previously liked the target user.
+        // Notifications and the chat are created after commit, see SocialEventHandlers.
+        if (!previouslyLikedBySameUser) {
+            eventBus.publish(new LikeEvent(userId, targetUserId));
+            socialGraph.like(userId, targetUserId);
+        }
+
+        // Check if both users have liked each other and update status to ACCEPTED.
+        if (match.isLikedByUser1() && match.isLikedByUser2() && match.getStatus() != MatchStatus.ACCEPTED) {
+            match.setStatus(MatchStatus.ACCEPTED);
+            eventBus.publish(new MatchAcceptedEvent(match.getId(), match.getUserId1(), match.getUserId2()));
+            discoveryIndex.excludePair(match.getUserId1(), match.getUserId2());
+            socialGraph.match(match.getUserId1(), match.getUserId2());
+            return true;
+        }
+        return false;
+    }
+
+    private void applyDislike(Match match, Long userId, Long targetUserId) {
+        if (Objects.equals(match.getUserId1(), userId)) {
+            match.setLikedByUser1(false);
+        } else if (Objects.equals(match.getUserId2(), userId)) {
+            match.setLikedByUser2(false);
+        }
+        //set status to REJECTED
+        match.setStatus(MatchStatus.REJECTED);
+        discoveryIndex.excludePair(userId, targetUserId);
+        socialGraph.dislike(userId, targetUserId);
+    }
+
+    /**
+     * Returns the match row of the pair, locked for the rest of the transaction.
+     * Concurrent swipes on the same pair are serialized by the row lock, swipes on
+     * other pairs are not affected. If the row does not exist yet it is inserted
+     * first; when two requests race, the unique pair index lets exactly one insert win.
+     */
+    private Match lockOrCreatePair(Long userId, Long targetUserId) {
+        Long userLowId = Math.min(userId, targetUserId);
+        Long userHighId = Math.max(userId, targetUserId);
+
+        Optional<Match> existing = matchRepository.findPairForUpdate(userLowId, userHighId);
+        if (existing.isPresent()) {
+            return existing.get();
         }
+        try {
+            matchPairWriter.insertPair(userId, targetUserId);
+        } catch (DataIntegrityViolationException e) {
+            // the other request inserted the pair first, its row is used below
+        }
+        return matchRepository.findPairForUpdate(userLowId, userHighId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Match between users " + userId + " and " + targetUserId + " could not be created."));
     }
 
     public void deleteMatchBetweenUsers(Long userAId, Long userBId) {
         Optional<Match> matchOptional = matchRepository.findMatchByUsers(userAId, userBId);
-        matchOptional.ifPresent(matchRepository::delete);
+        matchOptional.ifPresent(match -> {
+            matchRepository.delete(match);
+            socialGraph.removePair(userAId, userBId);
+        });
     }
-    
 
-    public List<Long> getUsersLikedBy(Long userId) {
-        List<Match> matches = matchRepository.findAllByUserIdEither(userId);
-        return matches.stream()
-            .filter(match -> {
-                if (match.getUserId1().equals(userId)) {
-                    return match.isLikedByUser1();
-                } else if (match.getUserId2().equals(userId)) {
-                    return match.isLikedByUser2();
-                }
-                return false;
-            })
-            .map(match -> {
-                return match.getUserId1().equals(userId) ? match.getUserId2() : match.getUserId1();
-            })
-            .toList();
+    // the relations below are answered by the in-memory SocialGraph, ids in ascending order
+
+    public long[] getUsersLikedBy(Long userId) {
+        return socialGraph.get(SocialGraph.Relation.LIKES, userId);
     }
-    
- 
-    public List<Long> getUsersMatchedWith(Long userId) {
-        List<Match> matches = matchRepository.findAllByUserIdEither(userId);
-        return matches.stream()
-            .filter(match -> match.isLikedByUser1() && match.isLikedByUser2())
-            .map(match -> {
-                // Return the ID of the other user in the match
-                return match.getUserId1().equals(userId) ? match.getUserId2() : match.getUserId1();
-            })
-            .toList();
+
+    public long[] getUsersMatchedWith(Long userId) {
+        return socialGraph.get(SocialGraph.Relation.MATCHED, userId);
     }
-    
-    
-    public List<Long> getUsersBlockedBy(Long userId) {
-        // Get blocks where this user is the blocker
-        List<Block> blocks = blockRepository.findByBlockerId(userId);
-        return blocks.stream()
-            .map(Block::getBlockedUserId)
-            .toList();
+
+    public long[] getUsersBlockedBy(Long userId) {
+        return socialGraph.get(SocialGraph.Relation.BLOCKS, userId);
     }
 }
@@ -0,0 +1,265 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Message;
+import ch.uzh.ifi.hase.soprafs24.repository.ChatChannelRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MessageRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Persists chat messages, together with the channel's latest-message columns
+ * and the sender's read pointer.
+ *
+ * By default every message is written in its own transaction on the calling
+ * thread. With chat.write-behind.enabled=true messages are instead put into a
+ * bounded queue and written by a single writer thread in group commits: it
+ * collects up to batch-size messages, waiting at most max-delay-ms for more,
+ * inserts them with one JDBC batch (Message ids come from a pooled sequence)
+ * and commits once. The sender is only answered after that commit, so an
+ * acknowledged message is always stored. When the queue is full new messages
+ * are rejected with 503 instead of piling up. If a batch fails, its messages
+ * are written again one by one, so only the message at fault is rejected.
+ *
+ * With write-behind, ids are taken from the sequence at flush and committed by
+ * the single writer thread, so messages become visible in id order, which the
+ * afterId polling, the latest-message guard of the channel and the unread
+ * counts rely on. In the default mode messages of different senders commit
+ * concurrently, as they always did, and a message with a lower id can become
+ * visible shortly after one with a higher id; deployments that need strict id
+ * order enable write-behind.
+ */
+@Component
+public class MessageWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWriter.class);
+
+    private final MessageRepository messageRepository;
+    private final ChatChannelRepository chatChannelRepository;
+    private final ChatParticipantRepository chatParticipantRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean writeBehind;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final long ackTimeoutMillis;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public MessageWriter(MessageRepository messageRepository,
+                         ChatChannelRepository chatChannelRepository,
+                         ChatParticipantRepository chatParticipantRepository,
+                         UserRepository userRepository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${chat.write-behind.enabled:false}") boolean writeBehind,
+                         @Value("${chat.write-behind.queue-capacity:10000}") int queueCapacity,
+                         @Value("${chat.write-behind.batch-size:500}") int batchSize,
+                         @Value("${chat.write-behind.max-delay-ms:5}") long maxDelayMillis,
+                         @Value("${chat.write-behind.ack-timeout-ms:5000}") long ackTimeoutMillis) {
+        this.messageRepository = messageRepository;
+        this.chatChannelRepository = chatChannelRepository;
+        this.chatParticipantRepository = chatParticipantRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeBehind = writeBehind;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (writeBehind) {
+            this.writerThread = new Thread(this::runWriter, "chat-message-writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        } else {
+            this.writerThread = null;
+        }
+    }
+
+    // a message waiting to be written; completed with its id once committed
+    static final class PendingMessage {
+        private final Long channelId;
+        private final Long senderId;
+        private final String content;
+        private final LocalDateTime timestamp;
+        private final CompletableFuture<Long> stored = new CompletableFuture<>();
+
+        PendingMessage(Long channelId, Long senderId, String content, LocalDateTime timestamp) {
+            this.channelId = channelId;
+            this.senderId = senderId;
+            this.content = content;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Stores a message and returns its id. Returns only once the message is committed.
+     *
+     * If the write-behind writer does not confirm the message within
+     * chat.write-behind.ack-timeout-ms, the message is withdrawn if it is still
+     * queued. If the writer has already taken it, it may still be committed, so a
+     * client retrying after "could not be confirmed in time" can store the
+     * message twice; messages carry no idempotency key.
+     *
+     * @throws ResponseStatusException 503 if the write-behind queue is full or the write did not complete in time
+     */
+    public Long write(Long channelId, Long senderId, String content, LocalDateTime timestamp) {
+        PendingMessage message = new PendingMessage(channelId, senderId, content, timestamp);
+        if (!writeBehind) {
+            writeBatch(List.of(message));
+            return message.stored.join();
+        }
+        if (!running || !queue.offer(message)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Chat is overloaded, please retry");
+        }
+        try {
+            return message.stored.get(ackTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Message could not be stored");
+        } catch (TimeoutException e) {
+            if (queue.remove(message)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Message could not be stored");
+            }
+            // already taken by the writer: it may still be committed, the client only learns that it was not confirmed
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Message could not be confirmed in time");
+        } catch (ExecutionException e) {
+            log.error("Writing chat message failed", e.getCause());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Message could not be stored");
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(batch);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // shutdown: write the collected batch, the rest of the queue follows via the loop condition
+                running = false;
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in chat message writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // group commit window: fill the batch, but do not hold the first message longer than maxDelay
+    private void collectBatch(List<PendingMessage> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        List<Message> messages;
+        try {
+            messages = transactionTemplate.execute(status -> insert(batch));
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                // e.g. the channel of one message was deleted meanwhile; that must not fail the others
+                log.warn("Writing a batch of {} chat messages failed, writing them one by one", batch.size(), e);
+                for (PendingMessage pending : batch) {
+                    writeBatch(List.of(pending));
+                }
+                return;
+            }
+            batch.get(0).stored.completeExceptionally(e);
+            if (!writeBehind) {
+                throw e;
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).stored.complete(messages.get(i).getId());
+        }
+    }
+
+    // must run inside a transaction
+    private List<Message> insert(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            Message message = new Message();
+            // references only, the sender and channel were validated before the message was accepted
+            message.setChannel(chatChannelRepository.getOne(pending.channelId));
+            message.setSender(userRepository.getOne(pending.senderId));
+            message.setContent(pending.content);
+            message.setTimestamp(pending.timestamp);
+            messages.add(message);
+        }
+        messages = messageRepository.saveAll(messages);
+        messageRepository.flush();
+
+        // one update per channel and per sender for the whole batch; ids grow with the batch order
+        Map<Long, Integer> latestByChannel = new LinkedHashMap<>();
+        Map<List<Long>, Long> latestBySender = new HashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            PendingMessage pending = batch.get(i);
+            latestByChannel.put(pending.channelId, i);
+            latestBySender.put(List.of(pending.channelId, pending.senderId), messages.get(i).getId());
+        }
+        for (Integer i : latestByChannel.values()) {
+            PendingMessage pending = batch.get(i);
+            chatChannelRepository.recordLastMessage(pending.channelId, messages.get(i).getId(),
+                pending.senderId, pending.content, pending.timestamp);
+        }
+        // the sender has read their own message
+        latestBySender.forEach((key, messageId) ->
+            chatParticipantRepository.advanceReadPointer(key.get(0), key.get(1), messageId));
+        return messages;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writerThread != null) {
+            running = false;
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the open Server-Sent Events streams of users and pushes notification
+ * events to them.
+ *
+ * Events are sent from a small delivery pool, so a slow client never holds up
+ * the request that created a notification. Every stream has its own queue that
+ * is drained by at most one delivery thread at a time, so the events of a
+ * stream arrive in the order they were published (an unread count never
+ * overtakes a newer one). A stream that fails, times out or falls more than
+ * MAX_PENDING_EVENTS behind is dropped; clients reconnect and catch up with
+ * the unread list.
+ */
+@Component
+public class NotificationHub {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationHub.class);
+    static final int MAX_PENDING_EVENTS = 256;
+
+    private final long timeoutMillis;
+    private final ExecutorService deliveryExecutor;
+    private final Map<Long, Set<Stream>> streamsByUser = new ConcurrentHashMap<>();
+
+    public NotificationHub(@Value("${notifications.sse.timeout-ms:1800000}") long timeoutMillis,
+                           @Value("${notifications.sse.delivery-threads:2}") int deliveryThreads) {
+        this.timeoutMillis = timeoutMillis;
+        this.deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "notification-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // one open stream and the events not sent to it yet
+    private static final class Stream {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> pending = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        private Stream(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    // opens a stream for the user; it is removed again when it completes, times out or fails
+    public SseEmitter subscribe(Long userId) {
+        Stream stream = new Stream(createEmitter());
+        streamsByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(stream);
+        stream.emitter.onCompletion(() -> remove(userId, stream));
+        stream.emitter.onTimeout(() -> remove(userId, stream));
+        stream.emitter.onError(e -> remove(userId, stream));
+        return stream.emitter;
+    }
+
+    // package-private so that tests can observe what is sent
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    public int getStreamCount(Long userId) {
+        Set<Stream> streams = streamsByUser.get(userId);
+        return streams == null ? 0 : streams.size();
+    }
+
+    // sends an event named name with data serialized as JSON to all streams of the user
+    public void publish(Long userId, String name, Object data) {
+        Set<Stream> streams = streamsByUser.get(userId);
+        if (streams == null || streams.isEmpty()) {
+            return;
+        }
+        for (Stream stream : streams) {
+            if (!stream.pending.offer(SseEmitter.event().name(name).data(data))) {
+                log.debug("Notification stream of user {} fell behind, dropping it", userId);
+                remove(userId, stream);
+                stream.emitter.complete();
+                continue;
+            }
+            scheduleDrain(userId, stream);
+        }
+    }
+
+    private void scheduleDrain(Long userId, Stream stream) {
+        if (stream.draining.compareAndSet(false, true)) {
+            deliveryExecutor.execute(() -> drain(userId, stream));
+        }
+    }
+
+    private void drain(Long userId, Stream stream) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = stream.pending.poll()) != null) {
+                stream.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping notification stream of user {}", userId, e);
+            remove(userId, stream);
+            stream.pending.clear();
+            stream.emitter.completeWithError(e);
+        } finally {
+            stream.draining.set(false);
+        }
+        // an event may have arrived after the last poll but before the flag was reset
+        if (!stream.pending.isEmpty()) {
+            scheduleDrain(userId, stream);
+        }
+    }
+
+    private void remove(Long userId, Stream stream) {
+        streamsByUser.computeIfPresent(userId, (id, streams) -> {
+            streams.remove(stream);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdownNow();
+        streamsByUser.values().forEach(streams -> streams.forEach(stream -> stream.emitter.complete()));
+        streamsByUser.clear();
+    }
+}
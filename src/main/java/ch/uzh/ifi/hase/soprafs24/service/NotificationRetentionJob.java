@@ -0,0 +1,94 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.NotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes read notifications older than notifications.retention.max-age-days,
+ * so that the notification table of long-lived accounts does not keep growing.
+ *
+ * Runs every notifications.retention.interval-minutes and deletes in batches of
+ * notifications.retention.batch-size, each in its own short transaction, so a
+ * large backlog never locks many rows at once. Unread notifications are kept.
+ */
+@Component
+public class NotificationRetentionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationRetentionJob.class);
+
+    private final NotificationRepository notificationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration maxAge;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public NotificationRetentionJob(NotificationRepository notificationRepository,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${notifications.retention.enabled:true}") boolean enabled,
+                                    @Value("${notifications.retention.max-age-days:90}") long maxAgeDays,
+                                    @Value("${notifications.retention.batch-size:500}") int batchSize,
+                                    @Value("${notifications.retention.interval-minutes:60}") long intervalMinutes) {
+        this.notificationRepository = notificationRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAge = Duration.ofDays(maxAgeDays);
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::purgeSafely, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Deletes all read notifications created before now minus the maximum age.
+     *
+     * @return the number of deleted notifications
+     */
+    public int purge() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(maxAge);
+        int deleted = 0;
+        while (true) {
+            Integer count = transactionTemplate.execute(status -> {
+                List<Long> ids = notificationRepository.findReadIdsCreatedBefore(cutoff, PageRequest.of(0, batchSize));
+                return ids.isEmpty() ? 0 : notificationRepository.deleteByIdIn(ids);
+            });
+            if (count == null || count == 0) {
+                return deleted;
+            }
+            deleted += count;
+        }
+    }
+
+    private void purgeSafely() {
+        try {
+            int deleted = purge();
+            if (deleted > 0) {
+                log.info("Deleted {} read notifications older than {}", deleted, maxAge);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Purging old notifications failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
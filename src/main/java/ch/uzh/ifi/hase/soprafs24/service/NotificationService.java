@@ -4,14 +4,23 @@ import ch.uzh.ifi.hase.soprafs24.entity.Notification;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.NotificationRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Transactional
@@ -19,14 +28,22 @@ public class NotificationService {
 
     private static final String USER_NOT_FOUND_PREFIX = "User with ID ";
     private static final String NOT_FOUND_SUFFIX = " not found.";
+    private static final String EVENT_NOTIFICATION = "notification";
+    private static final String EVENT_UNREAD_COUNT = "unread-count";
+    private static final String CURSOR_SEPARATOR = "_";
 
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
+    private final NotificationHub notificationHub;
+    private final UnreadNotificationCounter unreadCounter;
 
     @Autowired
-    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository) {
+    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository,
+                               NotificationHub notificationHub, UnreadNotificationCounter unreadCounter) {
         this.notificationRepository = notificationRepository;
         this.userRepository = userRepository;
+        this.notificationHub = notificationHub;
+        this.unreadCounter = unreadCounter;
     }
 
     public Notification createNotification(Long userId, String message, String type, Long relatedEntityId) {
@@ -38,42 +55,141 @@ public class NotificationService {
         notification.setRelatedEntityId(relatedEntityId);
         notification.setCreationDate(LocalDateTime.now());
         notification.setRead(false);
-        return notificationRepository.save(notification);
+        Notification saved = notificationRepository.save(notification);
+        afterCommit(() -> {
+            notificationHub.publish(userId, EVENT_NOTIFICATION, DTOMapper.INSTANCE.convertEntityToNotificationGetDTO(saved));
+            pushUnreadCount(userId, unreadCounter.add(userId, 1));
+        });
+        return saved;
     }
 
-    public List<Notification> getNotificationsForUser(Long userId) {
+    /**
+     * One page of a user's notifications, newest first. nextCursor is the cursor of
+     * the following page, or null if this is the last one.
+     */
+    public static final class NotificationPage {
+        private final List<Notification> notifications;
+        private final String nextCursor;
+
+        public NotificationPage(List<Notification> notifications, String nextCursor) {
+            this.notifications = notifications;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Notification> getNotifications() {
+            return notifications;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Get one page of a user's notifications, using (creationDate, id) as keyset.
+     *
+     * @param cursor nextCursor of the previous page, or null for the newest notifications
+     * @param limit maximum number of notifications
+     */
+    public NotificationPage getNotificationsForUser(Long userId, String cursor, int limit) {
         ensureUserExists(userId);
-        return notificationRepository.findByUserIdOrderByCreationDateDesc(userId);
+        Pageable pageable = PageRequest.of(0, limit);
+        Slice<Notification> slice;
+        if (cursor == null) {
+            slice = notificationRepository.findByUserIdOrderByCreationDateDescIdDesc(userId, pageable);
+        } else {
+            int separator = cursor.lastIndexOf(CURSOR_SEPARATOR);
+            LocalDateTime beforeDate;
+            Long beforeId;
+            try {
+                beforeDate = LocalDateTime.parse(cursor.substring(0, separator));
+                beforeId = Long.valueOf(cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+            slice = notificationRepository.findPageBefore(userId, beforeDate, beforeId, pageable);
+        }
+        List<Notification> notifications = slice.getContent();
+        String nextCursor = null;
+        if (slice.hasNext()) {
+            Notification last = notifications.get(notifications.size() - 1);
+            nextCursor = last.getCreationDate() + CURSOR_SEPARATOR + last.getId();
+        }
+        return new NotificationPage(notifications, nextCursor);
     }
 
     public List<Notification> getUnreadNotificationsForUser(Long userId) {
         ensureUserExists(userId);
-        return notificationRepository.findByUserIdAndReadFalseOrderByCreationDateDesc(userId);
+        long generation = unreadCounter.generation(userId);
+        List<Notification> unread = notificationRepository.findByUserIdAndReadFalseOrderByCreationDateDesc(userId);
+        // counted anyway, also corrects a counter that drifted
+        unreadCounter.setIfUnchanged(userId, unread.size(), generation);
+        return unread;
+    }
+
+    /**
+     * Number of unread notifications of the user. Answered from UnreadNotificationCounter,
+     * only a user without a counter is counted in the database.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long getUnreadCount(Long userId) {
+        Long cached = unreadCounter.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        ensureUserExists(userId);
+        long generation = unreadCounter.generation(userId);
+        long unread = notificationRepository.countByUserIdAndReadFalse(userId);
+        unreadCounter.setIfUnchanged(userId, unread, generation);
+        return unread;
+    }
+
+    /**
+     * Opens a Server-Sent Events stream of the user. It receives a "notification" event for every
+     * new notification and an "unread-count" event whenever the number of unread notifications changes,
+     * starting with the current number.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public SseEmitter openStream(Long userId) {
+        long unread = getUnreadCount(userId);
+        SseEmitter emitter = notificationHub.subscribe(userId);
+        notificationHub.publish(userId, EVENT_UNREAD_COUNT, Map.of("unreadCount", unread));
+        return emitter;
     }
 
     public Notification markNotificationAsRead(Long notificationId) {
         Notification notification = notificationRepository.findById(notificationId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
                         "Notification with ID " + notificationId + NOT_FOUND_SUFFIX));
+        boolean wasUnread = !notification.isRead();
         notification.setRead(true);
-        return notificationRepository.save(notification);
+        Notification saved = notificationRepository.save(notification);
+        if (wasUnread) {
+            Long userId = notification.getUserId();
+            afterCommit(() -> pushUnreadCount(userId, unreadCounter.add(userId, -1)));
+        }
+        return saved;
     }
 
     public void markAllNotificationsAsRead(Long userId) {
         ensureUserExists(userId);
-        List<Notification> notifications = notificationRepository.findByUserIdOrderByCreationDateDesc(userId);
-        for (Notification notification : notifications) {
-            notification.setRead(true);
-            notificationRepository.save(notification);
-        }
+        // one UPDATE regardless of how many notifications the user has
+        notificationRepository.markAllReadByUserId(userId);
+        afterCommit(() -> {
+            unreadCounter.set(userId, 0);
+            pushUnreadCount(userId, 0L);
+        });
     }
 
     public void deleteNotification(Long notificationId) {
-        if (notificationRepository.findById(notificationId).isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Notification with ID " + notificationId + NOT_FOUND_SUFFIX);
-        }
+        Notification notification = notificationRepository.findById(notificationId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Notification with ID " + notificationId + NOT_FOUND_SUFFIX));
         notificationRepository.deleteById(notificationId);
+        if (!notification.isRead()) {
+            Long userId = notification.getUserId();
+            afterCommit(() -> pushUnreadCount(userId, unreadCounter.add(userId, -1)));
+        }
     }
 
     public void createLikeNotification(Long targetUserId, Long likingUserId) {
@@ -96,8 +212,29 @@ public class NotificationService {
         createNotification(userId2, "You matched with " + user1.getName() + "!", "MATCH", matchId);
     }
 
+    // counters and streams only see committed changes, a rolled back notification is never announced
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // unread is null if the user has no counter; nobody asked for the count then, so there is nothing to push
+    private void pushUnreadCount(Long userId, Long unread) {
+        if (unread != null) {
+            notificationHub.publish(userId, EVENT_UNREAD_COUNT, Map.of("unreadCount", unread));
+        }
+    }
+
     private void ensureUserExists(Long userId) {
-        if (userRepository.findById(userId).isEmpty()) {
+        if (!userRepository.existsById(userId)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     USER_NOT_FOUND_PREFIX + userId + NOT_FOUND_SUFFIX);
         }
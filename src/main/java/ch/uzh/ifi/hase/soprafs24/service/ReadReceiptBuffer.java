@@ -0,0 +1,140 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces read receipts in memory and writes them to the read pointers
+ * (ChatParticipant.lastReadMessageId) in batches.
+ *
+ * Clients acknowledge every message they display, so a user scrolling through
+ * a chat produces many receipts for the same channel. Only the highest message
+ * id per user and channel is kept until the next flush, which then needs one
+ * UPDATE per user and channel for all receipts received in the meantime.
+ * The database update only ever moves a pointer forward.
+ */
+@Component
+public class ReadReceiptBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReceiptBuffer.class);
+
+    private final ChatParticipantRepository chatParticipantRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPendingUsers;
+    private final ScheduledExecutorService flusher;
+    // userId -> channelId -> highest acknowledged message id
+    private final Map<Long, Map<Long, Long>> pending = new ConcurrentHashMap<>();
+
+    public ReadReceiptBuffer(ChatParticipantRepository chatParticipantRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${chat.read-receipts.flush-interval-ms:1000}") long flushIntervalMs,
+                             @Value("${chat.read-receipts.max-pending-users:10000}") int maxPendingUsers) {
+        this.chatParticipantRepository = chatParticipantRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxPendingUsers = maxPendingUsers;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "read-receipt-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAllSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // records that the user has read the channel up to and including messageId
+    public void acknowledge(Long userId, Long channelId, Long messageId) {
+        if (userId == null || channelId == null || messageId == null) {
+            return;
+        }
+        merge(userId, channelId, messageId);
+        if (pending.size() > maxPendingUsers) {
+            // do not wait for the next tick when a burst of receipts comes in
+            flusher.execute(this::flushAllSafely);
+        }
+    }
+
+    // the highest pending acknowledgement of the user in the channel, or null
+    public Long getPending(Long userId, Long channelId) {
+        Map<Long, Long> channels = pending.get(userId);
+        return channels == null ? null : channels.get(channelId);
+    }
+
+    // writes the user's pending receipts now, e.g. before their unread counts are computed
+    public void flushUser(Long userId) {
+        Map<Long, Long> channels = pending.remove(userId);
+        if (channels == null || channels.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(userId, channels));
+        } catch (RuntimeException e) {
+            requeue(userId, channels);
+            throw e;
+        }
+    }
+
+    // writes all pending receipts in one transaction
+    public void flushAll() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<Long, Long>> batch = new HashMap<>();
+        for (Long userId : pending.keySet()) {
+            Map<Long, Long> channels = pending.remove(userId);
+            if (channels != null) {
+                batch.put(userId, channels);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(this::write));
+        } catch (RuntimeException e) {
+            batch.forEach(this::requeue);
+            throw e;
+        }
+    }
+
+    // puts receipts back after a failed write, so that they are retried with the next flush
+    private void requeue(Long userId, Map<Long, Long> channels) {
+        channels.forEach((channelId, messageId) -> merge(userId, channelId, messageId));
+    }
+
+    // compute() so that a concurrent flush cannot take the map away while it is updated
+    private void merge(Long userId, Long channelId, Long messageId) {
+        pending.compute(userId, (id, channels) -> {
+            Map<Long, Long> target = channels == null ? new ConcurrentHashMap<>() : channels;
+            target.merge(channelId, messageId, Math::max);
+            return target;
+        });
+    }
+
+    private void write(Long userId, Map<Long, Long> channels) {
+        channels.forEach((channelId, messageId) ->
+            chatParticipantRepository.advanceReadPointer(channelId, userId, messageId));
+    }
+
+    private void flushAllSafely() {
+        try {
+            flushAll();
+        } catch (RuntimeException e) {
+            log.warn("Flushing read receipts failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushAllSafely();
+    }
+}
@@ -3,6 +3,8 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.entity.Block;
 import ch.uzh.ifi.hase.soprafs24.entity.Report;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.BlockEvent;
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
 import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.ReportRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
@@ -22,20 +24,23 @@ public class ReportBlockService {
     private final ReportRepository reportRepository;
     private final BlockRepository blockRepository;
     private final UserRepository userRepository;
-    private final ChatService chatService;
-    private final MatchService matchService;
+    private final DiscoveryIndex discoveryIndex;
+    private final DomainEventBus eventBus;
+    private final SocialGraph socialGraph;
 
     @Autowired
     public ReportBlockService(ReportRepository reportRepository,
                               BlockRepository blockRepository,
                               UserRepository userRepository,
-                              ChatService chatService,
-                              MatchService matchService) {
+                              DiscoveryIndex discoveryIndex,
+                              DomainEventBus eventBus,
+                              SocialGraph socialGraph) {
         this.reportRepository = reportRepository;
         this.blockRepository = blockRepository;
         this.userRepository = userRepository;
-        this.chatService = chatService;
-        this.matchService = matchService;
+        this.discoveryIndex = discoveryIndex;
+        this.eventBus = eventBus;
+        this.socialGraph = socialGraph;
     }
 
     public void reportUser(Long reporterId, Long reportedUserId, String reason) {
@@ -54,10 +59,12 @@ public class ReportBlockService {
         if (!blockRepository.existsByBlockerIdAndBlockedUserId(reporterId, reportedUserId)) {
             Block block = new Block(reporter, reportedUser);
             blockRepository.save(block);
+            socialGraph.block(reporterId, reportedUserId);
         }
 
-        chatService.deleteIndividualChannelBetweenUsers(reporterId, reportedUserId);
-        matchService.deleteMatchBetweenUsers(reporterId, reportedUserId);
+        // the chat and the match are deleted after commit, see SocialEventHandlers
+        eventBus.publish(new BlockEvent(reporterId, reportedUserId));
+        discoveryIndex.excludePair(reporterId, reportedUserId);
     }
 
     public void blockUser(Long blockerId, Long blockedUserId) {
@@ -76,8 +83,9 @@ public class ReportBlockService {
 
         Block block = new Block(blocker, blockedUser);
         blockRepository.save(block);
-        chatService.deleteIndividualChannelBetweenUsers(blockerId, blockedUserId);
-        matchService.deleteMatchBetweenUsers(blockerId, blockedUserId);
+        socialGraph.block(blockerId, blockedUserId);
+        eventBus.publish(new BlockEvent(blockerId, blockedUserId));
+        discoveryIndex.excludePair(blockerId, blockedUserId);
     }
 
     public List<Report> getAllReports() {
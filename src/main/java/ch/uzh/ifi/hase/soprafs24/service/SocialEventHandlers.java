@@ -0,0 +1,101 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.BlockEvent;
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
+import ch.uzh.ifi.hase.soprafs24.event.LikeEvent;
+import ch.uzh.ifi.hase.soprafs24.event.MatchAcceptedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Side effects of likes, matches and blocks. They are stored in the outbox
+ * together with the swipe or block and run later by OutboxDispatcher, each in
+ * the transaction that removes its event from the outbox.
+ */
+@Component
+public class SocialEventHandlers {
+
+    private static final Logger log = LoggerFactory.getLogger(SocialEventHandlers.class);
+
+    private final UserRepository userRepository;
+    private final MatchRepository matchRepository;
+    private final BlockRepository blockRepository;
+    private final ChatService chatService;
+    private final NotificationService notificationService;
+    private final MatchService matchService;
+
+    public SocialEventHandlers(DomainEventBus eventBus,
+                               UserRepository userRepository,
+                               MatchRepository matchRepository,
+                               BlockRepository blockRepository,
+                               ChatService chatService,
+                               NotificationService notificationService,
+                               MatchService matchService) {
+        this.userRepository = userRepository;
+        this.matchRepository = matchRepository;
+        this.blockRepository = blockRepository;
+        this.chatService = chatService;
+        this.notificationService = notificationService;
+        this.matchService = matchService;
+        // the names are stored with pending events, do not rename them
+        eventBus.subscribe(LikeEvent.class, "like-notification", this::onLike);
+        eventBus.subscribe(MatchAcceptedEvent.class, "match-chat-and-notifications", this::onMatchAccepted);
+        eventBus.subscribe(BlockEvent.class, "block-cleanup", this::onBlock);
+    }
+
+    // events of users that deleted their account in the meantime are dropped, retrying would not help
+    void onLike(LikeEvent event) {
+        if (!userRepository.existsById(event.getLikingUserId()) || !userRepository.existsById(event.getTargetUserId())) {
+            log.info("Skipping like of deleted user {} or {}", event.getLikingUserId(), event.getTargetUserId());
+            return;
+        }
+        notificationService.createLikeNotification(event.getTargetUserId(), event.getLikingUserId());
+    }
+
+    // Opens the chat of the new match and tells both users about it. Events are dispatched in parallel
+    // and in any order, so a block of the pair may have been committed, or even cleaned up, since the
+    // match. The pair row is locked first, like onBlock does, so the two handlers of one pair never
+    // overlap; after the lock the match must still be accepted and the pair must not be blocked.
+    void onMatchAccepted(MatchAcceptedEvent event) {
+        Long userId1 = event.getUserId1();
+        Long userId2 = event.getUserId2();
+        Optional<Match> match = lockPair(userId1, userId2);
+        if (match.isEmpty() || match.get().getStatus() != MatchStatus.ACCEPTED) {
+            log.info("Skipping match {}, it is no longer accepted", event.getMatchId());
+            return;
+        }
+        if (blockRepository.existsByBlockerIdAndBlockedUserIdOrBlockedUserIdAndBlockerId(userId1, userId2, userId1, userId2)) {
+            log.info("Skipping match {}, the users blocked each other", event.getMatchId());
+            return;
+        }
+        Optional<User> user1 = userRepository.findById(userId1);
+        Optional<User> user2 = userRepository.findById(userId2);
+        if (user1.isEmpty() || user2.isEmpty()) {
+            log.info("Skipping match {} of a deleted user", event.getMatchId());
+            return;
+        }
+        chatService.createIndividualChatChannelAfterMatch(user1.get(), user2.get());
+        notificationService.createMatchNotification(userId1, userId2, event.getMatchId());
+    }
+
+    // a blocked pair loses its chat and its match; the pair row is locked first, see onMatchAccepted
+    void onBlock(BlockEvent event) {
+        lockPair(event.getBlockerId(), event.getBlockedUserId());
+        chatService.deleteIndividualChannelBetweenUsers(event.getBlockerId(), event.getBlockedUserId());
+        matchService.deleteMatchBetweenUsers(event.getBlockerId(), event.getBlockedUserId());
+    }
+
+    // locked until the dispatcher commits the handler's transaction
+    private Optional<Match> lockPair(Long userIdA, Long userIdB) {
+        return matchRepository.findPairForUpdate(Math.min(userIdA, userIdB), Math.max(userIdA, userIdB));
+    }
+}
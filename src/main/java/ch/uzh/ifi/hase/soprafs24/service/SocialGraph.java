@@ -0,0 +1,535 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Block;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory graph of likes, matches and blocks between users.
+ *
+ * Every user gets a dense slot number and, per relation, a sorted long[] of the
+ * neighbouring user ids. The arrays are replaced on every change and never
+ * modified in place, so a lookup is one binary search and a neighbour list is a
+ * single array copy, without boxing any id.
+ *
+ * The pending incoming likes of a user ("who liked me") are LIKED_BY without
+ * the users they liked, rejected or have a block with, so they need no own set.
+ *
+ * The graph is built once at startup and afterwards kept up to date by the
+ * write paths (like, dislike, block/report, match and user deletion). Changes
+ * made inside a transaction are applied after it commits.
+ */
+@Component
+public class SocialGraph {
+
+    private static final Logger log = LoggerFactory.getLogger(SocialGraph.class);
+    private static final long[] NONE = new long[0];
+
+    public enum Relation {
+        // users this user liked
+        LIKES,
+        // users that liked this user
+        LIKED_BY,
+        // accepted matches, symmetric
+        MATCHED,
+        // users this user blocked
+        BLOCKS,
+        // users that blocked this user
+        BLOCKED_BY,
+        // pairs rejected by a dislike of either user, symmetric
+        REJECTED
+    }
+
+    private final MatchRepository matchRepository;
+    private final BlockRepository blockRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SlotMap slotByUserId = new SlotMap();
+    // [relation][slot] -> sorted neighbour ids, null when empty
+    private final long[][][] adjacency = new long[Relation.values().length][1024][];
+    private int slotCount = 0;
+    private volatile boolean loaded = false;
+
+    public SocialGraph(MatchRepository matchRepository, BlockRepository blockRepository) {
+        this.matchRepository = matchRepository;
+        this.blockRepository = blockRepository;
+    }
+
+    /**
+     * One page of the users that liked a user and are still waiting for an answer.
+     * nextCursor is null on the last page; totalCount counts all pages.
+     */
+    public static final class PendingLikesPage {
+        private final long[] userIds;
+        private final Long nextCursor;
+        private final int totalCount;
+
+        public PendingLikesPage(long[] userIds, Long nextCursor, int totalCount) {
+            this.userIds = userIds;
+            this.nextCursor = nextCursor;
+            this.totalCount = totalCount;
+        }
+
+        public long[] getUserIds() {
+            return userIds;
+        }
+
+        public Long getNextCursor() {
+            return nextCursor;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+    }
+
+    /**
+     * The neighbours of a user in the given relation, in ascending id order.
+     * The returned array is a copy and may be modified by the caller.
+     */
+    public long[] get(Relation relation, long userId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            long[] neighbours = neighbours(relation, userId);
+            return neighbours == null ? NONE : neighbours.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(Relation relation, long userId, long otherUserId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return has(relation, userId, otherUserId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(Relation relation, long userId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            long[] neighbours = neighbours(relation, userId);
+            return neighbours == null ? 0 : neighbours.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // users blocked by or blocking the given user, ascending and without duplicates
+    public long[] getBlockedOrBlocking(long userId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return union(neighbours(Relation.BLOCKS, userId), neighbours(Relation.BLOCKED_BY, userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the users that liked the given user, without a like back, a dislike
+     * or a block in either direction, in ascending id order.
+     *
+     * @param afterUserId the last id of the previous page, or null for the first page
+     * @param limit       maximum number of ids to return
+     */
+    public PendingLikesPage getPendingLikes(long userId, Long afterUserId, int limit) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            long[] likedBy = neighbours(Relation.LIKED_BY, userId);
+            if (likedBy == null) {
+                return new PendingLikesPage(NONE, null, 0);
+            }
+            int start = 0;
+            if (afterUserId != null) {
+                int index = Arrays.binarySearch(likedBy, afterUserId);
+                start = index >= 0 ? index + 1 : -index - 1;
+            }
+            long[] page = new long[Math.min(limit, likedBy.length)];
+            int pageSize = 0;
+            int total = 0;
+            boolean more = false;
+            for (int i = 0; i < likedBy.length; i++) {
+                if (!isPending(userId, likedBy[i])) {
+                    continue;
+                }
+                total++;
+                if (i >= start) {
+                    if (pageSize < page.length) {
+                        page[pageSize++] = likedBy[i];
+                    } else {
+                        more = true;
+                    }
+                }
+            }
+            Long nextCursor = more && pageSize > 0 ? page[pageSize - 1] : null;
+            return new PendingLikesPage(pageSize == page.length ? page : Arrays.copyOf(page, pageSize), nextCursor, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countPendingLikes(long userId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            long[] likedBy = neighbours(Relation.LIKED_BY, userId);
+            int total = 0;
+            if (likedBy != null) {
+                for (long liker : likedBy) {
+                    if (isPending(userId, liker)) {
+                        total++;
+                    }
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // must be called while holding a lock
+    private boolean isPending(long userId, long likerId) {
+        return !has(Relation.LIKES, userId, likerId)
+            && !has(Relation.REJECTED, userId, likerId)
+            && !has(Relation.BLOCKS, userId, likerId)
+            && !has(Relation.BLOCKED_BY, userId, likerId);
+    }
+
+    // must be called while holding a lock
+    private boolean has(Relation relation, long userId, long otherUserId) {
+        long[] neighbours = neighbours(relation, userId);
+        return neighbours != null && Arrays.binarySearch(neighbours, otherUserId) >= 0;
+    }
+
+    public void like(long userId, long targetUserId) {
+        afterCommit(() -> {
+            add(Relation.LIKES, userId, targetUserId);
+            add(Relation.LIKED_BY, targetUserId, userId);
+        });
+    }
+
+    // the user's like is withdrawn, a match is undone and the pair is rejected
+    public void dislike(long userId, long targetUserId) {
+        afterCommit(() -> {
+            remove(Relation.LIKES, userId, targetUserId);
+            remove(Relation.LIKED_BY, targetUserId, userId);
+            remove(Relation.MATCHED, userId, targetUserId);
+            remove(Relation.MATCHED, targetUserId, userId);
+            add(Relation.REJECTED, userId, targetUserId);
+            add(Relation.REJECTED, targetUserId, userId);
+        });
+    }
+
+    public void match(long userId1, long userId2) {
+        afterCommit(() -> {
+            add(Relation.MATCHED, userId1, userId2);
+            add(Relation.MATCHED, userId2, userId1);
+        });
+    }
+
+    // called after the match row of the pair was deleted: no likes, match or rejection left in either direction
+    public void removePair(long userId1, long userId2) {
+        afterCommit(() -> {
+            remove(Relation.LIKES, userId1, userId2);
+            remove(Relation.LIKED_BY, userId2, userId1);
+            remove(Relation.LIKES, userId2, userId1);
+            remove(Relation.LIKED_BY, userId1, userId2);
+            remove(Relation.MATCHED, userId1, userId2);
+            remove(Relation.MATCHED, userId2, userId1);
+            remove(Relation.REJECTED, userId1, userId2);
+            remove(Relation.REJECTED, userId2, userId1);
+        });
+    }
+
+    public void block(long blockerId, long blockedUserId) {
+        afterCommit(() -> {
+            add(Relation.BLOCKS, blockerId, blockedUserId);
+            add(Relation.BLOCKED_BY, blockedUserId, blockerId);
+        });
+    }
+
+    // called after a user and all of their matches and blocks were deleted
+    public void removeUser(long userId) {
+        afterCommit(() -> {
+            int slot = slotByUserId.get(userId);
+            if (slot < 0) {
+                return;
+            }
+            for (Relation relation : Relation.values()) {
+                long[] neighbours = adjacency[relation.ordinal()][slot];
+                if (neighbours != null) {
+                    for (long neighbour : neighbours) {
+                        remove(inverse(relation), neighbour, userId);
+                    }
+                    adjacency[relation.ordinal()][slot] = null;
+                }
+            }
+        });
+    }
+
+    // build the graph at startup so that no write happening before the first read is missed
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            int edges = 0;
+            for (Match match : matchRepository.findAll()) {
+                long userId1 = match.getUserId1();
+                long userId2 = match.getUserId2();
+                if (match.isLikedByUser1()) {
+                    add(Relation.LIKES, userId1, userId2);
+                    add(Relation.LIKED_BY, userId2, userId1);
+                    edges++;
+                }
+                if (match.isLikedByUser2()) {
+                    add(Relation.LIKES, userId2, userId1);
+                    add(Relation.LIKED_BY, userId1, userId2);
+                    edges++;
+                }
+                if (match.getStatus() == MatchStatus.ACCEPTED) {
+                    add(Relation.MATCHED, userId1, userId2);
+                    add(Relation.MATCHED, userId2, userId1);
+                    edges++;
+                } else if (match.getStatus() == MatchStatus.REJECTED) {
+                    add(Relation.REJECTED, userId1, userId2);
+                    add(Relation.REJECTED, userId2, userId1);
+                    edges++;
+                }
+            }
+            for (Block block : blockRepository.findAll()) {
+                add(Relation.BLOCKS, block.getBlockerId(), block.getBlockedUserId());
+                add(Relation.BLOCKED_BY, block.getBlockedUserId(), block.getBlockerId());
+                edges++;
+            }
+            loaded = true;
+            log.info("Social graph built with {} users and {} edges", slotCount, edges);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // writes that happen before the graph is loaded are part of what it loads
+    private void afterCommit(Runnable change) {
+        Runnable locked = () -> {
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    change.run();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            locked.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                locked.run();
+            }
+        });
+    }
+
+    private static Relation inverse(Relation relation) {
+        switch (relation) {
+            case LIKES:
+                return Relation.LIKED_BY;
+            case LIKED_BY:
+                return Relation.LIKES;
+            case BLOCKS:
+                return Relation.BLOCKED_BY;
+            case BLOCKED_BY:
+                return Relation.BLOCKS;
+            default:
+                return relation;
+        }
+    }
+
+    // must be called while holding a lock
+    private long[] neighbours(Relation relation, long userId) {
+        int slot = slotByUserId.get(userId);
+        return slot < 0 ? null : adjacency[relation.ordinal()][slot];
+    }
+
+    // must be called while holding the write lock
+    private void add(Relation relation, long userId, long otherUserId) {
+        int slot = slotFor(userId);
+        long[][] lists = adjacency[relation.ordinal()];
+        lists[slot] = insert(lists[slot], otherUserId);
+    }
+
+    // must be called while holding the write lock
+    private void remove(Relation relation, long userId, long otherUserId) {
+        int slot = slotByUserId.get(userId);
+        if (slot >= 0) {
+            long[][] lists = adjacency[relation.ordinal()];
+            lists[slot] = delete(lists[slot], otherUserId);
+        }
+    }
+
+    // must be called while holding the write lock
+    private int slotFor(long userId) {
+        int slot = slotByUserId.get(userId);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (slotCount == adjacency[0].length) {
+            for (int relation = 0; relation < adjacency.length; relation++) {
+                adjacency[relation] = Arrays.copyOf(adjacency[relation], slotCount * 2);
+            }
+        }
+        int newSlot = slotCount++;
+        slotByUserId.put(userId, newSlot);
+        return newSlot;
+    }
+
+    static long[] insert(long[] sorted, long value) {
+        if (sorted == null) {
+            return new long[]{value};
+        }
+        int index = Arrays.binarySearch(sorted, value);
+        if (index >= 0) {
+            return sorted;
+        }
+        int at = -index - 1;
+        long[] grown = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(sorted, at, grown, at + 1, sorted.length - at);
+        return grown;
+    }
+
+    static long[] delete(long[] sorted, long value) {
+        if (sorted == null) {
+            return null;
+        }
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return sorted;
+        }
+        if (sorted.length == 1) {
+            return null;
+        }
+        long[] shrunk = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, shrunk, 0, index);
+        System.arraycopy(sorted, index + 1, shrunk, index, sorted.length - index - 1);
+        return shrunk;
+    }
+
+    static long[] union(long[] sorted1, long[] sorted2) {
+        if (sorted1 == null) {
+            return sorted2 == null ? NONE : sorted2.clone();
+        }
+        if (sorted2 == null) {
+            return sorted1.clone();
+        }
+        long[] merged = new long[sorted1.length + sorted2.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < sorted1.length || j < sorted2.length) {
+            long next;
+            if (j == sorted2.length || (i < sorted1.length && sorted1[i] < sorted2[j])) {
+                next = sorted1[i++];
+            } else if (i == sorted1.length || sorted2[j] < sorted1[i]) {
+                next = sorted2[j++];
+            } else {
+                next = sorted1[i++];
+                j++;
+            }
+            merged[count++] = next;
+        }
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * Open addressing map from user id to slot, so that lookups do not box the id.
+     * Not thread-safe, guarded by the graph's lock.
+     */
+    static final class SlotMap {
+        private long[] keys = new long[2048];
+        // slot + 1, 0 marks a free entry
+        private int[] values = new int[2048];
+        private int size = 0;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                if (values[i] == 0) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return values[i] - 1;
+                }
+            }
+        }
+
+        void put(long key, int slot) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                if (values[i] == 0) {
+                    keys[i] = key;
+                    values[i] = slot + 1;
+                    size++;
+                    return;
+                }
+                if (keys[i] == key) {
+                    values[i] = slot + 1;
+                    return;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    put(oldKeys[i], oldValues[i] - 1);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
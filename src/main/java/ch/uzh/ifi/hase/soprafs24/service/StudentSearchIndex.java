@@ -0,0 +1,246 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.entity.UserCourse;
+import ch.uzh.ifi.hase.soprafs24.repository.UserCourseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index for the student search (/students).
+ *
+ * Maps every course id and every availability to the set of user ids having
+ * it, stored as a BitSet indexed by user id. AND/OR filters then become
+ * intersections and unions of those sets, and the result is paged in user id
+ * order by walking the set bits.
+ *
+ * The index is built once at startup and afterwards kept up to date by
+ * UserService (registration, course assignment, profile update, deletion),
+ * applied once the surrounding transaction has committed. The admin account
+ * is never indexed.
+ */
+@Component
+public class StudentSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(StudentSearchIndex.class);
+    private static final String ADMIN_EMAIL = "admin@example.com";
+    private static final long[] NO_COURSES = new long[0];
+
+    private final UserRepository userRepository;
+    private final UserCourseRepository userCourseRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BitSet allUsers = new BitSet();
+    private final Map<Long, BitSet> usersByCourse = new HashMap<>();
+    private final Map<UserAvailability, BitSet> usersByAvailability = new EnumMap<>(UserAvailability.class);
+    // what is currently indexed per user, so a re-index can clear the old bits
+    private final Map<Integer, long[]> coursesByUser = new HashMap<>();
+    private final Map<Integer, UserAvailability> availabilityByUser = new HashMap<>();
+    private volatile boolean loaded = false;
+
+    public StudentSearchIndex(UserRepository userRepository, UserCourseRepository userCourseRepository) {
+        this.userRepository = userRepository;
+        this.userCourseRepository = userCourseRepository;
+    }
+
+    /**
+     * Returns the ids of all users matching the filters as a new BitSet.
+     *
+     * @param courseIds    courses to filter by, or null/empty for no course filter
+     * @param matchAny     if true a user needs one of the courses, otherwise all of them
+     * @param availability availabilities to filter by (any of them), or null/empty for no filter
+     */
+    public BitSet search(Collection<Long> courseIds, boolean matchAny, Collection<UserAvailability> availability) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            BitSet result = (BitSet) allUsers.clone();
+
+            if (courseIds != null && !courseIds.isEmpty()) {
+                BitSet courseMatches = matchAny ? new BitSet() : null;
+                for (Long courseId : courseIds) {
+                    BitSet users = usersByCourse.getOrDefault(courseId, new BitSet());
+                    if (matchAny) {
+                        courseMatches.or(users);
+                    } else {
+                        result.and(users);
+                    }
+                }
+                if (matchAny) {
+                    result.and(courseMatches);
+                }
+            }
+
+            if (availability != null && !availability.isEmpty()) {
+                BitSet availabilityMatches = new BitSet();
+                for (UserAvailability value : availability) {
+                    BitSet users = usersByAvailability.get(value);
+                    if (users != null) {
+                        availabilityMatches.or(users);
+                    }
+                }
+                result.and(availabilityMatches);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the user ids at positions [offset, offset + limit) of the given result, in id order.
+     */
+    public static List<Long> page(BitSet result, long offset, int limit) {
+        List<Long> ids = new ArrayList<>(Math.min(limit, 256));
+        int id = result.nextSetBit(0);
+        for (long skipped = 0; id >= 0 && skipped < offset; skipped++) {
+            id = result.nextSetBit(id + 1);
+        }
+        while (id >= 0 && ids.size() < limit) {
+            ids.add((long) id);
+            id = result.nextSetBit(id + 1);
+        }
+        return ids;
+    }
+
+    // (re-)indexes the availability and courses of a user, e.g. after registration or a profile update
+    public void indexUser(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        int id = Math.toIntExact(user.getId());
+        boolean admin = ADMIN_EMAIL.equalsIgnoreCase(user.getEmail());
+        UserAvailability availability = user.getAvailability();
+        List<Long> courseIds = new ArrayList<>();
+        if (user.getUserCourses() != null) {
+            for (UserCourse userCourse : user.getUserCourses()) {
+                if (userCourse.getCourse() != null && userCourse.getCourse().getId() != null) {
+                    courseIds.add(userCourse.getCourse().getId());
+                }
+            }
+        }
+        afterCommit(() -> {
+            clear(id);
+            if (!admin) {
+                add(id, availability, courseIds.stream().mapToLong(Long::longValue).toArray());
+            }
+        });
+    }
+
+    public void removeUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        afterCommit(() -> clear(Math.toIntExact(userId)));
+    }
+
+    // build the index at startup so that no write happening before the first read is missed
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            Map<Integer, List<Long>> coursesById = new HashMap<>();
+            for (Object[] row : userCourseRepository.findAllCourseLevels()) {
+                coursesById.computeIfAbsent(Math.toIntExact((Long) row[0]), id -> new ArrayList<>()).add((Long) row[1]);
+            }
+            for (Object[] row : userRepository.findStudentSearchRows()) {
+                if (ADMIN_EMAIL.equalsIgnoreCase((String) row[2])) {
+                    continue;
+                }
+                int id = Math.toIntExact((Long) row[0]);
+                long[] courseIds = coursesById.getOrDefault(id, List.of()).stream()
+                        .mapToLong(Long::longValue).toArray();
+                add(id, (UserAvailability) row[1], courseIds);
+            }
+            loaded = true;
+            log.info("Student search index built with {} users and {} courses",
+                    allUsers.cardinality(), usersByCourse.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // applied once the surrounding transaction committed, so a rollback never reaches the index;
+    // writes that happen before the index is loaded are part of what it loads
+    private void afterCommit(Runnable change) {
+        Runnable locked = () -> {
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    change.run();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            locked.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                locked.run();
+            }
+        });
+    }
+
+    // must be called while holding the write lock
+    private void add(int id, UserAvailability availability, long[] courseIds) {
+        allUsers.set(id);
+        if (availability != null) {
+            usersByAvailability.computeIfAbsent(availability, a -> new BitSet()).set(id);
+            availabilityByUser.put(id, availability);
+        }
+        for (long courseId : courseIds) {
+            usersByCourse.computeIfAbsent(courseId, c -> new BitSet()).set(id);
+        }
+        if (courseIds.length > 0) {
+            coursesByUser.put(id, courseIds);
+        }
+    }
+
+    // must be called while holding the write lock
+    private void clear(int id) {
+        allUsers.clear(id);
+        UserAvailability availability = availabilityByUser.remove(id);
+        if (availability != null) {
+            usersByAvailability.get(availability).clear(id);
+        }
+        for (long courseId : coursesByUser.getOrDefault(id, NO_COURSES)) {
+            BitSet users = usersByCourse.get(courseId);
+            if (users != null) {
+                users.clear(id);
+            }
+        }
+        coursesByUser.remove(id);
+    }
+}
@@ -0,0 +1,80 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of primitive long keys that keeps the k largest keys offered.
+ * Used by the DiscoveryIndex ranking so that scoring does not box a value per candidate.
+ */
+final class TopKHeap {
+
+    private final long[] keys;
+    private int size = 0;
+
+    TopKHeap(int k) {
+        this.keys = new long[Math.max(0, k)];
+    }
+
+    void offer(long key) {
+        if (size < keys.length) {
+            keys[size] = key;
+            siftUp(size++);
+        } else if (size > 0 && key > keys[0]) {
+            keys[0] = key;
+            siftDown(0);
+        }
+    }
+
+    void addAll(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.keys[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // returns the kept keys, largest first
+    long[] toSortedDescending() {
+        long[] sorted = Arrays.copyOf(keys, size);
+        Arrays.sort(sorted);
+        for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+            long tmp = sorted[i];
+            sorted[i] = sorted[j];
+            sorted[j] = tmp;
+        }
+        return sorted;
+    }
+
+    private void siftUp(int index) {
+        long key = keys[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[index] = keys[parent];
+            index = parent;
+        }
+        keys[index] = key;
+    }
+
+    private void siftDown(int index) {
+        long key = keys[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            keys[index] = keys[child];
+            index = child;
+        }
+        keys[index] = key;
+    }
+}
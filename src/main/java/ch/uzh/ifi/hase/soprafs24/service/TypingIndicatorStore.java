@@ -0,0 +1,148 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ephemeral, in-memory store of who is currently typing in which chat channel.
+ *
+ * Typing indicators are refreshed on every keystroke burst and are worthless a
+ * few seconds later, so they are never written to the database. An entry
+ * expires after the configured time-to-live unless the client refreshes it;
+ * expired entries are ignored on read and purged periodically.
+ *
+ * Clients that do not send a channel id are tracked under NO_CHANNEL.
+ */
+@Component
+public class TypingIndicatorStore {
+
+    public static final long NO_CHANNEL = 0L;
+
+    private final long ttlNanos;
+    // channelId -> userId -> expiry (System.nanoTime based)
+    private final Map<Long, Map<Long, Long>> typingByChannel = new ConcurrentHashMap<>();
+    // userId -> channelId -> expiry, so that a single user can be looked up without scanning channels
+    private final Map<Long, Map<Long, Long>> typingByUser = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService purger;
+
+    public TypingIndicatorStore(@Value("${chat.typing.ttl-seconds:5}") long ttlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "typing-indicator-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ttlSeconds);
+        purger.scheduleAtFixedRate(this::purgeExpired, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Marks the user as typing (or no longer typing) in the channel.
+     *
+     * @return true if the visible state changed, i.e. the user started or stopped typing
+     */
+    public boolean update(Long channelId, Long userId, boolean typing) {
+        Long channel = channelId == null ? NO_CHANNEL : channelId;
+        long now = System.nanoTime();
+        Long previous;
+        if (typing) {
+            long expiresAt = now + ttlNanos;
+            previous = putEntry(typingByChannel, channel, userId, expiresAt);
+            putEntry(typingByUser, userId, channel, expiresAt);
+        } else {
+            previous = removeEntry(typingByChannel, channel, userId);
+            removeEntry(typingByUser, userId, channel);
+        }
+        boolean wasTyping = previous != null && previous - now > 0;
+        return wasTyping != typing;
+    }
+
+    // true if the user is typing in any channel
+    public boolean isTyping(Long userId) {
+        Map<Long, Long> channels = typingByUser.get(userId);
+        if (channels == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        for (Long expiresAt : channels.values()) {
+            if (expiresAt - now > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Long> getTypingUserIds(Long channelId) {
+        Map<Long, Long> users = typingByChannel.get(channelId == null ? NO_CHANNEL : channelId);
+        List<Long> typing = new ArrayList<>();
+        if (users == null) {
+            return typing;
+        }
+        long now = System.nanoTime();
+        users.forEach((userId, expiresAt) -> {
+            if (expiresAt - now > 0) {
+                typing.add(userId);
+            }
+        });
+        return typing;
+    }
+
+    // forgets a user entirely, e.g. after the account was deleted
+    public void removeUser(Long userId) {
+        Map<Long, Long> channels = typingByUser.remove(userId);
+        if (channels != null) {
+            for (Long channelId : channels.keySet()) {
+                removeEntry(typingByChannel, channelId, userId);
+            }
+        }
+    }
+
+    void purgeExpired() {
+        long now = System.nanoTime();
+        purge(typingByChannel, now);
+        purge(typingByUser, now);
+    }
+
+    private static void purge(Map<Long, Map<Long, Long>> index, long now) {
+        for (Long key : index.keySet()) {
+            index.computeIfPresent(key, (k, entries) -> {
+                entries.values().removeIf(expiresAt -> expiresAt - now <= 0);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+    }
+
+    // compute() keeps the put atomic with respect to a purge dropping the inner map
+    private static Long putEntry(Map<Long, Map<Long, Long>> index, Long key, Long innerKey, long expiresAt) {
+        Long[] previous = new Long[1];
+        index.compute(key, (k, entries) -> {
+            Map<Long, Long> target = entries == null ? new ConcurrentHashMap<>() : entries;
+            previous[0] = target.put(innerKey, expiresAt);
+            return target;
+        });
+        return previous[0];
+    }
+
+    private static Long removeEntry(Map<Long, Map<Long, Long>> index, Long key, Long innerKey) {
+        Long[] removed = new Long[1];
+        index.computeIfPresent(key, (k, entries) -> {
+            removed[0] = entries.remove(innerKey);
+            return entries.isEmpty() ? null : entries;
+        });
+        return removed[0];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purger.shutdownNow();
+    }
+}
@@ -0,0 +1,71 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of unread notifications per user, so that the badge of a client does
+ * not need a list query.
+ *
+ * NotificationService sets a user's counter whenever it has counted the unread
+ * notifications anyway and adjusts it after every committed change. Users
+ * without a counter are counted in the database once. UserService evicts the
+ * counter of a deleted account.
+ *
+ * Every add bumps a per-user generation, also when the user has no counter yet.
+ * A count read from the database is only kept by setIfUnchanged if no change
+ * was committed while it was counted, otherwise that change could be lost.
+ */
+@Component
+public class UnreadNotificationCounter {
+
+    private final Map<Long, AtomicLong> unreadByUser = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> generationByUser = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cached count, or null if the user has no counter yet
+     */
+    public Long get(Long userId) {
+        AtomicLong counter = unreadByUser.get(userId);
+        return counter == null ? null : counter.get();
+    }
+
+    // read before counting in the database, passed to setIfUnchanged afterwards
+    public long generation(Long userId) {
+        AtomicLong generation = generationByUser.get(userId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    // for counts that are known to be current, e.g. after all notifications were marked read
+    public void set(Long userId, long unread) {
+        unreadByUser.put(userId, new AtomicLong(Math.max(0, unread)));
+    }
+
+    // keeps a counted value unless an add ran since generation(userId) returned the given generation
+    public void setIfUnchanged(Long userId, long unread, long generation) {
+        if (generation(userId) != generation) {
+            return;
+        }
+        AtomicLong counter = new AtomicLong(Math.max(0, unread));
+        unreadByUser.put(userId, counter);
+        // re-checked after the put, an add may have missed the counter in between
+        if (generation(userId) != generation) {
+            unreadByUser.remove(userId, counter);
+        }
+    }
+
+    // adds delta to an existing counter; a user without one is counted when next asked
+    public Long add(Long userId, long delta) {
+        generationByUser.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+        AtomicLong counter = unreadByUser.get(userId);
+        return counter == null ? null : counter.updateAndGet(value -> Math.max(0, value + delta));
+    }
+
+    public void evict(Long userId) {
+        unreadByUser.remove(userId);
+        generationByUser.remove(userId);
+    }
+}
@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the online status of users, so that high-frequency
+ * endpoints like the typing indicator do not need to load the user.
+ *
+ * UserService writes through on registration, login and logout; a user not
+ * present yet is loaded once by the caller and then put here.
+ */
+@Component
+public class UserPresenceCache {
+
+    private final Map<Long, UserStatus> statusByUser = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cached status, or null if the user is not cached
+     */
+    public UserStatus get(Long userId) {
+        return userId == null ? null : statusByUser.get(userId);
+    }
+
+    public void put(Long userId, UserStatus status) {
+        if (userId != null && status != null) {
+            statusByUser.put(userId, status);
+        }
+    }
+
+    public void evict(Long userId) {
+        if (userId != null) {
+            statusByUser.remove(userId);
+        }
+    }
+}
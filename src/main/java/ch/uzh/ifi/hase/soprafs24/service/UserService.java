@@ -1,39 +1,59 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ProfileKnowledgeLevel;
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.entity.UserCourse;
-import ch.uzh.ifi.hase.soprafs24.entity.Block;
 import ch.uzh.ifi.hase.soprafs24.entity.ChatChannel;
 import ch.uzh.ifi.hase.soprafs24.entity.Course;
-import ch.uzh.ifi.hase.soprafs24.entity.Match;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.CourseSelectionDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSummaryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.MessageRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.ProfileRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.ReportRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.StudyPlanRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserCourseRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.ChatChannelRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.CourseRepository;
 
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.stream.Stream;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -56,6 +76,7 @@ public class UserService {
 
   private static final String BEARER_PREFIX = "Bearer ";
   private static final String USER_NOT_FOUND = "User not found";
+  private static final String ADMIN_EMAIL = "admin@example.com";
 
   private final UserRepository userRepository;
   private final MatchRepository matchRepository;
@@ -67,8 +88,16 @@ public class UserService {
   private final ChatChannelRepository chatChannelRepository;
   private final StudyPlanRepository studyPlanRepository;
   private final ProfileRepository profileRepository;
-  private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+  private final PasswordHasher passwordHasher;
   private final ChatService chatService;
+  private final TokenCache tokenCache;
+  private final DiscoveryIndex discoveryIndex;
+  private final StudentSearchIndex studentSearchIndex;
+  private final ImageStore imageStore;
+  private final UserPresenceCache userPresenceCache;
+  private final SocialGraph socialGraph;
+  private final UnreadNotificationCounter unreadNotificationCounter;
+  private final TransactionTemplate transactionTemplate;
 
   @Autowired
   public UserService(UserRepository userRepository,
@@ -81,7 +110,16 @@ public class UserService {
                      ChatChannelRepository chatChannelRepository,
                      StudyPlanRepository studyPlanRepository,
                      ProfileRepository profileRepository,
-                     ChatService chatService) {
+                     ChatService chatService,
+                     TokenCache tokenCache,
+                     DiscoveryIndex discoveryIndex,
+                     StudentSearchIndex studentSearchIndex,
+                     ImageStore imageStore,
+                     UserPresenceCache userPresenceCache,
+                     SocialGraph socialGraph,
+                     PasswordHasher passwordHasher,
+                     UnreadNotificationCounter unreadNotificationCounter,
+                     PlatformTransactionManager transactionManager) {
     this.userRepository = userRepository;
     this.matchRepository = matchRepository;
     this.courseRepository = courseRepository;
@@ -93,24 +131,160 @@ public class UserService {
     this.studyPlanRepository = studyPlanRepository;
     this.profileRepository = profileRepository;
     this.chatService = chatService;
+    this.tokenCache = tokenCache;
+    this.discoveryIndex = discoveryIndex;
+    this.studentSearchIndex = studentSearchIndex;
+    this.imageStore = imageStore;
+    this.userPresenceCache = userPresenceCache;
+    this.socialGraph = socialGraph;
+    this.passwordHasher = passwordHasher;
+    this.unreadNotificationCounter = unreadNotificationCounter;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  // ids in ascending order, from the in-memory SocialGraph
+  public long[] getBlockedOrBlockingUserIds(Long userId) {
+    return socialGraph.getBlockedOrBlocking(userId);
   }
 
-  public List<Long> getBlockedOrBlockingUserIds(Long userId) {
-      List<Long> blocked = blockRepository.findByBlockerId(userId)
-          .stream().map(Block::getBlockedUserId).toList();
 
-      List<Long> blocking = blockRepository.findByBlockedUserId(userId)
-          .stream().map(Block::getBlockerId).toList();
+  /**
+   * Returns one page of the discovery deck of a user, best match first.
+   * Candidates come from the in-memory DiscoveryIndex, so blocked, matched and
+   * rejected users are already excluded and ranked by shared courses,
+   * knowledge level, availability and study level; only the page itself is loaded.
+   *
+   * @param currentUserId the user the deck is built for
+   * @param cursor position returned by the previous page, or null for the first page
+   * @param limit maximum number of users to return
+   */
+  public DiscoveryIndex.CandidatePage getDiscoverableUserIds(Long currentUserId, Long cursor, int limit) {
+    return discoveryIndex.getCandidates(currentUserId, cursor, limit);
+  }
+
+  /**
+   * Returns one page of the users that liked this user and got no answer yet
+   * ("who liked me"), in ascending id order, from the in-memory SocialGraph.
+   *
+   * @param cursor last user id of the previous page, or null for the first page
+   * @param limit maximum number of users to return
+   */
+  public SocialGraph.PendingLikesPage getPendingLikes(Long userId, Long cursor, int limit) {
+    return socialGraph.getPendingLikes(userId, cursor, limit);
+  }
+
+  public int countPendingLikes(Long userId) {
+    return socialGraph.countPendingLikes(userId);
+  }
+
+  /**
+   * Returns one page of student ids matching the /students filters, evaluated
+   * on the in-memory StudentSearchIndex. The admin account is never part of the result.
+   *
+   * @param courseIds courses to filter by, or null/empty for no course filter
+   * @param availability availabilities to filter by (any of them), or null/empty for no filter
+   * @param matchAny if true a student needs one of the courses, otherwise all of them
+   */
+  public Page<Long> getFilteredStudentIds(List<Long> courseIds, List<UserAvailability> availability,
+                                          boolean matchAny, Pageable pageable) {
+    BitSet matches = studentSearchIndex.search(courseIds, matchAny, availability);
+    List<Long> pageIds = StudentSearchIndex.page(matches, pageable.getOffset(), pageable.getPageSize());
+
+    // users removed without going through this service (e.g. directly via the repository)
+    // are still in the index; they are left out of the page, the index itself is only
+    // changed by the write paths
+    if (!pageIds.isEmpty()) {
+      Set<Long> existingIds = new HashSet<>(userRepository.findExistingIds(pageIds));
+      if (existingIds.size() < pageIds.size()) {
+        pageIds = pageIds.stream().filter(existingIds::contains).toList();
+      }
+    }
+    return new PageImpl<>(pageIds, pageable, matches.cardinality());
+  }
 
-      return Stream.concat(blocked.stream(), blocking.stream())
-          .distinct()
-          .toList();
+  /**
+   * Returns the summaries of all users, without their profile pictures.
+   */
+  public List<UserSummaryGetDTO> getUserSummaries() {
+    return toSummaryDTOs(userRepository.findAllSummaries());
   }
 
+  /**
+   * Returns the summaries of the given users, keeping the order of the id list.
+   * Ids of users that no longer exist are skipped.
+   */
+  public List<UserSummaryGetDTO> getUserSummariesByIds(List<Long> userIds) {
+    if (userIds.isEmpty()) {
+      return List.of();
+    }
+    Map<Long, UserSummary> summariesById = new HashMap<>();
+    for (UserSummary summary : userRepository.findSummariesByIdIn(userIds)) {
+      summariesById.put(summary.getId(), summary);
+    }
+    List<UserSummary> summaries = new ArrayList<>();
+    for (Long userId : userIds) {
+      UserSummary summary = summariesById.get(userId);
+      if (summary != null) {
+        summaries.add(summary);
+      }
+    }
+    return toSummaryDTOs(summaries);
+  }
 
-  public List<User> getDiscoverableUsers(Long currentUserId) {
-    List<Long> excludedUserIds = getBlockedOrBlockingUserIds(currentUserId);
-    return userRepository.findDiscoverableUsers(currentUserId, excludedUserIds);
+  /**
+   * Returns the stored profile picture of a user (base64, optionally as data URL).
+   *
+   * @throws ResponseStatusException if the user has no profile picture
+   */
+  public String getProfilePicture(Long userId) {
+    String picture = userRepository.findProfilePictureById(userId);
+    if (picture == null || picture.isBlank()) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No profile picture for user " + userId);
+    }
+    return picture;
+  }
+
+  public String getProfilePictureHash(Long userId) {
+    return userRepository.findProfilePictureHashById(userId);
+  }
+
+  // the user row keeps only the hash of the picture, the image itself goes to the ImageStore
+  private void moveProfilePictureToImageStore(User user) {
+    String picture = user.getProfilePicture();
+    if (picture == null || picture.isBlank()) {
+      return;
+    }
+    String hash;
+    try {
+      hash = imageStore.storeBase64(picture);
+    } catch (UncheckedIOException e) {
+      // keep the picture in the database, it is served from there until a later update stores it
+      log.warn("Could not move the profile picture of user {} to the image store", user.getId(), e);
+      user.setProfilePictureHash(null);
+      return;
+    }
+    user.setProfilePictureHash(hash);
+    user.setProfilePicture(null);
+  }
+
+  // the courses of all summaries are loaded with one query
+  private List<UserSummaryGetDTO> toSummaryDTOs(List<UserSummary> summaries) {
+    if (summaries.isEmpty()) {
+      return List.of();
+    }
+    List<Long> userIds = summaries.stream().map(UserSummary::getId).toList();
+    Map<Long, List<UserGetDTO.UserCourseDTO>> coursesByUserId = new HashMap<>();
+    for (Object[] row : userCourseRepository.findCourseRowsByUserIds(userIds)) {
+      UserGetDTO.UserCourseDTO course = new UserGetDTO.UserCourseDTO();
+      course.setCourseId((Long) row[1]);
+      course.setCourseName((String) row[2]);
+      course.setKnowledgeLevel((ProfileKnowledgeLevel) row[3]);
+      coursesByUserId.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(course);
+    }
+    return summaries.stream()
+        .map(summary -> DTOMapper.INSTANCE.convertUserSummaryToDTO(summary,
+            coursesByUserId.getOrDefault(summary.getId(), new ArrayList<>())))
+        .toList();
   }
 
   
@@ -119,25 +293,27 @@ public class UserService {
     return this.userRepository.findAll();
   }
 
+  // Hashing runs before the transaction is opened, so a request waiting for the
+  // hashing pool does not hold a database connection
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public User createUser(User newUser, List<CourseSelectionDTO> courseSelections) {
     // Validate input: email and password must not be empty
     validateRegistrationInput(newUser);
 
     
     //Check if email already exists
-    if (userRepository.existsByEmail(newUser.getEmail())) {
-      throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already exists. Please choose another email.");
-    }
+    checkEmailIsFree(newUser.getEmail());
     
 
-    // Hash password
-    String hashedPassword = passwordEncoder.encode(newUser.getPassword());
+    // Hash password, on the hashing pool; 503 if it is overloaded
+    String hashedPassword = passwordHasher.hash(newUser.getPassword());
     newUser.setPassword(hashedPassword);
 
     // Set creation date, token and status
     newUser.setToken(UUID.randomUUID().toString());
     newUser.setStatus(UserStatus.ONLINE);
     newUser.setCreationDate(LocalDateTime.now());
+    moveProfilePictureToImageStore(newUser);
     
   
     if (newUser.getUserCourses() != null) {
@@ -146,17 +322,32 @@ public class UserService {
       }
   }
 
-    // Save user
-    newUser = userRepository.save(newUser);
-    userRepository.flush();
+    User createdUser = transactionTemplate.execute(status -> {
+      // the email may have been taken while the password was hashed
+      checkEmailIsFree(newUser.getEmail());
+
+      // Save user
+      User savedUser = userRepository.save(newUser);
+      userRepository.flush();
+      userPresenceCache.put(savedUser.getId(), savedUser.getStatus());
 //////---------------------------------------------
-    // Mapping with User and courseSelections
-    if (courseSelections != null && !courseSelections.isEmpty()) {
-      assignCoursesWithKnowledgeLevels(newUser, courseSelections);
+      // Mapping with User and courseSelections
+      if (courseSelections != null && !courseSelections.isEmpty()) {
+        assignCoursesWithKnowledgeLevels(savedUser, courseSelections);
+      }
+      discoveryIndex.addUser(savedUser);
+      studentSearchIndex.indexUser(savedUser);
+      return savedUser;
+    });
+
+    log.debug("Created Information for User: {}", createdUser);
+    return createdUser;
   }
 
-    log.debug("Created Information for User: {}", newUser);
-    return newUser;
+  private void checkEmailIsFree(String email) {
+    if (userRepository.existsByEmail(email)) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already exists. Please choose another email.");
+    }
   }
   
   /**
@@ -198,6 +389,7 @@ public class UserService {
    * @return the logged in user
    * @throws ResponseStatusException if login fails
    */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public User loginUser(String email, String password) {
     // Find user by email
     User user = userRepository.findByEmail(email);
@@ -207,19 +399,39 @@ public class UserService {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Email not found. Please register first.");
     }
 
-    if (!passwordEncoder.matches(password, user.getPassword())) {
+    // Verified outside of a transaction, like the hashing in createUser
+    String verifiedHash = user.getPassword();
+    if (!passwordHasher.matches(password, verifiedHash)) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid email or password. Please try again.");
     }
-    
-    // Set user status to online and generate a new token
-    user.setStatus(UserStatus.ONLINE);
-    user.setToken(UUID.randomUUID().toString());
-    
-    // Save updated user
-    user = userRepository.save(user);
-    userRepository.flush();
-    
-    return user;
+
+    // The BCrypt strength was changed since this hash was made; the password is known now, so replace it
+    String newHash = passwordHasher.needsRehash(verifiedHash) ? passwordHasher.hash(password) : null;
+
+    return transactionTemplate.execute(status -> {
+      // reload, and reject the login if the password was changed after it was verified
+      User current = userRepository.findByEmail(email);
+      if (current == null || !Objects.equals(current.getPassword(), verifiedHash)) {
+        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid email or password. Please try again.");
+      }
+      if (newHash != null) {
+        current.setPassword(newHash);
+      }
+
+      // The previous token is replaced below, so it must not stay valid in the cache
+      evictToken(current.getToken());
+
+      // Set user status to online and generate a new token
+      current.setStatus(UserStatus.ONLINE);
+      current.setToken(UUID.randomUUID().toString());
+
+      // Save updated user
+      current = userRepository.save(current);
+      userRepository.flush();
+      userPresenceCache.put(current.getId(), UserStatus.ONLINE);
+
+      return current;
+    });
   }
   
   /**
@@ -235,6 +447,8 @@ public class UserService {
     user.setStatus(UserStatus.OFFLINE);
     userRepository.save(user);
     userRepository.flush();
+    evictUserTokens(userId);
+    userPresenceCache.put(userId, UserStatus.OFFLINE);
   }
   
   /**
@@ -257,18 +471,10 @@ public class UserService {
     return user.getMatchIds();
   }
   
-  public Set<Long> getAcceptedMatchPartnerIds(Long userId) {
-    List<Match> acceptedMatches = matchRepository.findAcceptedMatchesByUserId(userId);
-    Set<Long> partnerIds = new HashSet<>();
-    for (Match match : acceptedMatches) {
-        if (Objects.equals(match.getUserId1(), userId)) {
-          partnerIds.add(match.getUserId2());
-      } else {
-          partnerIds.add(match.getUserId1());
-      }
-    }
-    return partnerIds;
-}
+  // ids in ascending order, from the in-memory SocialGraph
+  public long[] getAcceptedMatchPartnerIds(Long userId) {
+    return socialGraph.get(SocialGraph.Relation.MATCHED, userId);
+  }
 
   /**
    * Authenticates a request based on token
@@ -282,14 +488,8 @@ public class UserService {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "No authentication token provided");
     }
     
-    // Clean the token (remove "Bearer " prefix if exists)
-    if (token.startsWith(BEARER_PREFIX)) {
-      token = token.substring(7);
-    }
-    
     // Check if token is valid
-    boolean tokenExists = userRepository.existsByToken(token);
-    if (!tokenExists) {
+    if (resolvePrincipal(token) == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid authentication token");
     }
   }
@@ -306,13 +506,87 @@ public class UserService {
       return null;
     }
     
-    // Clean the token (remove "Bearer " prefix if exists)
-    if (token.startsWith(BEARER_PREFIX)) {
-      token = token.substring(7);
+    token = stripBearerPrefix(token);
+
+    // A known principal lets us load the user by primary key instead of by token
+    UserPrincipal known = getRequestPrincipal(token);
+    if (known == null) {
+      known = tokenCache.get(token);
     }
-    
+    if (known != null) {
+      User user = userRepository.findById(known.getId()).orElse(null);
+      // the cached entry may be older than a login or logout that replaced the token
+      if (user != null && token.equals(user.getToken())) {
+        return user;
+      }
+      tokenCache.evict(token);
+      return null;
+    }
+
     // Find user by token
-    return userRepository.findByToken(token);
+    User user = userRepository.findByToken(token);
+    if (user != null) {
+      tokenCache.put(token, toPrincipal(user));
+    }
+    return user;
+  }
+
+  /**
+   * Resolves a token to its principal.
+   * The principal already authenticated for the current request is used first,
+   * then the token cache, and only then the database.
+   *
+   * @param token the auth token, with or without "Bearer " prefix
+   * @return the principal owning this token, or null if the token is unknown
+   */
+  public UserPrincipal resolvePrincipal(String token) {
+    if (token == null || token.isEmpty()) {
+      return null;
+    }
+    token = stripBearerPrefix(token);
+
+    UserPrincipal principal = getRequestPrincipal(token);
+    if (principal != null) {
+      return principal;
+    }
+
+    principal = tokenCache.get(token);
+    if (principal != null) {
+      return principal;
+    }
+
+    User user = userRepository.findByToken(token);
+    if (user == null) {
+      return null;
+    }
+    principal = toPrincipal(user);
+    tokenCache.put(token, principal);
+    return principal;
+  }
+
+  /**
+   * Returns the principal set by TokenAuthenticationFilter for the current request,
+   * provided it was authenticated with the given token.
+   */
+  private UserPrincipal getRequestPrincipal(String token) {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication != null
+        && authentication.getPrincipal() instanceof UserPrincipal principal
+        && token.equals(authentication.getCredentials())) {
+      return principal;
+    }
+    return null;
+  }
+
+  private UserPrincipal toPrincipal(User user) {
+    return new UserPrincipal(user.getId(), user.getEmail(), ADMIN_EMAIL.equals(user.getEmail()), user.getStatus());
+  }
+
+  private String stripBearerPrefix(String token) {
+    if (token != null && token.startsWith(BEARER_PREFIX)) {
+      return token.substring(BEARER_PREFIX.length());
+    }
+    return token;
   }
   
   /**
@@ -323,13 +597,8 @@ public class UserService {
    * @throws ResponseStatusException if the token owner is not authorized
    */
   public void checkAuthorizationById(String token, Long userId) {
-    // Clean the token (remove "Bearer " prefix if exists)
-    if (token != null && token.startsWith(BEARER_PREFIX)) {
-      token = token.substring(7);
-    }
-    
-    // Find user by token
-    User tokenOwner = userRepository.findByToken(token);
+    // Find the token owner
+    UserPrincipal tokenOwner = resolvePrincipal(token);
     if (tokenOwner == null) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid authentication token");
     }
@@ -354,7 +623,12 @@ public class UserService {
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one course must be selected.");
     }
 
-    return userRepository.saveAndFlush(updatedUser);
+    moveProfilePictureToImageStore(updatedUser);
+    User savedUser = userRepository.saveAndFlush(updatedUser);
+    discoveryIndex.updateProfile(savedUser);
+    studentSearchIndex.indexUser(savedUser);
+    chatService.onProfileUpdated(userId);
+    return savedUser;
   }
 
   
@@ -387,6 +661,8 @@ public class UserService {
     user.setToken(null);
     userRepository.save(user);
     userRepository.flush();
+    evictToken(token);
+    userPresenceCache.put(user.getId(), UserStatus.OFFLINE);
   
     log.info(">>> Status set to OFFLINE and token cleared for: {}", user.getEmail());
   }
@@ -409,6 +685,7 @@ public class UserService {
     // add for mapping usercourse list
     user.getUserCourses().addAll(userCourses);
     userCourseRepository.saveAll(userCourses);
+    studentSearchIndex.indexUser(user);
 }
 
   /**
@@ -426,27 +703,6 @@ public class UserService {
       deleteUser(user); 
     } 
 
-  /**
-   * Deletes the currently authenticated user's account and all associated data.
-   * 
-   * This method is used by the user to delete **their own account** based on their authentication token.
-   * It performs full cleanup of all associated user data.
-    * @param token the Bearer authentication token of the user
-    * @throws ResponseStatusException if the token is invalid or the user is not found
-    */
-    public void deleteUserByToken(String token) {
-      if (token != null && token.startsWith(BEARER_PREFIX)) {
-          token = token.substring(7);
-      }
-
-      User user = userRepository.findByToken(token);
-      if (user == null) {
-          throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token.");
-      }
-
-      deleteUser(user);
-    }
-
   /**
    * Performs the actual deletion logic for a given user entity.
    *
@@ -471,24 +727,34 @@ public class UserService {
 
       userRepository.delete(user);
       userRepository.flush();
+      evictUserTokens(userId);
+      unreadNotificationCounter.evict(userId);
+      discoveryIndex.removeUser(userId);
+      studentSearchIndex.removeUser(userId);
+      socialGraph.removeUser(userId);
     }
 
-  /**
-   * Checks whether the given authentication token belongs to the administrator.
-   *
-   * @param token the Bearer authentication token from the Authorization header
-   * @return true if the token belongs to the admin account, false otherwise
-   * @throws ResponseStatusException if the token is invalid or user not found
-   */public boolean isAdmin(String token) {
-      if (token != null && token.startsWith(BEARER_PREFIX)) {
-          token = token.substring(7);
-      }
+  // Evicted now and once more after the commit: until then a concurrent request
+  // can still read the old row and put the revoked token back into the cache.
+  private void evictToken(String token) {
+    tokenCache.evict(token);
+    runAfterCommit(() -> tokenCache.evict(token));
+  }
 
-      User user = userRepository.findByToken(token);
-      if (user == null) {
-          throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token");
-      }
+  private void evictUserTokens(Long userId) {
+    tokenCache.evictUser(userId);
+    runAfterCommit(() -> tokenCache.evictUser(userId));
+  }
 
-      return "admin@example.com".equals(user.getEmail()); 
+  private static void runAfterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return;
     }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
 }
@@ -10,9 +10,12 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.CourseSelectionDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserLoginDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.security.ConnectionTicketStore;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 import ch.uzh.ifi.hase.soprafs24.service.CourseService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -20,6 +23,8 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -57,6 +62,9 @@ class RestApiSpecificationTest {
     @MockBean
     private CourseRepository courseRepository;
 
+    @MockBean
+    private ConnectionTicketStore connectionTicketStore;
+
     @Test
     void createUser_checkResponseHeaders() throws Exception {
         // mock return user
@@ -149,6 +157,18 @@ class RestApiSpecificationTest {
     }
 
 
+    // filters are disabled here, so the principal is put into the SecurityContext directly
+    private void authenticateAs(Long userId, boolean admin) {
+        UserPrincipal principal = new UserPrincipal(userId, "user@example.com", admin, UserStatus.ONLINE);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, "token123", Collections.emptyList()));
+    }
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
     @Test
     void getCurrentUser_validToken_returnsUser() throws Exception {
         User user = new User();
@@ -156,7 +176,8 @@ class RestApiSpecificationTest {
         user.setEmail("user@example.com");
         user.setToken("token123");
 
-        given(userService.getUserByToken("token123")).willReturn(user);
+        authenticateAs(1L, false);
+        given(userService.getUserById(1L)).willReturn(user);
 
         mockMvc.perform(get("/users/me")
                         .header("Authorization", "Bearer token123"))
@@ -165,9 +186,24 @@ class RestApiSpecificationTest {
     }
 
     @Test
-    void getCurrentUser_invalidToken_returnsUnauthorized() throws Exception {
-        given(userService.getUserByToken("invalidtoken")).willReturn(null);
+    void createConnectionTicket_exchangesTheCallersToken() throws Exception {
+        authenticateAs(1L, false);
+        when(connectionTicketStore.issue("token123")).thenReturn("ticket1");
+
+        mockMvc.perform(post("/users/me/ticket")
+                        .header("Authorization", "Bearer token123"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ticket", is("ticket1")));
+    }
 
+    @Test
+    void createConnectionTicket_unauthenticated_returnsUnauthorized() throws Exception {
+        mockMvc.perform(post("/users/me/ticket"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void getCurrentUser_invalidToken_returnsUnauthorized() throws Exception {
         mockMvc.perform(get("/users/me")
                         .header("Authorization", "Bearer invalidtoken"))
                 .andExpect(status().isUnauthorized());
@@ -175,9 +211,34 @@ class RestApiSpecificationTest {
 
     @Test
     void deleteMyAccount_validToken_returnsNoContent() throws Exception {
+        authenticateAs(1L, false);
+
         mockMvc.perform(delete("/users/me")
                         .header("Authorization", "Bearer token123"))
                 .andExpect(status().isNoContent());
+
+        verify(userService).deleteUserById(1L);
+    }
+
+    @Test
+    void getPendingLikes_ofAnotherUser_returnsForbidden() throws Exception {
+        authenticateAs(1L, false);
+
+        mockMvc.perform(get("/users/2/likes/pending")
+                        .header("Authorization", "Bearer token123"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/users/2/likes/pending/count")
+                        .header("Authorization", "Bearer token123"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void deleteUserByAdmin_notAdmin_returnsForbidden() throws Exception {
+        authenticateAs(1L, false);
+
+        mockMvc.perform(delete("/delete/2")
+                        .header("Authorization", "Bearer token123"))
+                .andExpect(status().isForbidden());
     }
 
 
@@ -295,5 +356,14 @@ class RestApiSpecificationTest {
         }
     }
 
-    
+    @Test
+    void getProfilePicture_dataUrl_returnsDecodedImageWithCacheHeaders() throws Exception {
+        when(userService.getProfilePicture(1L)).thenReturn("data:image/png;base64,aGVsbG8=");
+
+        mockMvc.perform(get("/users/1/profile-picture").param("v", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(content().bytes("hello".getBytes()))
+                .andExpect(header().string("Cache-Control", "public, max-age=31536000, immutable"));
+    }
 }
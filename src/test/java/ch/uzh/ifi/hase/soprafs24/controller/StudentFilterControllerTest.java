@@ -131,6 +131,26 @@ class StudentFilterControllerTest {
                 .andExpect(jsonPath("$[0].userCourses[0].courseId", is(javaCourse.getId().intValue())));
     }
 
+    /**
+    * Test: GET /students?courseIds={java}&courseIds={python}&matchAny=true&size=1
+    * Purpose: Verifies matchAny filtering is paged and reports the total number of matches.
+    * Scenario: Heidi (Java) and Ivan (Python) both match; the first page holds one of them.
+    */
+    @Test
+    void getStudents_matchAnyWithPageSize_returnsPageAndTotalCount() throws Exception {
+        registerUser("Heidi", "heidi@example.com", UserAvailability.MORNING, List.of(select(javaCourse.getId())));
+        registerUser("Ivan", "ivan@example.com", UserAvailability.EVENING, List.of(select(pythonCourse.getId())));
+
+        mockMvc.perform(get("/students")
+                        .param("courseIds", String.valueOf(javaCourse.getId()), String.valueOf(pythonCourse.getId()))
+                        .param("matchAny", "true")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].email", is("heidi@example.com")))
+                .andExpect(header().string("X-Total-Count", "2"));
+    }
+
     // --------------------------- 
     private MvcResult registerUser(String name, String email, UserAvailability availability,
                                    List<CourseSelectionDTO> selections) throws Exception {
@@ -0,0 +1,100 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.entity.OutboxEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DomainEventBusTest {
+
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final DomainEventBus bus = new DomainEventBus(outboxEventRepository, new ObjectMapper());
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publish_storesOneRowPerHandler() {
+        bus.subscribe(MatchAcceptedEvent.class, "chat", event -> { });
+        bus.subscribe(MatchAcceptedEvent.class, "notifications", event -> { });
+
+        bus.publish(new MatchAcceptedEvent(5L, 1L, 2L));
+
+        ArgumentCaptor<List<OutboxEvent>> rows = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository).saveAll(rows.capture());
+        assertEquals(2, rows.getValue().size());
+        assertEquals("chat", rows.getValue().get(0).getHandler());
+        assertEquals("notifications", rows.getValue().get(1).getHandler());
+        assertEquals(MatchAcceptedEvent.class.getName(), rows.getValue().get(0).getEventType());
+        assertNotNull(rows.getValue().get(0).getNextAttemptAt());
+    }
+
+    @Test
+    void publish_inTransaction_notifiesListenersAfterCommit() {
+        AtomicInteger wakeUps = new AtomicInteger();
+        bus.onPublished(wakeUps::incrementAndGet);
+        bus.subscribe(BlockEvent.class, "cleanup", event -> { });
+        TransactionSynchronizationManager.initSynchronization();
+
+        bus.publish(new BlockEvent(1L, 2L));
+        assertEquals(0, wakeUps.get());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertEquals(1, wakeUps.get());
+    }
+
+    @Test
+    void subscribe_duplicateName_throws() {
+        bus.subscribe(LikeEvent.class, "like", event -> { });
+
+        assertThrows(IllegalStateException.class, () -> bus.subscribe(BlockEvent.class, "like", event -> { }));
+    }
+
+    @Test
+    void handle_readsPayloadAndRunsNamedHandler() {
+        List<LikeEvent> received = new ArrayList<>();
+        bus.subscribe(LikeEvent.class, "like", received::add);
+        OutboxEvent stored = new OutboxEvent(LikeEvent.class.getName(), "like",
+            "{\"likingUserId\":1,\"targetUserId\":2}", LocalDateTime.now());
+
+        bus.handle(stored);
+
+        assertEquals(1, received.size());
+        assertEquals(1L, received.get(0).getLikingUserId());
+        assertEquals(2L, received.get(0).getTargetUserId());
+        assertEquals(1L, bus.getMetrics().get("LikeEvent.handled"));
+    }
+
+    @Test
+    void handle_failingHandler_isCountedAndRethrown() {
+        bus.subscribe(MatchAcceptedEvent.class, "chat", event -> {
+            throw new IllegalStateException("boom");
+        });
+        OutboxEvent stored = new OutboxEvent(MatchAcceptedEvent.class.getName(), "chat",
+            "{\"matchId\":5,\"userId1\":1,\"userId2\":2}", LocalDateTime.now());
+
+        assertThrows(IllegalStateException.class, () -> bus.handle(stored));
+
+        assertEquals(1L, bus.getMetrics().get("MatchAcceptedEvent.failed"));
+        assertEquals(0L, bus.getMetrics().get("MatchAcceptedEvent.handled"));
+    }
+}
@@ -0,0 +1,93 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.entity.OutboxEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OutboxDispatcherTest {
+
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final DomainEventBus bus = new DomainEventBus(outboxEventRepository, new ObjectMapper());
+    // the poller is never started, the tests call drain() themselves
+    private final OutboxDispatcher dispatcher = new OutboxDispatcher(outboxEventRepository, bus,
+        mock(PlatformTransactionManager.class), 600000, 10, 2, 3, 1000, 5000);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    private OutboxEvent storedBlock(long id, int attempts) {
+        OutboxEvent event = new OutboxEvent(BlockEvent.class.getName(), "cleanup",
+            "{\"blockerId\":1,\"blockedUserId\":2}", LocalDateTime.now());
+        event.setId(id);
+        event.setAttempts(attempts);
+        when(outboxEventRepository.findById(id)).thenReturn(Optional.of(event));
+        return event;
+    }
+
+    @Test
+    void drain_handledEventIsDeleted() throws InterruptedException {
+        bus.subscribe(BlockEvent.class, "cleanup", event -> { });
+        OutboxEvent event = storedBlock(1L, 0);
+        when(outboxEventRepository.findDueIds(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(1L));
+
+        assertEquals(1, dispatcher.drain());
+
+        verify(outboxEventRepository).delete(event);
+        assertEquals(1L, dispatcher.getMetrics().get("dispatched"));
+    }
+
+    @Test
+    void drain_failedEventIsRetriedLater() throws InterruptedException {
+        bus.subscribe(BlockEvent.class, "cleanup", event -> {
+            throw new IllegalStateException("boom");
+        });
+        OutboxEvent event = storedBlock(1L, 0);
+        when(outboxEventRepository.findDueIds(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(1L));
+
+        assertEquals(0, dispatcher.drain());
+
+        verify(outboxEventRepository, never()).delete(any(OutboxEvent.class));
+        assertEquals(1, event.getAttempts());
+        assertEquals("boom", event.getLastError());
+        assertTrue(event.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertEquals(1L, dispatcher.getMetrics().get("retried"));
+    }
+
+    @Test
+    void drain_lastAttemptFails_eventIsNoLongerScheduled() throws InterruptedException {
+        bus.subscribe(BlockEvent.class, "cleanup", event -> {
+            throw new IllegalStateException("boom");
+        });
+        OutboxEvent event = storedBlock(1L, 2);
+        when(outboxEventRepository.findDueIds(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(1L));
+
+        dispatcher.drain();
+
+        assertEquals(3, event.getAttempts());
+        assertNull(event.getNextAttemptAt());
+        assertEquals(1L, dispatcher.getMetrics().get("gaveUp"));
+    }
+
+    @Test
+    void backoffMillis_doublesUpToMaximum() {
+        assertEquals(1000, dispatcher.backoffMillis(1));
+        assertEquals(2000, dispatcher.backoffMillis(2));
+        assertEquals(4000, dispatcher.backoffMillis(3));
+        assertEquals(5000, dispatcher.backoffMillis(4));
+        assertEquals(5000, dispatcher.backoffMillis(40));
+    }
+}
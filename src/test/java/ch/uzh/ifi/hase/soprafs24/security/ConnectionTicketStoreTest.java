@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionTicketStoreTest {
+
+    @Test
+    void redeem_returnsTokenOnlyOnce() {
+        ConnectionTicketStore store = new ConnectionTicketStore(30);
+        String ticket = store.issue("token1");
+
+        assertNotEquals("token1", ticket);
+        assertEquals("token1", store.redeem(ticket));
+        assertNull(store.redeem(ticket));
+        assertNull(store.redeem("unknown"));
+        assertNull(store.redeem(null));
+    }
+
+    @Test
+    void redeem_expiredTicket_returnsNull() {
+        ConnectionTicketStore store = new ConnectionTicketStore(0);
+        String ticket = store.issue("token1");
+
+        assertNull(store.redeem(ticket));
+    }
+}
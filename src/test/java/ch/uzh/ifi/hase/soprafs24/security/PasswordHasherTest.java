@@ -0,0 +1,56 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    @Test
+    void hash_matchesAndRecordsDuration() {
+        PasswordHasher hasher = new PasswordHasher(4, 1, 4, 5000);
+        try {
+            String hash = hasher.hash("securePass123");
+
+            assertTrue(hasher.matches("securePass123", hash));
+            assertFalse(hasher.matches("wrongPass123", hash));
+            assertFalse(hasher.matches("securePass123", null));
+            assertEquals(3L, hasher.getMetrics().get("completed"));
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void needsRehash_onlyForOtherStrength() {
+        PasswordHasher hasher = new PasswordHasher(5, 1, 4, 5000);
+        try {
+            assertFalse(hasher.needsRehash(hasher.hash("securePass123")));
+            assertTrue(hasher.needsRehash(new BCryptPasswordEncoder(4).encode("securePass123")));
+            assertTrue(hasher.needsRehash("plain"));
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void hash_overloaded_failsFastWithServiceUnavailable() {
+        // one slow hash occupies the only thread, a second one fills the queue
+        PasswordHasher hasher = new PasswordHasher(12, 1, 1, 1);
+        try {
+            ResponseStatusException timedOut = assertThrows(ResponseStatusException.class, () -> hasher.hash("a"));
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, timedOut.getStatus());
+            assertThrows(ResponseStatusException.class, () -> hasher.hash("b"));
+
+            ResponseStatusException rejected = assertThrows(ResponseStatusException.class, () -> hasher.hash("c"));
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatus());
+            assertEquals(1L, hasher.getMetrics().get("rejected"));
+            assertEquals(2L, hasher.getMetrics().get("timedOut"));
+        } finally {
+            hasher.shutdown();
+        }
+    }
+}
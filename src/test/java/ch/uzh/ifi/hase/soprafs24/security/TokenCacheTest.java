@@ -0,0 +1,88 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCacheTest {
+
+    private UserPrincipal principal(Long id) {
+        return new UserPrincipal(id, "user" + id + "@example.com", false, UserStatus.ONLINE);
+    }
+
+    @Test
+    void get_afterPut_returnsPrincipal() {
+        TokenCache cache = new TokenCache(10, 60);
+        cache.put("token1", principal(1L));
+
+        UserPrincipal cached = cache.get("token1");
+
+        assertNotNull(cached);
+        assertEquals(1L, cached.getId());
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    void put_overCapacity_evictsLeastRecentlyUsed() {
+        TokenCache cache = new TokenCache(2, 60);
+        cache.put("token1", principal(1L));
+        cache.put("token2", principal(2L));
+
+        // touch token1 so token2 becomes the eldest entry
+        cache.get("token1");
+        cache.put("token3", principal(3L));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("token1"));
+        assertNull(cache.get("token2"));
+        assertNotNull(cache.get("token3"));
+    }
+
+    @Test
+    void get_expiredEntry_returnsNull() {
+        TokenCache cache = new TokenCache(10, 0);
+        cache.put("token1", principal(1L));
+
+        assertNull(cache.get("token1"));
+    }
+
+    @Test
+    void evictUser_removesAllTokensOfUser() {
+        TokenCache cache = new TokenCache(10, 60);
+        cache.put("token1", principal(1L));
+        cache.put("token2", principal(1L));
+        cache.put("token3", principal(2L));
+
+        cache.evictUser(1L);
+
+        assertNull(cache.get("token1"));
+        assertNull(cache.get("token2"));
+        assertNotNull(cache.get("token3"));
+    }
+
+    @Test
+    void evict_notifiesRevocationListeners() {
+        TokenCache cache = new TokenCache(10, 60);
+        List<String> revoked = new ArrayList<>();
+        cache.addRevocationListener(new TokenCache.RevocationListener() {
+            @Override
+            public void tokenRevoked(String token) {
+                revoked.add(token);
+            }
+
+            @Override
+            public void userRevoked(Long userId) {
+                revoked.add("user " + userId);
+            }
+        });
+
+        cache.evict("token1");
+        cache.evictUser(2L);
+
+        assertEquals(List.of("token1", "user 2"), revoked);
+    }
+}
@@ -0,0 +1,94 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ChannelMembershipCacheTest {
+
+    private final ChatParticipantRepository chatParticipantRepository = mock(ChatParticipantRepository.class);
+    private final ChannelMembershipCache cache = new ChannelMembershipCache(chatParticipantRepository, 100);
+
+    private void givenMembers(Long channelId, Object[]... rows) {
+        when(chatParticipantRepository.findParticipantSummaries(List.of(channelId))).thenReturn(List.of(rows));
+    }
+
+    @Test
+    void isMember_loadsChannelOnce() {
+        givenMembers(10L,
+            new Object[]{10L, 7L, "B", "member", "ab".repeat(32), true, 1},
+            new Object[]{10L, 3L, "A", "admin", null, false, null});
+
+        assertTrue(cache.isMember(10L, 3L));
+        assertTrue(cache.isMember(10L, 7L));
+        assertFalse(cache.isMember(10L, 5L));
+        assertEquals("/images/" + "ab".repeat(32) + "?size=64", cache.getAvatarUrl(10L, 7L));
+        assertNull(cache.getAvatarUrl(10L, 3L));
+
+        verify(chatParticipantRepository, times(1)).findParticipantSummaries(List.of(10L));
+    }
+
+    @Test
+    void invalidate_reloadsChangedMembers() {
+        givenMembers(10L, new Object[]{10L, 3L, "A", "admin", null, false, null});
+        assertFalse(cache.isMember(10L, 4L));
+
+        givenMembers(10L,
+            new Object[]{10L, 3L, "A", "admin", null, false, null},
+            new Object[]{10L, 4L, "C", "member", null, false, null});
+        cache.invalidate(10L);
+
+        assertTrue(cache.isMember(10L, 4L));
+    }
+
+    @Test
+    void invalidateUser_dropsOnlyChannelsOfThatUser() {
+        givenMembers(10L, new Object[]{10L, 3L, "A", "admin", null, false, null});
+        givenMembers(11L, new Object[]{11L, 4L, "C", "admin", null, false, null});
+        cache.isMember(10L, 3L);
+        cache.isMember(11L, 4L);
+
+        cache.invalidateUser(3L);
+        cache.isMember(10L, 3L);
+        cache.isMember(11L, 4L);
+
+        verify(chatParticipantRepository, times(2)).findParticipantSummaries(List.of(10L));
+        verify(chatParticipantRepository, times(1)).findParticipantSummaries(List.of(11L));
+    }
+
+    @Test
+    void invalidateUser_inTransaction_alsoDropsChannelsLoadedBeforeCommit() {
+        givenMembers(10L, new Object[]{10L, 3L, "A", "admin", null, false, null});
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidateUser(3L);
+            // loaded after the invalidation, but before the commit
+            cache.isMember(10L, 3L);
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cache.isMember(10L, 3L);
+
+        verify(chatParticipantRepository, times(2)).findParticipantSummaries(List.of(10L));
+    }
+
+    @Test
+    void isMember_unknownChannel_isNotCached() {
+        givenMembers(99L);
+
+        assertFalse(cache.isMember(99L, 1L));
+        assertFalse(cache.isMember(99L, 1L));
+
+        verify(chatParticipantRepository, times(2)).findParticipantSummaries(List.of(99L));
+    }
+}
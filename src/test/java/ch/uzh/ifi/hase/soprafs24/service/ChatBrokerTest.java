@@ -0,0 +1,121 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatBrokerTest {
+
+    private final ChannelMembershipCache channelMembershipCache = mock(ChannelMembershipCache.class);
+    private final ChatBroker chatBroker = new ChatBroker(new ObjectMapper(), channelMembershipCache, 2, 1);
+
+    @BeforeEach
+    void setup() {
+        when(channelMembershipCache.isMember(anyLong(), anyLong())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatBroker.shutdown();
+    }
+
+    @Test
+    void publish_deliversOnlyToSubscribersOfChannel() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        List<String> received = new CopyOnWriteArrayList<>();
+        List<String> otherReceived = new CopyOnWriteArrayList<>();
+
+        ChatBroker.Subscriber subscriber = chatBroker.register("s1", 1L, payload -> {
+            received.add(payload);
+            delivered.countDown();
+        });
+        ChatBroker.Subscriber other = chatBroker.register("s2", 1L, otherReceived::add);
+        chatBroker.subscribe(subscriber, 1L);
+        chatBroker.subscribe(other, 2L);
+
+        chatBroker.publish(1L, "message", Map.of("context", "hi"));
+
+        assertTrue(delivered.await(2, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("\"type\":\"message\""));
+        assertTrue(received.get(0).contains("\"channelId\":1"));
+        assertTrue(otherReceived.isEmpty());
+    }
+
+    @Test
+    void publish_slowSubscriber_dropsOldestEvents() throws Exception {
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        ChatBroker.Subscriber subscriber = chatBroker.register("slow", 1L, payload -> {
+            taken.countDown();
+            try {
+                release.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(payload);
+            done.countDown();
+        });
+        chatBroker.subscribe(subscriber, 1L);
+
+        // the first event is taken by the (blocked) delivery thread, the queue holds 2 more
+        chatBroker.publish(1L, "message", 1);
+        assertTrue(taken.await(2, TimeUnit.SECONDS));
+        for (int i = 2; i <= 5; i++) {
+            chatBroker.publish(1L, "message", i);
+        }
+        release.countDown();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(2, subscriber.getDroppedCount());
+        assertTrue(received.get(received.size() - 1).contains("\"payload\":5"));
+    }
+
+    @Test
+    void unregister_removesSubscriberFromAllChannels() {
+        ChatBroker.Subscriber subscriber = chatBroker.register("s1", 1L, payload -> { });
+        chatBroker.subscribe(subscriber, 1L);
+        chatBroker.subscribe(subscriber, 2L);
+
+        chatBroker.unregister(subscriber);
+
+        assertEquals(0, chatBroker.getSubscriberCount(1L));
+        assertEquals(0, chatBroker.getSubscriberCount(2L));
+    }
+
+    @Test
+    void publish_userNoLongerMember_unsubscribesInsteadOfDelivering() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        ChatBroker.Subscriber subscriber = chatBroker.register("s1", 7L, received::add);
+        chatBroker.subscribe(subscriber, 1L);
+        when(channelMembershipCache.isMember(1L, 7L)).thenReturn(false);
+
+        chatBroker.publish(1L, "message", Map.of("context", "hi"));
+
+        awaitSubscriberCount(1L, 0);
+        assertTrue(received.isEmpty());
+    }
+
+    private void awaitSubscriberCount(Long channelId, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (chatBroker.getSubscriberCount(channelId) != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, chatBroker.getSubscriberCount(channelId));
+    }
+}
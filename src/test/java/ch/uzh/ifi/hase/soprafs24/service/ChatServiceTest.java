@@ -5,14 +5,16 @@ import ch.uzh.ifi.hase.soprafs24.entity.ChatChannel;
 import ch.uzh.ifi.hase.soprafs24.entity.ChatParticipant;
 import ch.uzh.ifi.hase.soprafs24.entity.Message;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.entity.UserTypingStatus;
 // repository
 import ch.uzh.ifi.hase.soprafs24.repository.ChatChannelRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.MessageRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserTypingStatusRepository;
 // dto
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatChannelPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ChatInboxEntryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MessageGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MessagePostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserTypingStatusPushDTO;
@@ -35,6 +37,7 @@ import java.util.stream.Collectors;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class ChatServiceTest {
@@ -42,6 +45,9 @@ class ChatServiceTest {
     @Mock
     private ChatChannelRepository chatChannelRepository;
 
+    @Mock
+    private ChatParticipantRepository chatParticipantRepository;
+
     @Mock
     private MessageRepository messageRepository;
 
@@ -51,6 +57,24 @@ class ChatServiceTest {
     @Mock
     private UserTypingStatusRepository userTypingStatusRepository;
 
+    @Mock
+    private ChatBroker chatBroker;
+
+    @Spy
+    private TypingIndicatorStore typingIndicatorStore = new TypingIndicatorStore(5);
+
+    @Spy
+    private UserPresenceCache userPresenceCache = new UserPresenceCache();
+
+    @Mock
+    private ReadReceiptBuffer readReceiptBuffer;
+
+    @Mock
+    private MessageWriter messageWriter;
+
+    @Mock
+    private ChannelMembershipCache channelMembershipCache;
+
     @InjectMocks
     private ChatService chatService;
 
@@ -96,29 +120,69 @@ class ChatServiceTest {
         postDTO.setSenderId(1L);
         postDTO.setContext("Hello!");
 
-        ChatChannel channel = new ChatChannel("Study Group", "group", "group.png");
-        channel.setId(channelId);
+        when(channelMembershipCache.isMember(channelId, 1L)).thenReturn(true);
+        when(channelMembershipCache.getAvatarUrl(channelId, 1L)).thenReturn("/images/abc?size=64");
+        when(messageWriter.write(eq(channelId), eq(1L), eq("Hello!"), any(LocalDateTime.class))).thenReturn(200L);
 
-        // Add a participant to the channel
-        User user = new User();
-        user.setId(1L);
-        ChatParticipant participant = new ChatParticipant(user, "admin");
-        channel.addParticipant(participant);
+        MessageGetDTO result = chatService.sendMessage(channelId, postDTO);
 
-        when(chatChannelRepository.findById(channelId)).thenReturn(Optional.of(channel));
-        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        assertNotNull(result);
+        assertEquals(200L, result.getMessageId());
+        assertEquals("Hello!", result.getContext());
+        assertEquals(1L, result.getSenderId());
+        assertEquals("/images/abc?size=64", result.getSenderProfileImage());
+
+        verify(chatBroker).publish(eq(channelId), eq("message"), eq(result));
+        // membership comes from the cache, neither the channel nor the sender is loaded
+        verify(chatChannelRepository, never()).findById(anyLong());
+        verify(userRepository, never()).findById(anyLong());
+    }
 
-        Message savedMessage = new Message(channel, user, "Hello!");
-        savedMessage.setId(200L);
-        savedMessage.setTimestamp(LocalDateTime.now());
-        when(messageRepository.save(any(Message.class))).thenReturn(savedMessage);
+    @Test
+    void sendMessage_tooLong_throwsBadRequestBeforeWriting() {
+        MessagePostDTO postDTO = new MessagePostDTO();
+        postDTO.setSenderId(1L);
+        postDTO.setContext("x".repeat(256));
 
-        Message result = chatService.sendMessage(channelId, postDTO);
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+            () -> chatService.sendMessage(100L, postDTO));
 
-        assertNotNull(result);
-        assertEquals(200L, result.getId());
-        assertEquals("Hello!", result.getContent());
-        assertEquals(user, result.getSender());
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        verifyNoInteractions(messageWriter);
+    }
+
+    @Test
+    void getInbox_combinesChannelsUnreadCountsAndParticipants() {
+        Long userId = 1L;
+        ChatChannel recent = new ChatChannel("Study Group", "group", null);
+        recent.setId(10L);
+        ChatChannel older = new ChatChannel("A&B", "individual", null);
+        older.setId(11L);
+
+        List<Object[]> inboxRows = List.of(new Object[]{recent, 5L}, new Object[]{older, null});
+        List<Object[]> unreadRows = List.<Object[]>of(new Object[]{10L, 3L});
+        List<Object[]> participantRows = List.of(
+            new Object[]{10L, 1L, "A", "admin", null, false, null},
+            new Object[]{10L, 2L, "B", "member", "ab".repeat(32), true, 1},
+            new Object[]{11L, 1L, "A", "member", null, false, null});
+        when(chatParticipantRepository.findInboxRows(userId)).thenReturn(inboxRows);
+        when(messageRepository.countUnreadByChannel(userId)).thenReturn(unreadRows);
+        when(chatParticipantRepository.findParticipantSummaries(List.of(10L, 11L))).thenReturn(participantRows);
+
+        List<ChatInboxEntryGetDTO> inbox = chatService.getInbox(userId);
+
+        assertEquals(2, inbox.size());
+        assertEquals(10L, inbox.get(0).getChannelId());
+        assertEquals(3L, inbox.get(0).getUnreadCount());
+        assertEquals(5L, inbox.get(0).getLastReadMessageId());
+        assertEquals(2, inbox.get(0).getParticipants().size());
+        assertEquals("/images/" + "ab".repeat(32) + "?size=64",
+            inbox.get(0).getParticipants().get(1).getUserProfileImage());
+        assertEquals(11L, inbox.get(1).getChannelId());
+        assertEquals(0L, inbox.get(1).getUnreadCount());
+        assertEquals(1, inbox.get(1).getParticipants().size());
+        // no channel is loaded one by one
+        verify(chatChannelRepository, never()).findById(anyLong());
     }
 
     @Test
@@ -128,37 +192,77 @@ class ChatServiceTest {
         postDTO.setSenderId(1L);
         postDTO.setContext("Hello!");
 
+        when(channelMembershipCache.isMember(channelId, 1L)).thenReturn(false);
+        when(chatChannelRepository.existsById(channelId)).thenReturn(true);
+        when(userRepository.existsById(1L)).thenReturn(true);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> {
+            chatService.sendMessage(channelId, postDTO);
+        });
+        assertEquals(HttpStatus.UNAUTHORIZED, ex.getStatus());
+        verifyNoInteractions(messageWriter);
+    }
+
+    @Test
+    void sendMessage_unknownChannel_throwsNotFound() {
+        MessagePostDTO postDTO = new MessagePostDTO();
+        postDTO.setSenderId(1L);
+        postDTO.setContext("Hello!");
+        when(chatChannelRepository.existsById(100L)).thenReturn(false);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+            () -> chatService.sendMessage(100L, postDTO));
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatus());
+    }
+
+    @Test
+    void getChatHistory_validChannel_returnsLatestMessagesOldestFirst() {
+        Long channelId = 100L;
         ChatChannel channel = new ChatChannel("Study Group", "group", "group.png");
         channel.setId(channelId);
+        when(chatChannelRepository.existsById(channelId)).thenReturn(true);
 
-        when(chatChannelRepository.findById(channelId)).thenReturn(Optional.of(channel));
-        User user = new User();
-        user.setId(1L);
-        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        Message newer = new Message(channel, new User(), "Hello again!");
+        newer.setId(201L);
+        Message older = new Message(channel, new User(), "Hello!");
+        older.setId(200L);
+        Pageable pageable = PageRequest.of(0, 2);
+        Slice<Message> slice = new SliceImpl<>(List.of(newer, older), pageable, true);
+        when(messageRepository.findHistoryBefore(channelId, Long.MAX_VALUE, pageable)).thenReturn(slice);
 
-        assertThrows(ResponseStatusException.class, () -> {
-            chatService.sendMessage(channelId, postDTO);
-        });
+        ChatService.HistoryPage history = chatService.getChatHistory(channelId, null, null, 2);
+
+        assertEquals(List.of(200L, 201L), history.getMessages().stream().map(Message::getId).toList());
+        assertEquals(200L, history.getPrevCursor());
+        assertEquals(201L, history.getNextCursor());
     }
 
     @Test
-    void getChatHistory_validChannel_returnsMessages() {
+    void getChatHistory_afterId_returnsNewerMessages() {
         Long channelId = 100L;
         ChatChannel channel = new ChatChannel("Study Group", "group", "group.png");
         channel.setId(channelId);
-        when(chatChannelRepository.findById(channelId)).thenReturn(Optional.of(channel));
+        when(chatChannelRepository.existsById(channelId)).thenReturn(true);
 
-        Message message = new Message(channel, new User(), "Hello!");
-        message.setId(200L);
-        Pageable pageable = PageRequest.of(0, Integer.MAX_VALUE, Sort.by("id").ascending());
-        Page<Message> messagePage = new PageImpl<>(List.of(message), pageable, 1);
-        when(messageRepository.findByChannelId(channelId, pageable)).thenReturn(messagePage);
+        Message message = new Message(channel, new User(), "New!");
+        message.setId(305L);
+        Pageable pageable = PageRequest.of(0, 50);
+        when(messageRepository.findHistoryAfter(channelId, 300L, pageable))
+                .thenReturn(new SliceImpl<>(List.of(message), pageable, false));
 
-        List<Message> history = chatService.getChatHistory(channelId);
+        ChatService.HistoryPage history = chatService.getChatHistory(channelId, null, 300L, 50);
 
-        assertNotNull(history);
-        assertEquals(1, history.size());
-        assertEquals(200L, history.get(0).getId());
+        assertEquals(1, history.getMessages().size());
+        assertEquals(305L, history.getNextCursor());
+    }
+
+    @Test
+    void getChatHistory_bothCursors_throwsBadRequest() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> chatService.getChatHistory(100L, 10L, 5L, 50));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
     }
 
     
@@ -172,9 +276,6 @@ class ChatServiceTest {
         user.setStatus(UserStatus.ONLINE);
         
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(userTypingStatusRepository.findByUserId(userId)).thenReturn(Optional.empty());
-        when(userTypingStatusRepository.save(any(UserTypingStatus.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
 
         UserTypingStatusPushDTO pushDTO = new UserTypingStatusPushDTO(userId, true);
 
@@ -184,9 +285,22 @@ class ChatServiceTest {
         assertEquals(userId, result.getUserId());
         assertTrue(result.isTyping());
         assertEquals(UserStatus.ONLINE, result.getUserStatus());
+        // typing state is never persisted
+        verifyNoInteractions(userTypingStatusRepository);
     }
 
+    @Test
+    void updateTypingStatus_cachedUser_noDatabaseAccess() {
+        Long userId = 1L;
+        userPresenceCache.put(userId, UserStatus.ONLINE);
 
+        chatService.updateTypingStatus(new UserTypingStatusPushDTO(userId, true));
+        UserTypingStatusGetDTO result = chatService.getTypingStatus(userId);
+
+        assertTrue(result.isTyping());
+        assertEquals(UserStatus.ONLINE, result.getUserStatus());
+        verifyNoInteractions(userRepository, userTypingStatusRepository);
+    }
 
     @Test
     void getTypingStatus_validInput_success() {
@@ -197,8 +311,7 @@ class ChatServiceTest {
         
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
         
-        UserTypingStatus typingStatus = new UserTypingStatus(user, true);
-        when(userTypingStatusRepository.findByUserId(userId)).thenReturn(Optional.of(typingStatus));
+        chatService.updateTypingStatus(new UserTypingStatusPushDTO(userId, true));
 
         UserTypingStatusGetDTO result = chatService.getTypingStatus(userId);
 
@@ -206,8 +319,47 @@ class ChatServiceTest {
         assertEquals(userId, result.getUserId());
         assertTrue(result.isTyping());
         assertEquals(UserStatus.ONLINE, result.getUserStatus());
+        // the user is loaded once, afterwards the status comes from the presence cache
+        verify(userRepository, times(1)).findById(userId);
+    }
+
+    @Test
+    void updateTypingStatus_notAMemberOfChannel_throwsAndPublishesNothing() {
+        Long userId = 1L;
+        userPresenceCache.put(userId, UserStatus.ONLINE);
+        when(channelMembershipCache.isMember(7L, userId)).thenReturn(false);
+        UserTypingStatusPushDTO pushDTO = new UserTypingStatusPushDTO(userId, true);
+        pushDTO.setChannelId(7L);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+            () -> chatService.updateTypingStatus(pushDTO));
+
+        assertEquals(HttpStatus.UNAUTHORIZED, ex.getStatus());
+        assertTrue(chatService.getTypingUserIds(7L).isEmpty());
+        verify(chatBroker, never()).publish(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void updateTypingStatus_withChannel_publishesOnlyStateChanges() {
+        Long userId = 1L;
+        userPresenceCache.put(userId, UserStatus.ONLINE);
+        when(channelMembershipCache.isMember(7L, userId)).thenReturn(true);
+        UserTypingStatusPushDTO pushDTO = new UserTypingStatusPushDTO(userId, true);
+        pushDTO.setChannelId(7L);
+
+        chatService.updateTypingStatus(pushDTO);
+        chatService.updateTypingStatus(pushDTO);
+
+        assertEquals(List.of(userId), chatService.getTypingUserIds(7L));
+        verify(chatBroker, times(1)).publish(eq(7L), eq("typing"), any(UserTypingStatusGetDTO.class));
+
+        pushDTO.setTyping(false);
+        chatService.updateTypingStatus(pushDTO);
+
+        assertTrue(chatService.getTypingUserIds(7L).isEmpty());
+        assertFalse(chatService.getTypingStatus(userId).isTyping());
+        verify(chatBroker, times(2)).publish(eq(7L), eq("typing"), any(UserTypingStatusGetDTO.class));
     }
-    
 
     @Test
     void updateTypingStatus_userNotFound_throwsException() {
@@ -240,13 +392,15 @@ class ChatServiceTest {
         List<ChatParticipant> participants = List.of(participantBlocker, participantBlocked);
         individualChannel.setParticipants(participants);
         
-        when(chatChannelRepository.findByParticipantsUserId(blockerId))
-                .thenReturn(List.of(individualChannel));
+        when(chatChannelRepository.findByPairKey("1:2"))
+                .thenReturn(Optional.of(individualChannel));
         
         chatService.deleteIndividualChannelBetweenUsers(blockerId, blockedUserId);
         
+        verify(messageRepository, times(1)).deleteByChannelId(100L);
         verify(chatChannelRepository, times(1)).delete(individualChannel);
         verify(chatChannelRepository, times(1)).flush();
+        verify(channelMembershipCache).invalidate(100L);
     }
 
     @Test
@@ -255,8 +409,8 @@ class ChatServiceTest {
         Long blockerId = 1L;
         Long blockedUserId = 2L;
 
-        when(chatChannelRepository.findByParticipantsUserId(blockerId))
-                .thenReturn(List.of());
+        when(chatChannelRepository.findByPairKey("1:2"))
+                .thenReturn(Optional.empty());
 
         chatService.deleteIndividualChannelBetweenUsers(blockerId, blockedUserId);
         
@@ -279,8 +433,9 @@ class ChatServiceTest {
         ChatParticipant participant = new ChatParticipant(blocker, "admin");
         groupChannel.setParticipants(List.of(participant));
         
-        when(chatChannelRepository.findByParticipantsUserId(blockerId))
-                .thenReturn(List.of(groupChannel));
+        // group channels have no pair key, so the pair lookup never finds them
+        when(chatChannelRepository.findByPairKey("1:2"))
+                .thenReturn(Optional.empty());
         
         chatService.deleteIndividualChannelBetweenUsers(blockerId, blockedUserId);
         
@@ -366,8 +521,8 @@ class ChatServiceTest {
         existing.addParticipant(new ChatParticipant(user1, "member"));
         existing.addParticipant(new ChatParticipant(user2, "member"));
 
-        when(chatChannelRepository.findByParticipantsUserId(1L))
-                .thenReturn(List.of(existing));
+        when(chatChannelRepository.findByPairKey("1:2"))
+                .thenReturn(Optional.of(existing));
 
         ChatChannel result = chatService.createIndividualChatChannelAfterMatch(user1, user2);
 
@@ -380,8 +535,8 @@ class ChatServiceTest {
         User user1 = new User(); user1.setId(1L); user1.setName("A");
         User user2 = new User(); user2.setId(2L); user2.setName("B");
 
-        when(chatChannelRepository.findByParticipantsUserId(1L))
-                .thenReturn(List.of());                    // no existing channel
+        when(chatChannelRepository.findByPairKey("1:2"))
+                .thenReturn(Optional.empty());             // no existing channel
 
         when(chatChannelRepository.save(any(ChatChannel.class)))
                 .thenAnswer(inv -> inv.getArgument(0, ChatChannel.class));
@@ -389,6 +544,7 @@ class ChatServiceTest {
         ChatChannel result = chatService.createIndividualChatChannelAfterMatch(user1, user2);
 
         assertEquals("individual", result.getType());
+        assertEquals("1:2", result.getPairKey());
         assertEquals(
             Set.of(1L, 2L),
             result.getParticipants().stream()
@@ -398,7 +554,20 @@ class ChatServiceTest {
 
         verify(chatChannelRepository).save(result);
     }
-}
 
+    @Test
+    void createIndividualChannel_usersInReverseOrder_findsSameChannel() {
+        User user1 = new User(); user1.setId(1L); user1.setName("A");
+        User user2 = new User(); user2.setId(2L); user2.setName("B");
+
+        ChatChannel existing = new ChatChannel();
+        existing.setType("individual");
+        existing.setPairKey("1:2");
 
+        when(chatChannelRepository.findByPairKey("1:2"))
+                .thenReturn(Optional.of(existing));
 
+        assertSame(existing, chatService.createIndividualChatChannelAfterMatch(user2, user1));
+        verify(chatChannelRepository, never()).findByParticipantsUserId(anyLong());
+    }
+}
@@ -0,0 +1,148 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.ProfileKnowledgeLevel;
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
+import ch.uzh.ifi.hase.soprafs24.entity.Block;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserCourseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+class DiscoveryIndexTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserCourseRepository userCourseRepository;
+
+    @Mock
+    private BlockRepository blockRepository;
+
+    @Mock
+    private MatchRepository matchRepository;
+
+    private DiscoveryIndex discoveryIndex;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        discoveryIndex = new DiscoveryIndex(userRepository, userCourseRepository, blockRepository, matchRepository);
+    }
+
+    @Test
+    void getCandidates_excludesSelfBlockedAndMatchedUsers() {
+        User blocker = new User();
+        blocker.setId(2L);
+        User blocked = new User();
+        blocked.setId(1L);
+        Block block = new Block(blocker, blocked);
+
+        Match match = new Match();
+        match.setUserId1(1L);
+        match.setUserId2(3L);
+        match.setStatus(MatchStatus.ACCEPTED);
+
+        when(userRepository.findDiscoveryProfiles()).thenReturn(profiles(1L, 2L, 3L, 4L));
+        when(blockRepository.findAll()).thenReturn(List.of(block));
+        when(matchRepository.findAllByStatusIn(anyList())).thenReturn(List.of(match));
+
+        DiscoveryIndex.CandidatePage page = discoveryIndex.getCandidates(1L, null, 10);
+
+        assertEquals(List.of(4L), page.getUserIds());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getCandidates_pagesWithCursor() {
+        when(userRepository.findDiscoveryProfiles()).thenReturn(profiles(1L, 2L, 3L, 4L));
+        when(blockRepository.findAll()).thenReturn(List.of());
+        when(matchRepository.findAllByStatusIn(anyList())).thenReturn(List.of());
+
+        DiscoveryIndex.CandidatePage first = discoveryIndex.getCandidates(1L, null, 2);
+        assertEquals(List.of(2L, 3L), first.getUserIds());
+        assertNotNull(first.getNextCursor());
+
+        DiscoveryIndex.CandidatePage second = discoveryIndex.getCandidates(1L, first.getNextCursor(), 2);
+        assertEquals(List.of(4L), second.getUserIds());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void writePaths_updateLoadedIndex() {
+        when(userRepository.findDiscoveryProfiles()).thenReturn(profiles(1L, 2L));
+        when(blockRepository.findAll()).thenReturn(List.of());
+        when(matchRepository.findAllByStatusIn(anyList())).thenReturn(List.of());
+        discoveryIndex.warmUp();
+
+        discoveryIndex.addUser(user(3L));
+        discoveryIndex.addUser(user(4L));
+        discoveryIndex.excludePair(3L, 1L);
+        discoveryIndex.removeUser(2L);
+
+        assertEquals(List.of(4L), discoveryIndex.getCandidates(1L, null, 10).getUserIds());
+    }
+
+    @Test
+    void getCandidates_ranksByCoursesAvailabilityAndStudyLevel() {
+        List<Object[]> profiles = new ArrayList<>();
+        profiles.add(new Object[]{1L, UserAvailability.MORNING, "Bachelor"});
+        profiles.add(new Object[]{2L, UserAvailability.EVENING, "Master"});
+        profiles.add(new Object[]{3L, UserAvailability.MORNING, "Bachelor"});
+        profiles.add(new Object[]{4L, UserAvailability.EVENING, "Master"});
+        when(userRepository.findDiscoveryProfiles()).thenReturn(profiles);
+
+        List<Object[]> courses = new ArrayList<>();
+        courses.add(new Object[]{1L, 100L, ProfileKnowledgeLevel.BEGINNER});
+        // same course, complementary level
+        courses.add(new Object[]{4L, 100L, ProfileKnowledgeLevel.ADVANCED});
+        // same course, same level
+        courses.add(new Object[]{2L, 100L, ProfileKnowledgeLevel.BEGINNER});
+        when(userCourseRepository.findAllCourseLevels()).thenReturn(courses);
+        when(blockRepository.findAll()).thenReturn(List.of());
+        when(matchRepository.findAllByStatusIn(anyList())).thenReturn(List.of());
+
+        DiscoveryIndex.CandidatePage page = discoveryIndex.getCandidates(1L, null, 10);
+
+        // 4: 10 + 2 * 4 = 18, 2: 10, 3: availability 6 + study level 3 = 9
+        assertEquals(List.of(4L, 2L, 3L), page.getUserIds());
+    }
+
+    @Test
+    void topKHeap_keepsLargestKeys() {
+        TopKHeap heap = new TopKHeap(3);
+        for (long key : new long[]{5, 1, 9, 3, 7, 2}) {
+            heap.offer(key);
+        }
+
+        assertArrayEquals(new long[]{9, 7, 5}, heap.toSortedDescending());
+    }
+
+    private List<Object[]> profiles(Long... userIds) {
+        List<Object[]> profiles = new ArrayList<>();
+        for (Long userId : userIds) {
+            profiles.add(new Object[]{userId, null, null});
+        }
+        return profiles;
+    }
+
+    private User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
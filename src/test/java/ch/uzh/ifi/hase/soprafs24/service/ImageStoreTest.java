@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageStoreTest {
+
+    @TempDir
+    Path storageDir;
+
+    private byte[] pngImage(int width, int height) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void store_sameContent_returnsSameHashAndGeneratesThumbnails() throws Exception {
+        ImageStore imageStore = new ImageStore(storageDir.toString());
+        byte[] image = pngImage(512, 300);
+
+        String hash = imageStore.store(image);
+        String dataUrlHash = imageStore.storeBase64("data:image/png;base64," + Base64.getEncoder().encodeToString(image));
+
+        assertEquals(hash, dataUrlHash);
+        assertArrayEquals(image, Files.readAllBytes(imageStore.resolve(hash, null)));
+        assertEquals("image/png", imageStore.contentType(imageStore.resolve(hash, null)));
+
+        BufferedImage thumbnail = ImageIO.read(imageStore.resolve(hash, 64).toFile());
+        assertEquals(64, thumbnail.getWidth());
+        assertEquals(38, thumbnail.getHeight());
+    }
+
+    @Test
+    void resolve_invalidHashOrSize_throwsException() {
+        ImageStore imageStore = new ImageStore(storageDir.toString());
+        String unknownHash = "a".repeat(64);
+
+        assertThrows(ResponseStatusException.class, () -> imageStore.resolve("../etc/passwd", null));
+        assertThrows(ResponseStatusException.class, () -> imageStore.resolve(unknownHash, 13));
+        assertThrows(ResponseStatusException.class, () -> imageStore.resolve(unknownHash, null));
+    }
+
+    @Test
+    void storeBase64_invalidData_throwsException() {
+        ImageStore imageStore = new ImageStore(storageDir.toString());
+
+        assertThrows(ResponseStatusException.class, () -> imageStore.storeBase64("not base64!"));
+    }
+
+    @Test
+    void store_notAnImage_isRejectedAndNotStored() throws Exception {
+        ImageStore imageStore = new ImageStore(storageDir.toString());
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> imageStore.store("<html>not an image</html>".getBytes()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        try (Stream<Path> files = Files.walk(storageDir)) {
+            assertTrue(files.allMatch(Files::isDirectory));
+        }
+    }
+
+    @Test
+    void store_declaredDimensionsTooLarge_isRejectedBeforeDecoding() throws Exception {
+        ImageStore imageStore = new ImageStore(storageDir.toString());
+        byte[] image = pngImage(1, 1);
+        // IHDR width and height start at byte 16; the pixel data is left as it is
+        ByteBuffer.wrap(image, 16, 8).putInt(30000).putInt(30000);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> imageStore.store(image));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    }
+
+    @Test
+    void store_tooManyBytes_isRejected() {
+        ImageStore imageStore = new ImageStore(storageDir.toString());
+
+        assertThrows(ResponseStatusException.class, () -> imageStore.store(new byte[ImageStore.MAX_IMAGE_BYTES + 1]));
+    }
+}
@@ -2,9 +2,12 @@ package ch.uzh.ifi.hase.soprafs24.service;
 
 import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Match;
-import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
+import ch.uzh.ifi.hase.soprafs24.event.LikeEvent;
+import ch.uzh.ifi.hase.soprafs24.event.MatchAcceptedEvent;
 import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
-import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchBatchPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchBatchResultGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.MatchPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
@@ -14,6 +17,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
@@ -29,13 +33,16 @@ class MatchServiceTest {
     private MatchRepository matchRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private DiscoveryIndex discoveryIndex;
 
     @Mock
-    private ChatService chatService;
-    
+    private MatchPairWriter matchPairWriter;
+
+    @Mock
+    private DomainEventBus eventBus;
+
     @Mock
-    private NotificationService notificationService;
+    private SocialGraph socialGraph;
 
     @InjectMocks
     private MatchService matchService;
@@ -48,6 +55,19 @@ class MatchServiceTest {
         // No setup needed as mocks are initialized by MockitoExtension
     }
 
+    private void verifyLikeEvent(Long likingUserId, Long targetUserId) {
+        verify(eventBus, times(1)).publish(argThat(event -> event instanceof LikeEvent
+            && ((LikeEvent) event).getLikingUserId().equals(likingUserId)
+            && ((LikeEvent) event).getTargetUserId().equals(targetUserId)));
+    }
+
+    private void verifyMatchAcceptedEvent(Long matchId, Long userId1, Long userId2) {
+        verify(eventBus, times(1)).publish(argThat(event -> event instanceof MatchAcceptedEvent
+            && Objects.equals(((MatchAcceptedEvent) event).getMatchId(), matchId)
+            && ((MatchAcceptedEvent) event).getUserId1().equals(userId1)
+            && ((MatchAcceptedEvent) event).getUserId2().equals(userId2)));
+    }
+
     @Test
     void testProcessLike_NewMatch() {
         // Given: No existing match between the users.
@@ -55,9 +75,13 @@ class MatchServiceTest {
         Long targetUserId = 2L;
         MatchPostDTO dto = new MatchPostDTO(actingUserId, targetUserId);
         
-        // Use the repository method instead of the service method
-        when(matchRepository.findMatchByUsers(actingUserId, targetUserId))
-            .thenReturn(Optional.empty());
+        // The pair does not exist yet, so it is inserted and then locked
+        Match insertedMatch = new Match();
+        insertedMatch.setUserId1(actingUserId);
+        insertedMatch.setUserId2(targetUserId);
+        insertedMatch.setStatus(MatchStatus.PENDING);
+        when(matchRepository.findPairForUpdate(actingUserId, targetUserId))
+            .thenReturn(Optional.empty(), Optional.of(insertedMatch));
         
         Match savedMatch = new Match();
         savedMatch.setUserId1(actingUserId);
@@ -80,9 +104,6 @@ class MatchServiceTest {
         convertedMatch.setUserId2(targetUserId);
         when(dtoMapper.convertMatchPostDTOtoEntity(any(MatchPostDTO.class))).thenReturn(convertedMatch);
         
-        // Mock the notification service
-        doNothing().when(notificationService).createLikeNotification(targetUserId, actingUserId);
-        
         // When: processing a like action.
         MatchGetDTO result = matchService.processLike(dto);
         
@@ -92,11 +113,14 @@ class MatchServiceTest {
         assertEquals(targetUserId, result.getUserId2(), "Target user's ID should match");
         assertEquals(MatchStatus.PENDING, result.getStatus(), "Status should be PENDING for new match");
         
-        // Verify that the match was saved and notification was created
-        // Note: The service now calls createLikeNotification only once (at line 99)
+        // Verify that the match was saved and the like announced; the notification follows after commit
+        verify(matchPairWriter).insertPair(actingUserId, targetUserId);
         verify(matchRepository).save(any(Match.class));
-        verify(notificationService, times(1)).createLikeNotification(targetUserId, actingUserId);
-        verify(chatService, never()).createIndividualChatChannelAfterMatch(any(User.class), any(User.class));
+        assertTrue(insertedMatch.isLikedByUser1(), "The acting user's like should be set");
+        verifyLikeEvent(actingUserId, targetUserId);
+        verify(eventBus, never()).publish(any(MatchAcceptedEvent.class));
+        verify(socialGraph).like(actingUserId, targetUserId);
+        verify(socialGraph, never()).match(anyLong(), anyLong());
     }
 
     @Test
@@ -123,20 +147,11 @@ class MatchServiceTest {
         existingMatch.setLikedByUser2(true); // Target already liked
         existingMatch.setStatus(MatchStatus.PENDING);
         
-        when(matchRepository.findMatchByUsers(actingUserId, targetUserId))
+        when(matchRepository.findPairForUpdate(actingUserId, targetUserId))
             .thenReturn(Optional.of(existingMatch));
         
         when(matchRepository.save(any(Match.class))).thenReturn(existingMatch);
         
-        User user1 = new User();
-        user1.setId(actingUserId);
-        user1.setName("Alice");
-        User user2 = new User();
-        user2.setId(targetUserId);
-        user2.setName("Bob");
-        when(userRepository.findById(actingUserId)).thenReturn(Optional.of(user1));
-        when(userRepository.findById(targetUserId)).thenReturn(Optional.of(user2));
-        
         MatchGetDTO matchGetDTO = new MatchGetDTO();
         matchGetDTO.setUserId1(actingUserId);
         matchGetDTO.setUserId2(targetUserId);
@@ -144,9 +159,6 @@ class MatchServiceTest {
         matchGetDTO.setLikedByUser1(true);
         matchGetDTO.setLikedByUser2(true);
         
-        // Mock the notification service
-        doNothing().when(notificationService).createMatchNotification(actingUserId, targetUserId, matchId);
-        
         // When 
         when(dtoMapper.convertEntityToMatchGetDTO(any(Match.class))).thenReturn(matchGetDTO);
         MatchGetDTO result = matchService.processLike(dto);
@@ -156,9 +168,10 @@ class MatchServiceTest {
         assertEquals(MatchStatus.ACCEPTED, result.getStatus(), "Status should be ACCEPTED when both users like each other");
         assertTrue(result.isLikedByUser1(), "likedByUser1 should be true");
         
-        verify(chatService).createIndividualChatChannelAfterMatch(user1, user2);
-        verify(notificationService).createMatchNotification(actingUserId, targetUserId, matchId);
+        // the chat and the match notifications are created by SocialEventHandlers after commit
+        verifyMatchAcceptedEvent(matchId, actingUserId, targetUserId);
         verify(matchRepository).save(any(Match.class));
+        verify(socialGraph).match(actingUserId, targetUserId);
     }
 
     @Test
@@ -173,7 +186,7 @@ class MatchServiceTest {
         rejectedMatch.setUserId2(targetUserId);
         rejectedMatch.setStatus(MatchStatus.REJECTED);
         
-        when(matchRepository.findMatchByUsers(actingUserId, targetUserId))
+        when(matchRepository.findPairForUpdate(actingUserId, targetUserId))
             .thenReturn(Optional.of(rejectedMatch));
         
         // When & Then:
@@ -195,7 +208,7 @@ class MatchServiceTest {
         existingMatch.setUserId2(targetUserId);
         existingMatch.setStatus(MatchStatus.PENDING);
         
-        when(matchRepository.findMatchByUsers(actingUserId, targetUserId))
+        when(matchRepository.findPairForUpdate(actingUserId, targetUserId))
             .thenReturn(Optional.of(existingMatch));
         
         when(matchRepository.save(any(Match.class))).thenReturn(existingMatch);
@@ -217,7 +230,7 @@ class MatchServiceTest {
         match.setLikedByUser1(true);
         match.setLikedByUser2(true);
         
-        when(matchRepository.findMatchByUsers(1L, 2L))
+        when(matchRepository.findPairForUpdate(1L, 2L))
             .thenReturn(Optional.of(match));
         when(matchRepository.save(any(Match.class))).thenReturn(match);
         
@@ -230,6 +243,134 @@ class MatchServiceTest {
         assertEquals(MatchStatus.REJECTED, match.getStatus());
         assertFalse(match.isLikedByUser1(), "User1's like flag should be false after disliking");
         verify(matchRepository).save(any(Match.class));
+        verify(socialGraph).dislike(1L, 2L);
     }
     
-}
\ No newline at end of file
+
+    @Test
+    void testProcessLike_ConcurrentInsert_UsesExistingRow() {
+        // Given: the pair is inserted by a concurrent request between lookup and insert
+        Long actingUserId = 2L;
+        Long targetUserId = 1L;
+        MatchPostDTO dto = new MatchPostDTO(actingUserId, targetUserId);
+
+        Match concurrentMatch = new Match();
+        concurrentMatch.setUserId1(targetUserId);
+        concurrentMatch.setUserId2(actingUserId);
+        concurrentMatch.setLikedByUser1(true);
+        concurrentMatch.setLikedByUser2(false);
+        concurrentMatch.setStatus(MatchStatus.PENDING);
+
+        // the pair key is (min, max) no matter who acts
+        when(matchRepository.findPairForUpdate(1L, 2L))
+            .thenReturn(Optional.empty(), Optional.of(concurrentMatch));
+        doThrow(new org.springframework.dao.DataIntegrityViolationException("uk_match_user_pair"))
+            .when(matchPairWriter).insertPair(actingUserId, targetUserId);
+        when(matchRepository.save(any(Match.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        matchService.processLike(dto);
+
+        // Then: the existing row is updated instead of a second one being created
+        assertEquals(MatchStatus.ACCEPTED, concurrentMatch.getStatus());
+        assertTrue(concurrentMatch.isLikedByUser2());
+        verify(matchRepository, times(1)).save(concurrentMatch);
+        verifyMatchAcceptedEvent(null, targetUserId, actingUserId);
+    }
+
+    @Test
+    void testProcessLike_AlreadyAccepted_DoesNotCreateSecondChat() {
+        Match acceptedMatch = new Match();
+        acceptedMatch.setUserId1(1L);
+        acceptedMatch.setUserId2(2L);
+        acceptedMatch.setLikedByUser1(true);
+        acceptedMatch.setLikedByUser2(true);
+        acceptedMatch.setStatus(MatchStatus.ACCEPTED);
+
+        when(matchRepository.findPairForUpdate(1L, 2L)).thenReturn(Optional.of(acceptedMatch));
+        when(matchRepository.save(any(Match.class))).thenReturn(acceptedMatch);
+
+        matchService.processLike(new MatchPostDTO(1L, 2L));
+
+        verify(eventBus, never()).publish(any());
+    }
+
+    private static Match pair(Long userId1, Long userId2, boolean liked1, boolean liked2, MatchStatus status) {
+        Match match = new Match();
+        match.setUserId1(userId1);
+        match.setUserId2(userId2);
+        match.setLikedByUser1(liked1);
+        match.setLikedByUser2(liked2);
+        match.setStatus(status);
+        return match;
+    }
+
+    @Test
+    void testProcessBatch_AppliesDecisionsInOrderAndLocksPairsInPairOrder() {
+        Match likedBack = pair(2L, 1L, true, false, MatchStatus.PENDING);
+        Match rejected = pair(1L, 3L, false, false, MatchStatus.REJECTED);
+        Match fresh = pair(1L, 4L, false, false, MatchStatus.PENDING);
+        when(matchRepository.findPairs(eq(1L), anyCollection())).thenReturn(List.of(likedBack, rejected));
+        when(matchRepository.findPairForUpdate(1L, 2L)).thenReturn(Optional.of(likedBack));
+        when(matchRepository.findPairForUpdate(1L, 3L)).thenReturn(Optional.of(rejected));
+        when(matchRepository.findPairForUpdate(1L, 4L)).thenReturn(Optional.of(fresh));
+
+        MatchBatchPostDTO batch = new MatchBatchPostDTO(1L, List.of(
+            new MatchBatchPostDTO.SwipeDecisionDTO(2L, true),
+            new MatchBatchPostDTO.SwipeDecisionDTO(3L, true),
+            new MatchBatchPostDTO.SwipeDecisionDTO(4L, false),
+            new MatchBatchPostDTO.SwipeDecisionDTO(1L, true)));
+
+        List<MatchBatchResultGetDTO> results = matchService.processBatch(batch);
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isApplied());
+        assertTrue(results.get(0).isNewMatch());
+        assertEquals(MatchStatus.ACCEPTED, results.get(0).getStatus());
+        assertFalse(results.get(1).isApplied());
+        assertNotNull(results.get(1).getError());
+        assertTrue(results.get(2).isApplied());
+        assertEquals(MatchStatus.REJECTED, fresh.getStatus());
+        assertFalse(results.get(3).isApplied());
+
+        // only the missing pair is inserted, the pairs are locked in order and saved together
+        verify(matchPairWriter).insertPairs(1L, List.of(4L));
+        verify(matchPairWriter, never()).insertPair(anyLong(), anyLong());
+        InOrder lockOrder = inOrder(matchRepository);
+        lockOrder.verify(matchRepository).findPairForUpdate(1L, 2L);
+        lockOrder.verify(matchRepository).findPairForUpdate(1L, 3L);
+        lockOrder.verify(matchRepository).findPairForUpdate(1L, 4L);
+        verify(matchRepository).saveAll(anyCollection());
+        verifyMatchAcceptedEvent(null, 2L, 1L);
+        verify(socialGraph).dislike(1L, 4L);
+    }
+
+    @Test
+    void testProcessBatch_ConcurrentInsert_FallsBackToSingleInserts() {
+        Match first = pair(1L, 2L, false, false, MatchStatus.PENDING);
+        Match second = pair(3L, 1L, false, false, MatchStatus.PENDING);
+        when(matchRepository.findPairs(eq(1L), anyCollection())).thenReturn(List.of());
+        when(matchRepository.findPairForUpdate(1L, 2L)).thenReturn(Optional.of(first));
+        when(matchRepository.findPairForUpdate(1L, 3L)).thenReturn(Optional.of(second));
+        doThrow(new DataIntegrityViolationException("duplicate"))
+            .when(matchPairWriter).insertPairs(1L, List.of(2L, 3L));
+        doThrow(new DataIntegrityViolationException("duplicate"))
+            .when(matchPairWriter).insertPair(1L, 3L);
+
+        List<MatchBatchResultGetDTO> results = matchService.processBatch(new MatchBatchPostDTO(1L, List.of(
+            new MatchBatchPostDTO.SwipeDecisionDTO(2L, true),
+            new MatchBatchPostDTO.SwipeDecisionDTO(3L, true))));
+
+        assertTrue(results.get(0).isApplied());
+        assertTrue(results.get(1).isApplied());
+        assertTrue(first.isLikedByUser1());
+        assertTrue(second.isLikedByUser2());
+        verify(matchPairWriter).insertPair(1L, 2L);
+    }
+
+    @Test
+    void testProcessBatch_NoDecisions_ThrowsBadRequest() {
+        assertThrows(ResponseStatusException.class,
+            () -> matchService.processBatch(new MatchBatchPostDTO(1L, List.of())));
+    }
+}
@@ -0,0 +1,122 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Message;
+import ch.uzh.ifi.hase.soprafs24.repository.ChatChannelRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MessageRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class MessageWriterTest {
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final ChatChannelRepository chatChannelRepository = mock(ChatChannelRepository.class);
+    private final ChatParticipantRepository chatParticipantRepository = mock(ChatParticipantRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final AtomicLong nextId = new AtomicLong(1);
+    private MessageWriter writer;
+
+    private MessageWriter createWriter(boolean writeBehind) {
+        // assigns ids like the sequence would on persist
+        when(messageRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            messages.forEach(message -> message.setId(nextId.getAndIncrement()));
+            return messages;
+        });
+        writer = new MessageWriter(messageRepository, chatChannelRepository, chatParticipantRepository,
+            userRepository, mock(PlatformTransactionManager.class), writeBehind, 10, 3, 500, 5000);
+        return writer;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.shutdown();
+    }
+
+    @Test
+    void write_synchronous_storesMessageAndUpdatesChannelAndPointer() {
+        createWriter(false);
+        LocalDateTime now = LocalDateTime.now();
+
+        Long id = writer.write(10L, 1L, "hi", now);
+
+        assertEquals(1L, id);
+        verify(chatChannelRepository).recordLastMessage(10L, 1L, 1L, "hi", now);
+        verify(chatParticipantRepository).advanceReadPointer(10L, 1L, 1L);
+    }
+
+    @Test
+    void write_writeBehind_groupsConcurrentMessagesIntoOneBatch() throws Exception {
+        createWriter(true);
+        LocalDateTime now = LocalDateTime.now();
+        ExecutorService senders = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Long>> ids = senders.invokeAll(List.of(
+                () -> writer.write(10L, 1L, "a", now),
+                () -> writer.write(10L, 2L, "b", now),
+                () -> writer.write(11L, 1L, "c", now)));
+
+            Set<Long> stored = ids.stream().map(future -> {
+                try {
+                    return future.get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).collect(Collectors.toSet());
+
+            assertEquals(Set.of(1L, 2L, 3L), stored);
+            verify(messageRepository, times(1)).saveAll(anyList());
+            // one update per channel, not per message
+            verify(chatChannelRepository, times(2)).recordLastMessage(anyLong(), anyLong(), anyLong(), any(), any());
+        } finally {
+            senders.shutdownNow();
+        }
+    }
+
+    @Test
+    void write_writeBehind_failedBatchIsRetriedMessageByMessage() throws Exception {
+        createWriter(true);
+        when(messageRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            if (messages.stream().anyMatch(message -> "bad".equals(message.getContent()))) {
+                throw new DataIntegrityViolationException("channel deleted");
+            }
+            messages.forEach(message -> message.setId(nextId.getAndIncrement()));
+            return messages;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        ExecutorService senders = Executors.newFixedThreadPool(3);
+        try {
+            Future<Long> good1 = senders.submit(() -> writer.write(10L, 1L, "a", now));
+            Future<Long> bad = senders.submit(() -> writer.write(99L, 1L, "bad", now));
+            Future<Long> good2 = senders.submit(() -> writer.write(11L, 2L, "c", now));
+
+            assertNotNull(good1.get(5, TimeUnit.SECONDS));
+            assertNotNull(good2.get(5, TimeUnit.SECONDS));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ResponseStatusException.class, failure.getCause());
+        } finally {
+            senders.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationHubTest {
+
+    private final List<Integer> sent = new CopyOnWriteArrayList<>();
+    private Consumer<Integer> onSend = value -> { };
+
+    // records the Integer payloads of the events instead of writing them to a response
+    private final NotificationHub notificationHub = new NotificationHub(60_000, 4) {
+        @Override
+        SseEmitter createEmitter() {
+            return new SseEmitter(60_000L) {
+                @Override
+                public void send(SseEventBuilder builder) {
+                    for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                        if (data.getData() instanceof Integer value) {
+                            onSend.accept(value);
+                            sent.add(value);
+                        }
+                    }
+                }
+            };
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        notificationHub.shutdown();
+    }
+
+    @Test
+    void publish_deliversEventsOfAStreamInOrder() throws Exception {
+        int events = 200;
+        CountDownLatch done = new CountDownLatch(events);
+        onSend = value -> done.countDown();
+        notificationHub.subscribe(1L);
+
+        for (int i = 0; i < events; i++) {
+            notificationHub.publish(1L, "unread-count", i);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < events; i++) {
+            assertEquals(i, sent.get(i));
+        }
+        assertEquals(1, notificationHub.getStreamCount(1L));
+    }
+
+    @Test
+    void publish_streamFallsTooFarBehind_isDropped() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        onSend = value -> {
+            if (value == 0) {
+                sending.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        notificationHub.subscribe(1L);
+
+        // the delivery thread holds event 0, the queue then takes MAX_PENDING_EVENTS more
+        notificationHub.publish(1L, "unread-count", 0);
+        assertTrue(sending.await(2, TimeUnit.SECONDS));
+        for (int i = 1; i <= NotificationHub.MAX_PENDING_EVENTS; i++) {
+            notificationHub.publish(1L, "unread-count", i);
+        }
+        assertEquals(1, notificationHub.getStreamCount(1L));
+
+        notificationHub.publish(1L, "unread-count", NotificationHub.MAX_PENDING_EVENTS + 1);
+        release.countDown();
+
+        assertEquals(0, notificationHub.getStreamCount(1L));
+    }
+}
@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.NotificationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class NotificationRetentionJobTest {
+
+    private final NotificationRepository notificationRepository = mock(NotificationRepository.class);
+    // disabled schedule, the tests call purge() themselves
+    private final NotificationRetentionJob job = new NotificationRetentionJob(
+        notificationRepository, mock(PlatformTransactionManager.class), false, 30, 2, 60);
+
+    @AfterEach
+    void tearDown() {
+        job.shutdown();
+    }
+
+    @Test
+    void purge_deletesInBatchesUntilNothingIsLeft() {
+        when(notificationRepository.findReadIdsCreatedBefore(any(LocalDateTime.class), eq(PageRequest.of(0, 2))))
+            .thenReturn(List.of(1L, 2L), List.of(3L), List.of());
+        when(notificationRepository.deleteByIdIn(List.of(1L, 2L))).thenReturn(2);
+        when(notificationRepository.deleteByIdIn(List.of(3L))).thenReturn(1);
+
+        assertEquals(3, job.purge());
+
+        verify(notificationRepository, times(2)).deleteByIdIn(any());
+    }
+}
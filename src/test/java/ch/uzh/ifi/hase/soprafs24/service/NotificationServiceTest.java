@@ -0,0 +1,171 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Notification;
+import ch.uzh.ifi.hase.soprafs24.repository.NotificationRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.NotificationGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class NotificationServiceTest {
+
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private NotificationHub notificationHub;
+
+    @Spy
+    private UnreadNotificationCounter unreadCounter = new UnreadNotificationCounter();
+
+    @InjectMocks
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(notificationRepository.save(any(Notification.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void getUnreadCount_countsOnceThenUsesCounter() {
+        when(notificationRepository.countByUserIdAndReadFalse(1L)).thenReturn(3L);
+
+        assertEquals(3L, notificationService.getUnreadCount(1L));
+        assertEquals(3L, notificationService.getUnreadCount(1L));
+
+        verify(notificationRepository, times(1)).countByUserIdAndReadFalse(1L);
+    }
+
+    @Test
+    void getUnreadCount_notificationCommittedWhileCounting_doesNotKeepStaleCount() {
+        // a notification is committed after the count was read but before it is stored
+        when(notificationRepository.countByUserIdAndReadFalse(1L)).thenAnswer(invocation -> {
+            unreadCounter.add(1L, 1);
+            return 3L;
+        });
+
+        assertEquals(3L, notificationService.getUnreadCount(1L));
+        assertNull(unreadCounter.get(1L));
+
+        when(notificationRepository.countByUserIdAndReadFalse(1L)).thenReturn(4L);
+        assertEquals(4L, notificationService.getUnreadCount(1L));
+        assertEquals(4L, unreadCounter.get(1L));
+    }
+
+    @Test
+    void getUnreadCount_unknownUser_throwsNotFound() {
+        when(userRepository.existsById(2L)).thenReturn(false);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+            () -> notificationService.getUnreadCount(2L));
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatus());
+    }
+
+    @Test
+    void createNotification_pushesNotificationAndIncrementsCounter() {
+        unreadCounter.set(1L, 2);
+
+        notificationService.createNotification(1L, "You matched with B!", "MATCH", 5L);
+
+        assertEquals(3L, notificationService.getUnreadCount(1L));
+        verify(notificationHub).publish(eq(1L), eq("notification"), any(NotificationGetDTO.class));
+        verify(notificationHub).publish(1L, "unread-count", Map.of("unreadCount", 3L));
+        verify(notificationRepository, never()).countByUserIdAndReadFalse(anyLong());
+    }
+
+    @Test
+    void markNotificationAsRead_onlyUnreadDecrementsCounter() {
+        Notification notification = new Notification(1L, "Hi", "LIKE", 2L);
+        notification.setId(7L);
+        when(notificationRepository.findById(7L)).thenReturn(Optional.of(notification));
+        unreadCounter.set(1L, 1);
+
+        notificationService.markNotificationAsRead(7L);
+        notificationService.markNotificationAsRead(7L);
+
+        assertEquals(0L, unreadCounter.get(1L));
+        verify(notificationHub, times(1)).publish(1L, "unread-count", Map.of("unreadCount", 0L));
+    }
+
+    @Test
+    void getUnreadNotificationsForUser_resetsCounterToListSize() {
+        unreadCounter.set(1L, 10);
+        when(notificationRepository.findByUserIdAndReadFalseOrderByCreationDateDesc(1L))
+            .thenReturn(List.of(new Notification(1L, "Hi", "LIKE", 2L)));
+
+        notificationService.getUnreadNotificationsForUser(1L);
+
+        assertEquals(1L, unreadCounter.get(1L));
+    }
+
+    @Test
+    void getNotificationsForUser_returnsCursorOfLastNotification() {
+        Notification newer = new Notification(1L, "B", "LIKE", 3L);
+        newer.setId(9L);
+        Notification older = new Notification(1L, "A", "LIKE", 2L);
+        older.setId(8L);
+        older.setCreationDate(LocalDateTime.of(2025, 3, 1, 12, 0, 30));
+        when(notificationRepository.findByUserIdOrderByCreationDateDescIdDesc(1L, PageRequest.of(0, 2)))
+            .thenReturn(new SliceImpl<>(List.of(newer, older), PageRequest.of(0, 2), true));
+
+        NotificationService.NotificationPage page = notificationService.getNotificationsForUser(1L, null, 2);
+
+        assertEquals(List.of(newer, older), page.getNotifications());
+        assertEquals("2025-03-01T12:00:30_8", page.getNextCursor());
+    }
+
+    @Test
+    void getNotificationsForUser_withCursor_queriesAfterKey() {
+        when(notificationRepository.findPageBefore(1L, LocalDateTime.of(2025, 3, 1, 12, 0, 30), 8L, PageRequest.of(0, 2)))
+            .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 2), false));
+
+        NotificationService.NotificationPage page =
+            notificationService.getNotificationsForUser(1L, "2025-03-01T12:00:30_8", 2);
+
+        assertTrue(page.getNotifications().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getNotificationsForUser_malformedCursor_throwsBadRequest() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+            () -> notificationService.getNotificationsForUser(1L, "yesterday", 2));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+    }
+
+    @Test
+    void markAllNotificationsAsRead_usesOneBulkUpdate() {
+        unreadCounter.set(1L, 4);
+
+        notificationService.markAllNotificationsAsRead(1L);
+
+        verify(notificationRepository).markAllReadByUserId(1L);
+        verify(notificationRepository, never()).save(any());
+        assertEquals(0L, unreadCounter.get(1L));
+    }
+}
@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.ChatParticipantRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class ReadReceiptBufferTest {
+
+    private final ChatParticipantRepository chatParticipantRepository = mock(ChatParticipantRepository.class);
+    // long interval so that only the explicit flushes of the tests write
+    private final ReadReceiptBuffer buffer = new ReadReceiptBuffer(
+        chatParticipantRepository, mock(PlatformTransactionManager.class), 60_000, 100);
+
+    @AfterEach
+    void tearDown() {
+        buffer.shutdown();
+    }
+
+    @Test
+    void acknowledge_coalescesToHighestMessagePerChannel() {
+        buffer.acknowledge(1L, 10L, 100L);
+        buffer.acknowledge(1L, 10L, 120L);
+        buffer.acknowledge(1L, 10L, 110L);
+        buffer.acknowledge(1L, 11L, 5L);
+
+        assertEquals(120L, buffer.getPending(1L, 10L));
+
+        buffer.flushAll();
+
+        verify(chatParticipantRepository, times(1)).advanceReadPointer(10L, 1L, 120L);
+        verify(chatParticipantRepository, times(1)).advanceReadPointer(11L, 1L, 5L);
+        verifyNoMoreInteractions(chatParticipantRepository);
+        assertNull(buffer.getPending(1L, 10L));
+    }
+
+    @Test
+    void flushUser_writesOnlyThatUser() {
+        buffer.acknowledge(1L, 10L, 100L);
+        buffer.acknowledge(2L, 10L, 90L);
+
+        buffer.flushUser(1L);
+
+        verify(chatParticipantRepository).advanceReadPointer(10L, 1L, 100L);
+        verify(chatParticipantRepository, never()).advanceReadPointer(anyLong(), eq(2L), anyLong());
+        assertEquals(90L, buffer.getPending(2L, 10L));
+    }
+
+    @Test
+    void flushAll_failedWrite_keepsReceiptsForRetry() {
+        when(chatParticipantRepository.advanceReadPointer(10L, 1L, 100L))
+            .thenThrow(new DataAccessResourceFailureException("down"));
+        buffer.acknowledge(1L, 10L, 100L);
+
+        assertThrows(DataAccessResourceFailureException.class, buffer::flushAll);
+
+        assertEquals(100L, buffer.getPending(1L, 10L));
+    }
+}
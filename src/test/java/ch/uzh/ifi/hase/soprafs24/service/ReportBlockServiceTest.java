@@ -3,6 +3,8 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.entity.Block;
 import ch.uzh.ifi.hase.soprafs24.entity.Report;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.BlockEvent;
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
 import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.ReportRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
@@ -29,10 +31,13 @@ class ReportBlockServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private ChatService chatService;
+    private DiscoveryIndex discoveryIndex;
 
     @Mock
-    private MatchService matchService;
+    private DomainEventBus eventBus;
+
+    @Mock
+    private SocialGraph socialGraph;
 
     private ReportBlockService reportBlockService;
 
@@ -43,11 +48,19 @@ class ReportBlockServiceTest {
                 reportRepository,
                 blockRepository,
                 userRepository,
-                chatService,
-                matchService
+                discoveryIndex,
+                eventBus,
+                socialGraph
         );
     }
 
+    // the chat and the match are deleted by SocialEventHandlers after commit
+    private void verifyBlockEvent(Long blockerId, Long blockedUserId) {
+        verify(eventBus, times(1)).publish(argThat(event -> event instanceof BlockEvent
+                && ((BlockEvent) event).getBlockerId().equals(blockerId)
+                && ((BlockEvent) event).getBlockedUserId().equals(blockedUserId)));
+    }
+
     @Test
     void testReportUser_savesReport() {
         User reporter = new User();
@@ -62,8 +75,7 @@ class ReportBlockServiceTest {
 
         verify(reportRepository, times(1)).save(any(Report.class));
         verify(blockRepository, times(1)).save(any(Block.class));
-        verify(chatService, times(1)).deleteIndividualChannelBetweenUsers(1L, 2L);
-        verify(matchService, times(1)).deleteMatchBetweenUsers(1L, 2L);
+        verifyBlockEvent(1L, 2L);
     }
 
     @Test
@@ -80,8 +92,8 @@ class ReportBlockServiceTest {
         reportBlockService.blockUser(1L, 2L);
 
         verify(blockRepository, times(1)).save(any(Block.class));
-        verify(chatService, times(1)).deleteIndividualChannelBetweenUsers(1L, 2L);
-        verify(matchService, times(1)).deleteMatchBetweenUsers(1L, 2L);
+        verify(socialGraph).block(1L, 2L);
+        verifyBlockEvent(1L, 2L);
     }
 
     @Test
@@ -0,0 +1,168 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.BlockEvent;
+import ch.uzh.ifi.hase.soprafs24.event.DomainEventBus;
+import ch.uzh.ifi.hase.soprafs24.event.LikeEvent;
+import ch.uzh.ifi.hase.soprafs24.event.MatchAcceptedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(org.mockito.junit.jupiter.MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SocialEventHandlersTest {
+
+    @Mock
+    private DomainEventBus eventBus;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private MatchRepository matchRepository;
+
+    @Mock
+    private BlockRepository blockRepository;
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private MatchService matchService;
+
+    @InjectMocks
+    private SocialEventHandlers handlers;
+
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    void setUp() {
+        user1 = new User();
+        user1.setId(1L);
+        user2 = new User();
+        user2.setId(2L);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsById(2L)).thenReturn(true);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user1));
+        when(userRepository.findById(2L)).thenReturn(Optional.of(user2));
+    }
+
+    private void givenPair(MatchStatus status) {
+        Match match = new Match();
+        match.setUserId1(1L);
+        match.setUserId2(2L);
+        match.setStatus(status);
+        when(matchRepository.findPairForUpdate(1L, 2L)).thenReturn(Optional.of(match));
+    }
+
+    private void givenBlocked(boolean blocked) {
+        when(blockRepository.existsByBlockerIdAndBlockedUserIdOrBlockedUserIdAndBlockerId(1L, 2L, 1L, 2L))
+            .thenReturn(blocked);
+    }
+
+    private void verifyNoMatchSideEffects() {
+        verify(chatService, never()).createIndividualChatChannelAfterMatch(any(), any());
+        verify(notificationService, never()).createMatchNotification(any(), any(), any());
+    }
+
+    @Test
+    void onLike_notifiesTarget() {
+        handlers.onLike(new LikeEvent(1L, 2L));
+
+        verify(notificationService).createLikeNotification(2L, 1L);
+    }
+
+    @Test
+    void onLike_deletedUser_isSkipped() {
+        when(userRepository.existsById(1L)).thenReturn(false);
+
+        handlers.onLike(new LikeEvent(1L, 2L));
+
+        verify(notificationService, never()).createLikeNotification(any(), any());
+    }
+
+    @Test
+    void onMatchAccepted_locksPairThenOpensChatAndNotifies() {
+        givenPair(MatchStatus.ACCEPTED);
+        givenBlocked(false);
+
+        // the event may name the users in either order, the pair is always locked as (min, max)
+        handlers.onMatchAccepted(new MatchAcceptedEvent(10L, 2L, 1L));
+
+        InOrder inOrder = inOrder(matchRepository, chatService, notificationService);
+        inOrder.verify(matchRepository).findPairForUpdate(1L, 2L);
+        inOrder.verify(chatService).createIndividualChatChannelAfterMatch(user2, user1);
+        inOrder.verify(notificationService).createMatchNotification(2L, 1L, 10L);
+    }
+
+    @Test
+    void onMatchAccepted_matchNoLongerExists_isSkipped() {
+        when(matchRepository.findPairForUpdate(1L, 2L)).thenReturn(Optional.empty());
+        givenBlocked(false);
+
+        handlers.onMatchAccepted(new MatchAcceptedEvent(10L, 1L, 2L));
+
+        verifyNoMatchSideEffects();
+    }
+
+    @Test
+    void onMatchAccepted_matchNoLongerAccepted_isSkipped() {
+        givenPair(MatchStatus.REJECTED);
+        givenBlocked(false);
+
+        handlers.onMatchAccepted(new MatchAcceptedEvent(10L, 1L, 2L));
+
+        verifyNoMatchSideEffects();
+    }
+
+    @Test
+    void onMatchAccepted_pairBlocked_isSkipped() {
+        givenPair(MatchStatus.ACCEPTED);
+        givenBlocked(true);
+
+        handlers.onMatchAccepted(new MatchAcceptedEvent(10L, 1L, 2L));
+
+        verifyNoMatchSideEffects();
+    }
+
+    @Test
+    void onMatchAccepted_deletedUser_isSkipped() {
+        givenPair(MatchStatus.ACCEPTED);
+        givenBlocked(false);
+        when(userRepository.findById(2L)).thenReturn(Optional.empty());
+
+        handlers.onMatchAccepted(new MatchAcceptedEvent(10L, 1L, 2L));
+
+        verifyNoMatchSideEffects();
+    }
+
+    @Test
+    void onBlock_locksPairBeforeCleaningUp() {
+        givenPair(MatchStatus.ACCEPTED);
+
+        handlers.onBlock(new BlockEvent(2L, 1L));
+
+        InOrder inOrder = inOrder(matchRepository, chatService, matchService);
+        inOrder.verify(matchRepository).findPairForUpdate(1L, 2L);
+        inOrder.verify(chatService).deleteIndividualChannelBetweenUsers(2L, 1L);
+        inOrder.verify(matchService).deleteMatchBetweenUsers(2L, 1L);
+    }
+}
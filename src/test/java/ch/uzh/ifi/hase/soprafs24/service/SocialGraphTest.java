@@ -0,0 +1,155 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MatchStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Block;
+import ch.uzh.ifi.hase.soprafs24.entity.Match;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.BlockRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.MatchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class SocialGraphTest {
+
+    @Mock
+    private MatchRepository matchRepository;
+
+    @Mock
+    private BlockRepository blockRepository;
+
+    private SocialGraph socialGraph;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        socialGraph = new SocialGraph(matchRepository, blockRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Match match(long userId1, long userId2, boolean liked1, boolean liked2, MatchStatus status) {
+        Match match = new Match();
+        match.setUserId1(userId1);
+        match.setUserId2(userId2);
+        match.setLikedByUser1(liked1);
+        match.setLikedByUser2(liked2);
+        match.setStatus(status);
+        return match;
+    }
+
+    private static Block block(long blockerId, long blockedUserId) {
+        User blocker = new User();
+        blocker.setId(blockerId);
+        User blocked = new User();
+        blocked.setId(blockedUserId);
+        return new Block(blocker, blocked);
+    }
+
+    @Test
+    void get_loadsLikesMatchesAndBlocks() {
+        when(matchRepository.findAll()).thenReturn(List.of(
+            match(1L, 3L, true, false, MatchStatus.PENDING),
+            match(2L, 1L, true, true, MatchStatus.ACCEPTED)));
+        when(blockRepository.findAll()).thenReturn(List.of(block(4L, 1L), block(1L, 5L)));
+
+        assertArrayEquals(new long[]{2L, 3L}, socialGraph.get(SocialGraph.Relation.LIKES, 1L));
+        assertArrayEquals(new long[]{2L}, socialGraph.get(SocialGraph.Relation.LIKED_BY, 1L));
+        assertArrayEquals(new long[]{1L}, socialGraph.get(SocialGraph.Relation.LIKED_BY, 3L));
+        assertArrayEquals(new long[]{2L}, socialGraph.get(SocialGraph.Relation.MATCHED, 1L));
+        assertArrayEquals(new long[]{5L}, socialGraph.get(SocialGraph.Relation.BLOCKS, 1L));
+        assertArrayEquals(new long[]{4L, 5L}, socialGraph.getBlockedOrBlocking(1L));
+        assertArrayEquals(new long[0], socialGraph.get(SocialGraph.Relation.LIKES, 99L));
+    }
+
+    @Test
+    void like_inTransaction_appliedAfterCommit() {
+        socialGraph.warmUp();
+        TransactionSynchronizationManager.initSynchronization();
+
+        socialGraph.like(1L, 2L);
+        assertFalse(socialGraph.contains(SocialGraph.Relation.LIKES, 1L, 2L));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertTrue(socialGraph.contains(SocialGraph.Relation.LIKES, 1L, 2L));
+        assertTrue(socialGraph.contains(SocialGraph.Relation.LIKED_BY, 2L, 1L));
+    }
+
+    @Test
+    void removePair_andRemoveUser_dropBothDirections() {
+        socialGraph.warmUp();
+        socialGraph.like(1L, 2L);
+        socialGraph.like(2L, 1L);
+        socialGraph.match(1L, 2L);
+        socialGraph.block(3L, 1L);
+        socialGraph.like(3L, 2L);
+
+        socialGraph.removePair(2L, 1L);
+        assertEquals(0, socialGraph.count(SocialGraph.Relation.LIKES, 1L));
+        assertEquals(0, socialGraph.count(SocialGraph.Relation.MATCHED, 2L));
+        assertArrayEquals(new long[]{3L}, socialGraph.get(SocialGraph.Relation.LIKED_BY, 2L));
+
+        socialGraph.removeUser(3L);
+        assertEquals(0, socialGraph.count(SocialGraph.Relation.BLOCKED_BY, 1L));
+        assertEquals(0, socialGraph.count(SocialGraph.Relation.LIKED_BY, 2L));
+    }
+
+    @Test
+    void getPendingLikes_excludesAnsweredAndBlockedLikersAndPagesById() {
+        when(matchRepository.findAll()).thenReturn(List.of(
+            match(2L, 1L, true, false, MatchStatus.PENDING),
+            match(3L, 1L, true, true, MatchStatus.ACCEPTED),
+            match(4L, 1L, true, false, MatchStatus.REJECTED),
+            match(5L, 1L, true, false, MatchStatus.PENDING),
+            match(6L, 1L, true, false, MatchStatus.PENDING),
+            match(7L, 1L, true, false, MatchStatus.PENDING)));
+        when(blockRepository.findAll()).thenReturn(List.of(block(1L, 6L)));
+
+        SocialGraph.PendingLikesPage first = socialGraph.getPendingLikes(1L, null, 2);
+        assertArrayEquals(new long[]{2L, 5L}, first.getUserIds());
+        assertEquals(5L, first.getNextCursor());
+        assertEquals(3, first.getTotalCount());
+
+        SocialGraph.PendingLikesPage second = socialGraph.getPendingLikes(1L, first.getNextCursor(), 2);
+        assertArrayEquals(new long[]{7L}, second.getUserIds());
+        assertNull(second.getNextCursor());
+        assertEquals(3, socialGraph.countPendingLikes(1L));
+
+        socialGraph.dislike(1L, 7L);
+        assertEquals(2, socialGraph.countPendingLikes(1L));
+    }
+
+    @Test
+    void slotMap_growsPastInitialCapacity() {
+        socialGraph.warmUp();
+        for (long userId = 1; userId <= 5000; userId++) {
+            socialGraph.like(userId, userId + 1);
+        }
+
+        assertTrue(socialGraph.contains(SocialGraph.Relation.LIKES, 4321L, 4322L));
+        assertArrayEquals(new long[]{4999L}, socialGraph.get(SocialGraph.Relation.LIKED_BY, 5000L));
+    }
+
+    @Test
+    void union_mergesSortedArraysWithoutDuplicates() {
+        assertArrayEquals(new long[]{1L, 2L, 3L, 5L},
+            SocialGraph.union(new long[]{1L, 3L, 5L}, new long[]{2L, 3L}));
+        assertArrayEquals(new long[0], SocialGraph.union(null, null));
+    }
+}
@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserAvailability;
+import ch.uzh.ifi.hase.soprafs24.entity.Course;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.entity.UserCourse;
+import ch.uzh.ifi.hase.soprafs24.repository.UserCourseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class StudentSearchIndexTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserCourseRepository userCourseRepository;
+
+    private StudentSearchIndex studentSearchIndex;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        studentSearchIndex = new StudentSearchIndex(userRepository, userCourseRepository);
+
+        List<Object[]> users = new ArrayList<>();
+        users.add(new Object[]{1L, UserAvailability.MORNING, "admin@example.com"});
+        users.add(new Object[]{2L, UserAvailability.MORNING, "a@example.com"});
+        users.add(new Object[]{3L, UserAvailability.EVENING, "b@example.com"});
+        users.add(new Object[]{4L, UserAvailability.EVENING, "c@example.com"});
+        when(userRepository.findStudentSearchRows()).thenReturn(users);
+
+        List<Object[]> courses = new ArrayList<>();
+        courses.add(new Object[]{2L, 10L, null});
+        courses.add(new Object[]{2L, 20L, null});
+        courses.add(new Object[]{3L, 10L, null});
+        courses.add(new Object[]{4L, 20L, null});
+        when(userCourseRepository.findAllCourseLevels()).thenReturn(courses);
+    }
+
+    @Test
+    void search_withoutFilters_returnsAllButAdmin() {
+        assertEquals(List.of(2L, 3L, 4L), ids(studentSearchIndex.search(null, false, null)));
+    }
+
+    @Test
+    void search_allCourses_intersects() {
+        assertEquals(List.of(2L), ids(studentSearchIndex.search(List.of(10L, 20L), false, null)));
+    }
+
+    @Test
+    void search_anyCourseAndAvailability_unionsThenIntersects() {
+        BitSet result = studentSearchIndex.search(List.of(10L, 20L), true, List.of(UserAvailability.EVENING));
+
+        assertEquals(List.of(3L, 4L), ids(result));
+    }
+
+    @Test
+    void indexUser_replacesPreviousCoursesAndAvailability() {
+        studentSearchIndex.warmUp();
+
+        Course course = new Course(30L, "Networks");
+        User user = new User();
+        user.setId(3L);
+        user.setEmail("b@example.com");
+        user.setAvailability(UserAvailability.MORNING);
+        user.getUserCourses().add(new UserCourse(user, course, null));
+        studentSearchIndex.indexUser(user);
+
+        assertEquals(List.of(2L), ids(studentSearchIndex.search(List.of(10L), false, null)));
+        assertEquals(List.of(3L), ids(studentSearchIndex.search(List.of(30L), false, null)));
+        assertEquals(List.of(2L, 3L), ids(studentSearchIndex.search(null, false, List.of(UserAvailability.MORNING))));
+    }
+
+    @Test
+    void page_skipsOffsetAndLimits() {
+        BitSet result = studentSearchIndex.search(null, false, null);
+
+        assertEquals(List.of(3L), StudentSearchIndex.page(result, 1, 1));
+    }
+
+    private List<Long> ids(BitSet result) {
+        return StudentSearchIndex.page(result, 0, Integer.MAX_VALUE);
+    }
+}
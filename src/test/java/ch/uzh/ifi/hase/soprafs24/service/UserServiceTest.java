@@ -3,14 +3,22 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 
 import java.util.Collections;
+import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,6 +28,33 @@ class UserServiceTest {
   @Mock
   private UserRepository userRepository;
 
+  @Mock
+  private TokenCache tokenCache;
+
+  @Mock
+  private DiscoveryIndex discoveryIndex;
+
+  @Mock
+  private StudentSearchIndex studentSearchIndex;
+
+  @Mock
+  private ImageStore imageStore;
+
+  @Mock
+  private UserPresenceCache userPresenceCache;
+
+  @Mock
+  private SocialGraph socialGraph;
+
+  @Mock
+  private PasswordHasher passwordHasher;
+
+  @Mock
+  private UnreadNotificationCounter unreadNotificationCounter;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
   @InjectMocks
   private UserService userService;
 
@@ -101,4 +136,71 @@ class UserServiceTest {
         () -> userService.createUser(finalTestUser, Collections.emptyList()));
   }
 
+  @Test
+  void loginUser_hashOfOldStrength_isReplaced() {
+    testUser.setPassword("$2a$04$oldHash");
+    Mockito.when(userRepository.findByEmail("testUsername")).thenReturn(testUser);
+    Mockito.when(passwordHasher.matches("testPassword", "$2a$04$oldHash")).thenReturn(true);
+    Mockito.when(passwordHasher.needsRehash("$2a$04$oldHash")).thenReturn(true);
+    Mockito.when(passwordHasher.hash("testPassword")).thenReturn("$2a$10$newHash");
+
+    userService.loginUser("testUsername", "testPassword");
+
+    assertEquals("$2a$10$newHash", testUser.getPassword());
+    Mockito.verify(userRepository).save(testUser);
+  }
+
+  @Test
+  void loginUser_wrongPassword_keepsHash() {
+    testUser.setPassword("$2a$04$oldHash");
+    Mockito.when(userRepository.findByEmail("testUsername")).thenReturn(testUser);
+    Mockito.when(passwordHasher.matches("wrongPassword", "$2a$04$oldHash")).thenReturn(false);
+
+    assertThrows(ResponseStatusException.class, () -> userService.loginUser("testUsername", "wrongPassword"));
+
+    assertEquals("$2a$04$oldHash", testUser.getPassword());
+    Mockito.verify(passwordHasher, Mockito.never()).hash(Mockito.any());
+  }
+
+  @Test
+  void loginUser_verifiesPasswordBeforeOpeningTransaction() {
+    testUser.setPassword("$2a$10$hash");
+    Mockito.when(userRepository.findByEmail("testUsername")).thenReturn(testUser);
+    Mockito.when(passwordHasher.matches("testPassword", "$2a$10$hash")).thenReturn(true);
+
+    userService.loginUser("testUsername", "testPassword");
+
+    InOrder inOrder = Mockito.inOrder(passwordHasher, transactionManager, userRepository);
+    inOrder.verify(passwordHasher).matches("testPassword", "$2a$10$hash");
+    inOrder.verify(transactionManager).getTransaction(Mockito.any());
+    inOrder.verify(userRepository).save(testUser);
+  }
+
+  @Test
+  void getUserByToken_cachedTokenWasReplaced_returnsNullAndEvicts() {
+    testUser.setToken("newToken");
+    Mockito.when(tokenCache.get("oldToken"))
+        .thenReturn(new UserPrincipal(1L, "testUsername", false, UserStatus.ONLINE));
+    Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+
+    assertNull(userService.getUserByToken("oldToken"));
+    Mockito.verify(tokenCache).evict("oldToken");
+  }
+
+  @Test
+  void logoutUser_inTransaction_evictsAgainAfterCommit() {
+    Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      userService.logoutUser(1L);
+      Mockito.verify(tokenCache, Mockito.times(1)).evictUser(1L);
+
+      for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+        synchronization.afterCommit();
+      }
+      Mockito.verify(tokenCache, Mockito.times(2)).evictUser(1L);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
 }